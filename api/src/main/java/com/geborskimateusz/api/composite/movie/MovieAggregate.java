@@ -18,6 +18,7 @@ public class MovieAggregate {
     private List<RecommendationSummary> recommendations;
     private List<ReviewSummary> reviews;
     private ServiceAddresses serviceAddresses;
+    private List<String> missingParts;
 
     @Override
     public String toString() {
@@ -28,6 +29,7 @@ public class MovieAggregate {
                 ", recommendations=" + recommendations +
                 ", reviews=" + reviews +
                 ", serviceAddresses=" + serviceAddresses +
+                ", missingParts=" + missingParts +
                 '}';
     }
 }
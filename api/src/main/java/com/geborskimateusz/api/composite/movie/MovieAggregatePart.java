@@ -0,0 +1,41 @@
+package com.geborskimateusz.api.composite.movie;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * One element of a streamed composite movie: the movie header first, then one part per recommendation or review.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieAggregatePart {
+
+    public enum Type {MOVIE, RECOMMENDATION, REVIEW}
+
+    private Type type;
+    private int movieId;
+    private String title;
+    private String genre;
+    private RecommendationSummary recommendation;
+    private ReviewSummary review;
+    private ServiceAddresses serviceAddresses;
+
+    @Override
+    public String toString() {
+        return "MovieAggregatePart{" +
+                "type=" + type +
+                ", movieId=" + movieId +
+                ", title='" + title + '\'' +
+                ", genre='" + genre + '\'' +
+                ", recommendation=" + recommendation +
+                ", review=" + review +
+                ", serviceAddresses=" + serviceAddresses +
+                '}';
+    }
+}
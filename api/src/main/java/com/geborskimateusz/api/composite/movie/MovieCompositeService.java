@@ -9,8 +9,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 
 @Api(description = "Rest API for composite movie information.")
 public interface MovieCompositeService {
@@ -36,6 +40,45 @@ public interface MovieCompositeService {
     Mono<MovieAggregate> getCompositeMovie(@PathVariable Integer movieId);
 
 
+    /**
+     * Sample usage: curl -H "Accept: application/x-ndjson" $HOST:$PORT/movie-composite/1/stream
+     *
+     * @param movieId
+     * @return the movie header followed by its recommendations and reviews, as they arrive
+     */
+    @ApiOperation(
+            value = "${api.movie-composite.get-composite-movie-stream.description}",
+            notes = "${api.movie-composite.get-composite-movie-stream.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "Bad Request, invalid format of the request. See response message for more information."),
+            @ApiResponse(code = 404, message = "Not found, the specified id does not exist."),
+            @ApiResponse(code = 422, message = "Unprocessable entity, input parameters caused the processing to fails. See response message for more information.")
+    })
+    @GetMapping(
+            value = "/movie-composite/{movieId}/stream",
+            produces = {"application/x-ndjson", "application/stream+json", "text/event-stream"})
+    Flux<MovieAggregatePart> getCompositeMovieStream(@PathVariable Integer movieId);
+
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/movie-composite?ids=1,2,3"
+     *
+     * @param movieIds
+     * @return the composite movie info of all movies found, in the order they were requested
+     */
+    @ApiOperation(
+            value = "${api.movie-composite.get-composite-movies.description}",
+            notes = "${api.movie-composite.get-composite-movies.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "Bad Request, invalid format of the request. See response message for more information."),
+            @ApiResponse(code = 422, message = "Unprocessable entity, input parameters caused the processing to fails. See response message for more information.")
+    })
+    @GetMapping(
+            value = "/movie-composite",
+            produces = "application/json")
+    Flux<MovieAggregate> getCompositeMovies(@RequestParam(name = "ids") List<Integer> movieIds);
+
+
     /**
      * Sample usage: curl $HOST:$PORT/movie-composite
      *
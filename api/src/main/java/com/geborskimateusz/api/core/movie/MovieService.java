@@ -2,8 +2,11 @@ package com.geborskimateusz.api.core.movie;
 
 import io.swagger.models.auth.In;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface MovieService {
 
     /**
@@ -17,6 +20,36 @@ public interface MovieService {
             produces = "application/json")
     Mono<Movie> getMovie(@PathVariable Integer movieId);
 
+    /**
+     * Sample usage: curl "$HOST:$PORT/movie?ids=1,2,3"
+     *
+     * @param movieIds
+     * @return the movies found, unknown ids are skipped
+     */
+    @GetMapping(
+            value = "/movie",
+            params = "ids",
+            produces = "application/json")
+    Flux<Movie> getMovies(@RequestParam(name = "ids") List<Integer> movieIds);
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/movie?afterMovieId=20&limit=10"
+     *
+     * Keyset pagination over all movies ordered by movieId. The movieId of the last movie returned
+     * is the cursor of the next page, a page with fewer than limit movies is the last one.
+     *
+     * @param afterMovieId cursor, 0 for the first page
+     * @param limit max number of movies returned
+     * @return one page of movies
+     */
+    @GetMapping(
+            value = "/movie",
+            params = "limit",
+            produces = "application/json")
+    Flux<Movie> getMovies(
+            @RequestParam(name = "afterMovieId", required = false, defaultValue = "0") int afterMovieId,
+            @RequestParam(name = "limit") int limit);
+
     /**
      * Sample usage:
      * <p>
@@ -31,7 +64,7 @@ public interface MovieService {
             value = "/movie",
             consumes = "application/json",
             produces = "application/json")
-    Movie createMovie(@RequestBody Movie movie);
+    Mono<Movie> createMovie(@RequestBody Movie movie);
 
     /**
      * Sample usage:
@@ -41,5 +74,5 @@ public interface MovieService {
      * @param movieId
      */
     @DeleteMapping(value = "/movie/{movieId}")
-    void deleteMovie(@PathVariable Integer movieId);
+    Mono<Void> deleteMovie(@PathVariable Integer movieId);
 }
@@ -2,6 +2,7 @@ package com.geborskimateusz.api.core.recommendation;
 
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -18,6 +19,41 @@ public interface RecommendationService {
             produces = "application/json")
     Flux<Recommendation> getRecommendations(@RequestParam(value = "movieId", required = true) int movieId);
 
+    /**
+     * Sample usage: curl "$HOST:$PORT/recommendation?movieId=1&afterRecommendationId=20&limit=10&includeContent=false"
+     *
+     * Keyset pagination: returns up to limit recommendations ordered by recommendationId, starting after
+     * afterRecommendationId. The recommendationId of the last recommendation returned is the cursor of
+     * the next page, a page with fewer than limit recommendations is the last one.
+     *
+     * @param movieId
+     * @param afterRecommendationId cursor, 0 for the first page
+     * @param limit max number of recommendations returned
+     * @param includeContent false leaves out the content of the recommendations
+     * @return one page of recommendations of the movie
+     */
+    @GetMapping(
+            value    = "/recommendation",
+            params   = "limit",
+            produces = "application/json")
+    Flux<Recommendation> getRecommendations(
+            @RequestParam(name = "movieId") int movieId,
+            @RequestParam(name = "afterRecommendationId", required = false, defaultValue = "0") int afterRecommendationId,
+            @RequestParam(name = "limit") int limit,
+            @RequestParam(name = "includeContent", required = false, defaultValue = "true") boolean includeContent);
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/recommendation?ids=1,2,3"
+     *
+     * @param movieIds
+     * @return recommendations of all given movies
+     */
+    @GetMapping(
+            value    = "/recommendation",
+            params   = "ids",
+            produces = "application/json")
+    Flux<Recommendation> getRecommendations(@RequestParam(name = "ids") List<Integer> movieIds);
+
     /**
      * Sample usage:
      *
@@ -32,7 +68,7 @@ public interface RecommendationService {
             value    = "/recommendation",
             consumes = "application/json",
             produces = "application/json")
-    Recommendation createRecommendation(@RequestBody Recommendation recommendation);
+    Mono<Recommendation> createRecommendation(@RequestBody Recommendation recommendation);
 
     /**
      * Sample usage:
@@ -42,5 +78,5 @@ public interface RecommendationService {
      * @param movieId
      */
     @DeleteMapping(value = "/recommendation")
-    void deleteRecommendations(@RequestParam(value = "movieId", required = true)  int movieId);
+    Mono<Void> deleteRecommendations(@RequestParam(value = "movieId", required = true)  int movieId);
 }
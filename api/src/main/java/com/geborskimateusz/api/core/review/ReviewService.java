@@ -2,6 +2,7 @@ package com.geborskimateusz.api.core.review;
 
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -18,6 +19,41 @@ public interface ReviewService {
         produces = "application/json")
     Flux<Review> getReviews(@RequestParam(value = "movieId", required = true) int movieId);
 
+    /**
+     * Sample usage: curl "$HOST:$PORT/review?movieId=1&afterReviewId=20&limit=10&includeContent=false"
+     *
+     * Keyset pagination: returns up to limit reviews ordered by reviewId, starting after afterReviewId.
+     * The reviewId of the last review returned is the cursor of the next page, a page with
+     * fewer than limit reviews is the last one.
+     *
+     * @param movieId
+     * @param afterReviewId cursor, 0 for the first page
+     * @param limit max number of reviews returned
+     * @param includeContent false leaves out the content of the reviews
+     * @return one page of reviews of the movie
+     */
+    @GetMapping(
+        value    = "/review",
+        params   = "limit",
+        produces = "application/json")
+    Flux<Review> getReviews(
+        @RequestParam(name = "movieId") int movieId,
+        @RequestParam(name = "afterReviewId", required = false, defaultValue = "0") int afterReviewId,
+        @RequestParam(name = "limit") int limit,
+        @RequestParam(name = "includeContent", required = false, defaultValue = "true") boolean includeContent);
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/review?ids=1,2,3"
+     *
+     * @param movieIds
+     * @return reviews of all given movies
+     */
+    @GetMapping(
+        value    = "/review",
+        params   = "ids",
+        produces = "application/json")
+    Flux<Review> getReviews(@RequestParam(name = "ids") List<Integer> movieIds);
+
     /**
      * Sample usage:
      *
@@ -32,7 +68,7 @@ public interface ReviewService {
             value    = "/review",
             consumes = "application/json",
             produces = "application/json")
-    Review createReview(@RequestBody Review review);
+    Mono<Review> createReview(@RequestBody Review review);
 
     /**
      * Sample usage:
@@ -42,5 +78,5 @@ public interface ReviewService {
      * @param movieId
      */
     @DeleteMapping(value = "/review")
-    void deleteReviews(@RequestParam(value = "movieId", required = true)  int movieId);
+    Mono<Void> deleteReviews(@RequestParam(value = "movieId", required = true)  int movieId);
 }
\ No newline at end of file
@@ -4,20 +4,29 @@ import lombok.Builder;
 import lombok.Getter;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 import static java.time.LocalDateTime.now;
 
 @Getter
 public class Event<K, T> {
 
-    public enum Type {CREATE, DELETE}
+    /**
+     * UPSERT stores the data whether it exists or not and skips the write when the stored data is the same.
+     */
+    public enum Type {CREATE, DELETE, UPSERT}
 
+    /**
+     * Unique per event and kept when the message is redelivered, so consumers can skip events they already processed.
+     */
+    private String eventId;
     private Event.Type eventType;
     private K key;
     private T data;
     private LocalDateTime eventCreatedAt;
 
     public Event() {
+        this.eventId = null;
         this.eventType = null;
         this.key = null;
         this.data = null;
@@ -25,6 +34,7 @@ public class Event<K, T> {
     }
 
     public Event(Type eventType, K key, T data) {
+        this.eventId = UUID.randomUUID().toString();
         this.eventType = eventType;
         this.key = key;
         this.data = data;
@@ -0,0 +1,24 @@
+package com.geborskimateusz.api.event;
+
+/**
+ * Content types of {@link Event} messages.
+ * <p>
+ * Besides JSON, events may be sent as Smile, the binary form of JSON, which keeps the field names of the api classes
+ * but encodes them and the values compactly. The schema of the events is the api classes themselves; its version
+ * travels as the version parameter of the content type. Adding a field keeps the version, since consumers ignore
+ * fields they do not know; renaming, removing or retyping one increments it, and consumers reject events
+ * of a version newer than theirs.
+ */
+public final class EventContentType {
+
+    public static final String JSON = "application/json";
+    public static final String SMILE = "application/x-jackson-smile";
+
+    public static final String VERSION_PARAMETER = "version";
+    public static final int SCHEMA_VERSION = 1;
+
+    public static final String SMILE_VERSIONED = SMILE + ";" + VERSION_PARAMETER + "=" + SCHEMA_VERSION;
+
+    private EventContentType() {
+    }
+}
@@ -290,6 +290,12 @@ assertEqual $MOV_ID_NO_REVS $(echo $RESPONSE | jq .movieId) "$ID_CONFIRMATION"
 assertEqual 3 $(echo $RESPONSE | jq ".recommendations | length") "$RECOMMENDATIONS_CONFIRMATION"
 assertEqual 0 $(echo $RESPONSE | jq ".reviews | length") "$REVIEWS_CONFIRMATION"
 
+# Verify that a batch request returns one aggregate per existing movie, in the requested order
+assertCurl 200 "curl -k \"https://$HOST:$PORT/movie-composite?ids=$MOV_ID_NO_REVS,$MOV_ID_NOT_FOUND,$MOV_ID_REVS_RECS\" $AUTH -s"
+assertEqual 2 $(echo $RESPONSE | jq "length") "Comparing batch length."
+assertEqual "$MOV_ID_NO_REVS" $(echo $RESPONSE | jq ".[0].movieId") "$ID_CONFIRMATION"
+assertEqual "$MOV_ID_REVS_RECS" $(echo $RESPONSE | jq ".[1].movieId") "$ID_CONFIRMATION"
+
 ## Verify that a request without access token fails on 401, Unauthorized
 assertCurl 401 "curl -k https://$HOST:$PORT/movie-composite/$MOV_ID_REVS_RECS -s"
 
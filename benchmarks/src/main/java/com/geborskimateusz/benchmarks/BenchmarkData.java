@@ -0,0 +1,59 @@
+package com.geborskimateusz.benchmarks;
+
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.recommendation.Recommendation;
+import com.geborskimateusz.api.core.review.Review;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Test data shaped like what the services exchange, with texts of a realistic length.
+ */
+public final class BenchmarkData {
+
+    private static final String CONTENT = "A well paced story with a strong cast, although the second half drags a little.";
+
+    private BenchmarkData() {
+    }
+
+    public static Movie movie(int movieId) {
+        return Movie.builder()
+                .movieId(movieId)
+                .title("Movie " + movieId)
+                .genre("Drama")
+                .address("movie-service/172.18.0.5:8080")
+                .build();
+    }
+
+    public static Recommendation recommendation(int movieId, int recommendationId) {
+        return Recommendation.builder()
+                .movieId(movieId)
+                .recommendationId(recommendationId)
+                .author("Author " + recommendationId)
+                .rate(recommendationId % 5)
+                .content(CONTENT)
+                .serviceAddress("recommendation-service/172.18.0.6:8080")
+                .build();
+    }
+
+    public static Review review(int movieId, int reviewId) {
+        return Review.builder()
+                .movieId(movieId)
+                .reviewId(reviewId)
+                .author("Author " + reviewId)
+                .subject("Subject " + reviewId)
+                .content(CONTENT)
+                .serviceAddress("review-service/172.18.0.7:8080")
+                .build();
+    }
+
+    public static List<Recommendation> recommendations(int movieId, int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(id -> recommendation(movieId, id)).collect(Collectors.toList());
+    }
+
+    public static List<Review> reviews(int movieId, int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(id -> review(movieId, id)).collect(Collectors.toList());
+    }
+}
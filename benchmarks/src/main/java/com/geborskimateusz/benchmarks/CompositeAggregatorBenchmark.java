@@ -0,0 +1,55 @@
+package com.geborskimateusz.benchmarks;
+
+import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.recommendation.Recommendation;
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.microservices.composite.movie.services.utils.CompositeAggregator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of assembling a MovieAggregate, for movies with a growing number of recommendations and reviews.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompositeAggregatorBenchmark {
+
+    @Param({"0", "10", "100", "1000"})
+    int recommendationCount;
+
+    @Param({"0", "10", "100", "1000"})
+    int reviewCount;
+
+    Movie movie;
+    List<Recommendation> recommendations;
+    List<Review> reviews;
+
+    @Setup
+    public void setup() {
+        movie = BenchmarkData.movie(1);
+        recommendations = BenchmarkData.recommendations(1, recommendationCount);
+        reviews = BenchmarkData.reviews(1, reviewCount);
+    }
+
+    @Benchmark
+    public MovieAggregate createMovieAggregate() {
+        return CompositeAggregator.createMovieAggregate(movie, recommendations, reviews, "movie-composite-service/172.18.0.4:8080");
+    }
+}
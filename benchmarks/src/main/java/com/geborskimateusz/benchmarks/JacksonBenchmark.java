@@ -0,0 +1,108 @@
+package com.geborskimateusz.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.composite.movie.services.utils.CompositeAggregator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the JSON (de)serialization of the events sent between the services and of the
+ * MovieAggregate returned by the composite, with an ObjectMapper configured like Spring Boot's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JacksonBenchmark {
+
+    @Param({"0", "10", "100"})
+    int detailCount;
+
+    ObjectWriter writer;
+    ObjectReader movieEventReader;
+    ObjectReader reviewEventReader;
+    ObjectReader movieAggregateReader;
+
+    Event<Integer, Movie> movieEvent;
+    Event<Integer, Review> reviewEvent;
+    MovieAggregate movieAggregate;
+
+    byte[] movieEventJson;
+    byte[] reviewEventJson;
+    byte[] movieAggregateJson;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+        writer = mapper.writer();
+        movieEventReader = mapper.readerFor(new TypeReference<Event<Integer, Movie>>() {});
+        reviewEventReader = mapper.readerFor(new TypeReference<Event<Integer, Review>>() {});
+        movieAggregateReader = mapper.readerFor(MovieAggregate.class);
+
+        movieEvent = new Event<>(Event.Type.CREATE, 1, BenchmarkData.movie(1));
+        reviewEvent = new Event<>(Event.Type.CREATE, 1, BenchmarkData.review(1, 1));
+        movieAggregate = CompositeAggregator.createMovieAggregate(
+                BenchmarkData.movie(1),
+                BenchmarkData.recommendations(1, detailCount),
+                BenchmarkData.reviews(1, detailCount),
+                "movie-composite-service/172.18.0.4:8080");
+
+        movieEventJson = writer.writeValueAsBytes(movieEvent);
+        reviewEventJson = writer.writeValueAsBytes(reviewEvent);
+        movieAggregateJson = writer.writeValueAsBytes(movieAggregate);
+    }
+
+    @Benchmark
+    public byte[] serializeMovieEvent() throws JsonProcessingException {
+        return writer.writeValueAsBytes(movieEvent);
+    }
+
+    @Benchmark
+    public Event<Integer, Movie> deserializeMovieEvent() throws IOException {
+        return movieEventReader.readValue(movieEventJson);
+    }
+
+    @Benchmark
+    public byte[] serializeReviewEvent() throws JsonProcessingException {
+        return writer.writeValueAsBytes(reviewEvent);
+    }
+
+    @Benchmark
+    public Event<Integer, Review> deserializeReviewEvent() throws IOException {
+        return reviewEventReader.readValue(reviewEventJson);
+    }
+
+    @Benchmark
+    public byte[] serializeMovieAggregate() throws JsonProcessingException {
+        return writer.writeValueAsBytes(movieAggregate);
+    }
+
+    @Benchmark
+    public MovieAggregate deserializeMovieAggregate() throws IOException {
+        return movieAggregateReader.readValue(movieAggregateJson);
+    }
+}
@@ -0,0 +1,122 @@
+package com.geborskimateusz.benchmarks;
+
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.recommendation.Recommendation;
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.microservices.core.movie.persistence.MovieEntity;
+import com.geborskimateusz.microservices.core.movie.service.MovieMapper;
+import com.geborskimateusz.microservices.core.recommendation.persistence.RecommendationEntity;
+import com.geborskimateusz.microservices.core.recommendation.service.RecommendationMapper;
+import com.geborskimateusz.microservices.core.review.persistence.ReviewEntity;
+import com.geborskimateusz.microservices.core.review.service.ReviewMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the MapStruct mappers between the API models and the persistence entities,
+ * per entity and for the list conversions the recommendation and review services use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+    @Param({"10", "100"})
+    int listSize;
+
+    final MovieMapper movieMapper = MovieMapper.INSTANCE;
+    final RecommendationMapper recommendationMapper = RecommendationMapper.INSTANCE;
+    final ReviewMapper reviewMapper = ReviewMapper.INSTANCE;
+
+    Movie movie;
+    MovieEntity movieEntity;
+    Recommendation recommendation;
+    RecommendationEntity recommendationEntity;
+    Review review;
+    ReviewEntity reviewEntity;
+
+    List<Recommendation> recommendations;
+    List<RecommendationEntity> recommendationEntities;
+    List<Review> reviews;
+    List<ReviewEntity> reviewEntities;
+
+    @Setup
+    public void setup() {
+        movie = BenchmarkData.movie(1);
+        movieEntity = movieMapper.apiToEntity(movie);
+        recommendation = BenchmarkData.recommendation(1, 1);
+        recommendationEntity = recommendationMapper.apiToEntity(recommendation);
+        review = BenchmarkData.review(1, 1);
+        reviewEntity = reviewMapper.apiToEntity(review);
+
+        recommendations = BenchmarkData.recommendations(1, listSize);
+        recommendationEntities = recommendationMapper.apiListToEntityList(recommendations);
+        reviews = BenchmarkData.reviews(1, listSize);
+        reviewEntities = reviewMapper.apiListToEntityList(reviews);
+    }
+
+    @Benchmark
+    public MovieEntity movieApiToEntity() {
+        return movieMapper.apiToEntity(movie);
+    }
+
+    @Benchmark
+    public Movie movieEntityToApi() {
+        return movieMapper.entityToApi(movieEntity);
+    }
+
+    @Benchmark
+    public RecommendationEntity recommendationApiToEntity() {
+        return recommendationMapper.apiToEntity(recommendation);
+    }
+
+    @Benchmark
+    public Recommendation recommendationEntityToApi() {
+        return recommendationMapper.entityToApi(recommendationEntity);
+    }
+
+    @Benchmark
+    public List<RecommendationEntity> recommendationApiListToEntityList() {
+        return recommendationMapper.apiListToEntityList(recommendations);
+    }
+
+    @Benchmark
+    public List<Recommendation> recommendationEntityListToApiList() {
+        return recommendationMapper.entityListToApiList(recommendationEntities);
+    }
+
+    @Benchmark
+    public ReviewEntity reviewApiToEntity() {
+        return reviewMapper.apiToEntity(review);
+    }
+
+    @Benchmark
+    public Review reviewEntityToApi() {
+        return reviewMapper.entityToApi(reviewEntity);
+    }
+
+    @Benchmark
+    public List<ReviewEntity> reviewApiListToEntityList() {
+        return reviewMapper.apiListToEntityList(reviews);
+    }
+
+    @Benchmark
+    public List<Review> reviewEntityListToApiList() {
+        return reviewMapper.entityListToApiList(reviewEntities);
+    }
+}
@@ -0,0 +1,59 @@
+package com.geborskimateusz.util.http;
+
+import com.geborskimateusz.util.exceptions.InvalidInputException;
+import com.geborskimateusz.util.exceptions.NotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the error path: creating the exception a service throws, including its stack trace,
+ * and turning it into the HttpErrorInfo response body.
+ * <p>
+ * Lives in the package of the handler, which is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GlobalControllerExceptionHandlerBenchmark {
+
+    final GlobalControllerExceptionHandler handler = new GlobalControllerExceptionHandler();
+
+    ServerHttpRequest request;
+    NotFoundException notFoundException;
+
+    @Setup
+    public void setup() {
+        request = MockServerHttpRequest.get("/movie-composite/13").build();
+        notFoundException = new NotFoundException("No movie found for movieId: 13");
+    }
+
+    @Benchmark
+    public HttpErrorInfo handleNotFound() {
+        return handler.handleNotFoundExceptions(request, notFoundException);
+    }
+
+    @Benchmark
+    public HttpErrorInfo throwAndHandleNotFound() {
+        return handler.handleNotFoundExceptions(request, new NotFoundException("No movie found for movieId: 13"));
+    }
+
+    @Benchmark
+    public HttpErrorInfo throwAndHandleInvalidInput() {
+        return handler.handleInvalidInputException(request, new InvalidInputException("Invalid movieId: -1"));
+    }
+}
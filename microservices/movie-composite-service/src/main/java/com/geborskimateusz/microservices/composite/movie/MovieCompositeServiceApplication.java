@@ -5,8 +5,6 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 
 @SpringBootApplication
 @ComponentScan({"com.geborskimateusz"})
@@ -17,12 +15,6 @@ public class MovieCompositeServiceApplication {
         return new RestTemplate();
     }
 
-    @Bean
-    @LoadBalanced
-    public WebClient.Builder loadBalancedWebClientBuilder() {
-        return WebClient.builder();
-    }
-
     public static void main(String[] args) {
         SpringApplication.run(MovieCompositeServiceApplication.class, args);
     }
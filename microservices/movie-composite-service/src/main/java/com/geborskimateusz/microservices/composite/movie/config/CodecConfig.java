@@ -0,0 +1,39 @@
+package com.geborskimateusz.microservices.composite.movie.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeType;
+
+import java.util.Arrays;
+
+/**
+ * Spring 5.2 only streams JSON for application/stream+json, so application/x-ndjson
+ * is registered with the Jackson codecs, as an additional streaming media type for the encoder.
+ */
+@Configuration
+public class CodecConfig {
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.valueOf("application/x-ndjson");
+
+    @Bean
+    public CodecCustomizer ndjsonCodecCustomizer(ObjectMapper mapper) {
+        MimeType[] mimeTypes = {
+                new MimeType("application", "json"),
+                new MimeType("application", "*+json"),
+                APPLICATION_NDJSON
+        };
+
+        return configurer -> {
+            Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(mapper, mimeTypes);
+            encoder.setStreamingMediaTypes(Arrays.asList(MediaType.APPLICATION_STREAM_JSON, APPLICATION_NDJSON));
+
+            configurer.defaultCodecs().jackson2JsonEncoder(encoder);
+            configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(mapper, mimeTypes));
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package com.geborskimateusz.microservices.composite.movie.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.geborskimateusz.microservices.composite.movie.services.outbox.InMemoryOutboxLog;
+import com.geborskimateusz.microservices.composite.movie.services.outbox.MappedOutboxLog;
+import com.geborskimateusz.microservices.composite.movie.services.outbox.OutboxLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * The outbox is kept on the heap, or with app.outbox.storage set to mapped in memory-mapped segment files in app.outbox.directory.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.outbox.enabled", havingValue = "true")
+public class OutboxConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.outbox.storage", havingValue = "memory", matchIfMissing = true)
+    public OutboxLog inMemoryOutboxLog(@Value("${app.outbox.max-pending-events:10000}") int maxPendingEvents) {
+        return new InMemoryOutboxLog(maxPendingEvents);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "app.outbox.storage", havingValue = "mapped")
+    public OutboxLog mappedOutboxLog(
+            ObjectMapper mapper,
+            @Value("${app.outbox.directory:outbox}") String directory,
+            @Value("${app.outbox.segment-size-bytes:16777216}") int segmentSize,
+            @Value("${app.outbox.max-pending-events:10000}") int maxPendingEvents,
+            @Value("${app.outbox.force-on-append:false}") boolean forceOnAppend) throws IOException {
+
+        return new MappedOutboxLog(Paths.get(directory), segmentSize, maxPendingEvents, forceOnAppend, mapper);
+    }
+}
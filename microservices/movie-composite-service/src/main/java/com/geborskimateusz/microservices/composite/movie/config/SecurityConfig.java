@@ -1,16 +1,32 @@
 package com.geborskimateusz.microservices.composite.movie.config;
 
+import com.geborskimateusz.util.security.IdentityHeaderCodec;
+import com.geborskimateusz.util.security.TrustedIdentity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.server.resource.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.web.server.BearerTokenServerAuthenticationEntryPoint;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.security.web.server.authentication.ServerAuthenticationEntryPointFailureHandler;
+import reactor.core.publisher.Mono;
 
+@Slf4j
 @EnableWebFluxSecurity
 public class SecurityConfig {
 
     @Bean
-    SecurityWebFilterChain springSecurityWebFilterChain(ServerHttpSecurity http) {
+    SecurityWebFilterChain springSecurityWebFilterChain(
+            ServerHttpSecurity http,
+            @Value("${app.trusted-hop.enabled:false}") boolean trustedHopEnabled,
+            @Value("${app.trusted-hop.secret:}") String trustedHopSecret) {
 
         /**
          * By convention, OAuth 2.0 scopes should be prefixed with SCOPE_ when
@@ -30,6 +46,34 @@ public class SecurityConfig {
                 .oauth2ResourceServer()
                 .jwt();
 
+        if (trustedHopEnabled) {
+            http.addFilterAt(trustedHopFilter(new IdentityHeaderCodec(trustedHopSecret)), SecurityWebFiltersOrder.AUTHENTICATION);
+        }
+
         return http.build();
     }
+
+    /**
+     * Authenticates requests forwarded by the gateway from their identity header, an HMAC instead of a JWT verification.
+     * Requests without the header are left to the JWT, a header that does not verify is rejected.
+     */
+    private AuthenticationWebFilter trustedHopFilter(IdentityHeaderCodec codec) {
+        ReactiveAuthenticationManager authenticationManager = authentication -> {
+            TrustedIdentity identity = codec.decode(((BearerTokenAuthenticationToken) authentication).getToken());
+            if (identity == null) {
+                return Mono.error(new BadCredentialsException("Invalid " + IdentityHeaderCodec.HEADER + " header"));
+            }
+            return Mono.just(new TrustedHopAuthenticationToken(identity));
+        };
+
+        AuthenticationWebFilter filter = new AuthenticationWebFilter(authenticationManager);
+
+        filter.setServerAuthenticationConverter(exchange ->
+                Mono.justOrEmpty(exchange.getRequest().getHeaders().getFirst(IdentityHeaderCodec.HEADER))
+                        .map(BearerTokenAuthenticationToken::new));
+        filter.setAuthenticationFailureHandler(new ServerAuthenticationEntryPointFailureHandler(new BearerTokenServerAuthenticationEntryPoint()));
+
+        log.info("Trusts the {} header of the gateway", IdentityHeaderCodec.HEADER);
+        return filter;
+    }
 }
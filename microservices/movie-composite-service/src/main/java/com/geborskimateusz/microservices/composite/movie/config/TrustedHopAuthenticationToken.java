@@ -0,0 +1,37 @@
+package com.geborskimateusz.microservices.composite.movie.config;
+
+import com.geborskimateusz.util.security.TrustedIdentity;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.stream.Collectors;
+
+/**
+ * A caller authenticated by the gateway, with its scopes as SCOPE_ authorities like a JWT would have.
+ */
+public class TrustedHopAuthenticationToken extends AbstractAuthenticationToken {
+
+    private final TrustedIdentity identity;
+
+    public TrustedHopAuthenticationToken(TrustedIdentity identity) {
+        super(identity.getScopes().stream()
+                .map(scope -> new SimpleGrantedAuthority("SCOPE_" + scope))
+                .collect(Collectors.toList()));
+        this.identity = identity;
+        setAuthenticated(true);
+    }
+
+    public TrustedIdentity getIdentity() {
+        return identity;
+    }
+
+    @Override
+    public Object getCredentials() {
+        return "";
+    }
+
+    @Override
+    public Object getPrincipal() {
+        return identity.getSubject();
+    }
+}
@@ -0,0 +1,73 @@
+package com.geborskimateusz.microservices.composite.movie.config;
+
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * One connection pool shared by all calls to the core services.
+ * <p>
+ * The pool holds up to max-connections per service instance, an acquire waits at most acquire-timeout-ms
+ * for a free connection, and connections idle for longer than max-idle-ms are closed instead of reused.
+ * Responses are requested gzip compressed, and with h2c-enabled requests are upgraded to HTTP/2 cleartext
+ * by services that support it. Pool utilization is published as the reactor.netty.connection.provider.* gauges.
+ */
+@Slf4j
+@Configuration
+public class WebClientConfig {
+
+    private static final String CLIENT_METRICS_PREFIX = "reactor.netty.http.client";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider serviceConnectionProvider(
+            @Value("${app.web-client.max-connections:50}") int maxConnections,
+            @Value("${app.web-client.acquire-timeout-ms:1000}") long acquireTimeoutMs,
+            @Value("${app.web-client.max-idle-ms:30000}") long maxIdleMs) {
+
+        log.info("Created service connection pool, maxConnections: {}, acquireTimeout: {}ms, maxIdle: {}ms", maxConnections, acquireTimeoutMs, maxIdleMs);
+
+        return ConnectionProvider.fixed("services", maxConnections, acquireTimeoutMs, Duration.ofMillis(maxIdleMs));
+    }
+
+    @Bean
+    @LoadBalanced
+    public WebClient.Builder loadBalancedWebClientBuilder(
+            ConnectionProvider serviceConnectionProvider,
+            @Value("${app.web-client.connect-timeout-ms:1000}") int connectTimeoutMs,
+            @Value("${app.web-client.compression-enabled:true}") boolean compressionEnabled,
+            @Value("${app.web-client.h2c-enabled:false}") boolean h2cEnabled) {
+
+        HttpClient httpClient = HttpClient.create(serviceConnectionProvider)
+                .keepAlive(true)
+                .compress(compressionEnabled)
+                .metrics(true)
+                .tcpConfiguration(tcpClient -> tcpClient
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                        .option(ChannelOption.SO_KEEPALIVE, true));
+
+        if (h2cEnabled) {
+            httpClient = httpClient.protocol(HttpProtocol.HTTP11, HttpProtocol.H2C);
+        }
+
+        return WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient));
+    }
+
+    /**
+     * The client metrics are tagged with the request URI, which includes ids, so only the first URIs are kept.
+     */
+    @Bean
+    public MeterFilter webClientUriTagLimit(@Value("${app.web-client.max-uri-tags:100}") int maxUriTags) {
+        return MeterFilter.maximumAllowableTags(CLIENT_METRICS_PREFIX, "uri", maxUriTags, MeterFilter.deny());
+    }
+}
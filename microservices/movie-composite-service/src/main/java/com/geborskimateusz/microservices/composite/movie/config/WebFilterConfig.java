@@ -0,0 +1,18 @@
+package com.geborskimateusz.microservices.composite.movie.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+
+/**
+ * Puts the exchange into the Reactor context of every request, so the service can set response headers
+ * from the result, e.g. list the missing parts of an aggregate.
+ */
+@Configuration
+public class WebFilterConfig {
+
+    @Bean
+    public ServerWebExchangeContextFilter serverWebExchangeContextFilter() {
+        return new ServerWebExchangeContextFilter();
+    }
+}
@@ -1,114 +1,261 @@
 package com.geborskimateusz.microservices.composite.movie.services;
 
 import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.geborskimateusz.api.composite.movie.MovieAggregatePart;
 import com.geborskimateusz.api.composite.movie.MovieCompositeService;
 import com.geborskimateusz.api.core.movie.Movie;
 import com.geborskimateusz.api.core.recommendation.Recommendation;
 import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.microservices.composite.movie.config.TrustedHopAuthenticationToken;
+import com.geborskimateusz.microservices.composite.movie.services.cache.MovieAggregateCache;
+import com.geborskimateusz.microservices.composite.movie.services.outbox.EventOutbox;
+import com.geborskimateusz.microservices.composite.movie.services.readmodel.MovieReadModel;
 import com.geborskimateusz.microservices.composite.movie.services.utils.CompositeAggregator;
+import com.geborskimateusz.util.exceptions.InvalidInputException;
+import com.geborskimateusz.util.http.ResponseHeaders;
 import com.geborskimateusz.util.http.ServiceUtil;
+import com.geborskimateusz.util.security.TrustedIdentity;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextImpl;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
 public class BaseMovieCompositeService implements MovieCompositeService {
 
+    private static final String RECOMMENDATIONS = "recommendations";
+    private static final String REVIEWS = "reviews";
+
     private final SecurityContext nullSC = new SecurityContextImpl();
 
     private final MovieCompositeIntegration movieCompositeIntegration;
     private final ServiceUtil serviceUtil;
+    private final MovieAggregateCache movieAggregateCache;
+    private final MovieReadModel movieReadModel;
+    private final EventOutbox eventOutbox;
+    private final int maxIds;
 
     @Autowired
-    public BaseMovieCompositeService(MovieCompositeIntegration movieCompositeIntegration, ServiceUtil serviceUtil) {
+    public BaseMovieCompositeService(MovieCompositeIntegration movieCompositeIntegration, ServiceUtil serviceUtil, MovieAggregateCache movieAggregateCache,
+                                     ObjectProvider<MovieReadModel> movieReadModel, ObjectProvider<EventOutbox> eventOutbox,
+                                     @Value("${app.page.max-limit:100}") int maxIds) {
         this.movieCompositeIntegration = movieCompositeIntegration;
         this.serviceUtil = serviceUtil;
+        this.movieAggregateCache = movieAggregateCache;
+        this.movieReadModel = movieReadModel.getIfAvailable();
+        this.eventOutbox = eventOutbox.getIfAvailable();
+        this.maxIds = maxIds;
     }
 
+    /**
+     * Served from the read model when it is enabled and knows the movie, otherwise joined from the core services.
+     */
     @Override
     public Mono<MovieAggregate> getCompositeMovie(Integer movieId) {
         log.debug("getCompositeMovie: lookup a movie aggregate for movieId: {}", movieId);
 
+        MovieAggregate projected = movieReadModel == null ? null : movieReadModel.find(movieId);
+        if (projected != null) return Mono.just(projected);
+
+        return movieAggregateCache.get(movieId, () -> fetchCompositeMovie(movieId))
+                .flatMap(aggregate -> markIfPartial(aggregate.getMissingParts()).thenReturn(aggregate));
+    }
+
+    /**
+     * The movie is required, recommendations and reviews that cannot be fetched in time are left empty
+     * and listed in the aggregate's missingParts.
+     */
+    private Mono<MovieAggregate> fetchCompositeMovie(Integer movieId) {
+        List<String> missingParts = new CopyOnWriteArrayList<>();
+
         return
                 Mono.zip(
                         values -> CompositeAggregator.createMovieAggregate(
                                 (Movie) values[1],
                                 (List<Recommendation>) values[2],
                                 (List<Review>) values[3],
-                                serviceUtil.getServiceAddress()),
+                                serviceUtil.getServiceAddress(),
+                                new ArrayList<>(missingParts)),
                         ReactiveSecurityContextHolder.getContext().defaultIfEmpty(nullSC),
                         movieCompositeIntegration.getMovie(movieId),
-                        movieCompositeIntegration.getRecommendations(movieId).collectList(),
-                        movieCompositeIntegration.getReviews(movieId).collectList()
+                        orMissing(movieCompositeIntegration.getRecommendations(movieId).collectList(), RECOMMENDATIONS, missingParts, Collections.emptyList()),
+                        orMissing(movieCompositeIntegration.getReviews(movieId).collectList(), REVIEWS, missingParts, Collections.emptyList())
                 ).doOnError(ex -> log.warn("getCompositeMovie failed: {}", ex.toString())).log();
 
     }
 
+    @Override
+    public Flux<MovieAggregatePart> getCompositeMovieStream(Integer movieId) {
+        log.debug("getCompositeMovieStream: streams a movie aggregate for movieId: {}", movieId);
+
+        Flux<MovieAggregatePart> header = movieCompositeIntegration.getMovie(movieId)
+                .map(movie -> CompositeAggregator.createMoviePart(movie, serviceUtil.getServiceAddress()))
+                .flux();
+
+        Flux<MovieAggregatePart> details = Flux.merge(
+                movieCompositeIntegration.streamRecommendations(movieId).map(CompositeAggregator::createRecommendationPart)
+                        .onErrorResume(ex -> skipPart(RECOMMENDATIONS, ex)),
+                movieCompositeIntegration.streamReviews(movieId).map(CompositeAggregator::createReviewPart)
+                        .onErrorResume(ex -> skipPart(REVIEWS, ex)));
+
+        // Subscribes to all backends at once, but holds details back until the header is out.
+        return Flux.mergeSequential(header, details)
+                .doOnError(ex -> log.warn("getCompositeMovieStream failed: {}", ex.toString()));
+    }
+
+    @Override
+    public Flux<MovieAggregate> getCompositeMovies(List<Integer> movieIds) {
+        log.debug("getCompositeMovies: lookup movie aggregates for movieIds: {}", movieIds);
+
+        if (movieIds.size() > maxIds) throw new InvalidInputException("Invalid number of movieIds: " + movieIds.size() + ", expected at most " + maxIds);
+
+        movieIds.stream().filter(movieId -> movieId < 1).findFirst().ifPresent(movieId -> {
+            throw new InvalidInputException("Invalid movieId: " + movieId);
+        });
+
+        List<Integer> distinctIds = movieIds.stream().distinct().collect(Collectors.toList());
+
+        if (distinctIds.isEmpty()) return Flux.empty();
+
+        List<String> missingParts = new CopyOnWriteArrayList<>();
+
+        return
+                Mono.zip(
+                        movieCompositeIntegration.getMovies(distinctIds).collectMap(Movie::getMovieId, Function.identity()),
+                        orMissing(movieCompositeIntegration.getRecommendations(distinctIds).collectMultimap(Recommendation::getMovieId), RECOMMENDATIONS, missingParts, Collections.emptyMap()),
+                        orMissing(movieCompositeIntegration.getReviews(distinctIds).collectMultimap(Review::getMovieId), REVIEWS, missingParts, Collections.emptyMap())
+                ).flatMapMany(values -> markIfPartial(missingParts).thenMany(Flux.fromStream(distinctIds.stream()
+                        .filter(values.getT1()::containsKey)
+                        .map(movieId -> CompositeAggregator.createMovieAggregate(
+                                values.getT1().get(movieId),
+                                forMovie(values.getT2(), movieId),
+                                forMovie(values.getT3(), movieId),
+                                serviceUtil.getServiceAddress(),
+                                new ArrayList<>(missingParts)))))
+                ).doOnError(ex -> log.warn("getCompositeMovies failed: {}", ex.toString())).log();
+    }
+
+    /**
+     * Publishes the movie, its recommendations and its reviews as one burst and completes
+     * only once the broker has confirmed every one of them.
+     * With the outbox enabled all of them are appended to the outbox at once instead, and relayed later.
+     */
     @Override
     public Mono<Void> createCompositeMovie(MovieAggregate body) {
         return ReactiveSecurityContextHolder.getContext()
-                .doOnSuccess(securityContext -> internalCreateCompositeMovie(securityContext, body))
-                .then();
+                .defaultIfEmpty(nullSC)
+                .flatMap(securityContext -> internalCreateCompositeMovie(securityContext, body));
     }
 
-    private void internalCreateCompositeMovie(SecurityContext securityContext, MovieAggregate body) {
-
-        try {
+    private Mono<Void> internalCreateCompositeMovie(SecurityContext securityContext, MovieAggregate body) {
 
-            logAuthorizationInfo(securityContext);
+        logAuthorizationInfo(securityContext);
 
-            log.info("createCompositeMovie: Trying to create new Movie Entity for movieId: {} ", body.getMovieId());
-            log.info(body.toString());
+        log.info("createCompositeMovie: Trying to create new Movie Entity for movieId: {} ", body.getMovieId());
+        log.info(body.toString());
 
-            createMovieFromBody(body);
-            createRecommendationsFromBody(body);
-            createReviewsFromBody(body);
+        Movie movie = movieFromBody(body);
+        List<Recommendation> recommendations = recommendationsFromBody(body);
+        List<Review> reviews = reviewsFromBody(body);
 
-        } catch (RuntimeException ex) {
-            log.warn("createCompositeMovie failed", ex);
-            throw ex;
+        if (eventOutbox != null) {
+            return eventOutbox.appendCreate(movie, recommendations, reviews)
+                    .doOnError(ex -> log.warn("createCompositeMovie failed: {}", ex.toString()));
         }
+
+        List<Mono<?>> publications = new ArrayList<>();
+        publications.add(movieCompositeIntegration.createMovie(movie));
+        recommendations.forEach(recommendation -> publications.add(movieCompositeIntegration.createRecommendation(recommendation)));
+        reviews.forEach(review -> publications.add(movieCompositeIntegration.createReview(review)));
+
+        return Flux.merge(publications)
+                .then()
+                .doOnError(ex -> log.warn("createCompositeMovie failed", ex));
     }
 
     @Override
     public Mono<Void> deleteCompositeMovie(int movieId) {
 
         return ReactiveSecurityContextHolder.getContext()
-                .doOnSuccess(securityContext -> internalDeleteCompositeMovie(securityContext, movieId))
-                .then();
+                .defaultIfEmpty(nullSC)
+                .flatMap(securityContext -> internalDeleteCompositeMovie(securityContext, movieId));
 
     }
 
-    private void internalDeleteCompositeMovie(SecurityContext securityContext, int movieId) {
+    private Mono<Void> internalDeleteCompositeMovie(SecurityContext securityContext, int movieId) {
 
         logAuthorizationInfo(securityContext);
 
-        try {
-            log.debug("deleteCompositeMovie will delete Movie, Reviews, Recommendations belonging to Movie with id: {}", movieId);
-
-            movieCompositeIntegration.deleteMovie(movieId);
-            movieCompositeIntegration.deleteReviews(movieId);
-            movieCompositeIntegration.deleteRecommendations(movieId);
+        log.debug("deleteCompositeMovie will delete Movie, Reviews, Recommendations belonging to Movie with id: {}", movieId);
 
-            log.debug("deleteCompositeMovie deleted Movie, Reviews, Recommendations belonging to Movie with id: {}", movieId);
-        } catch (RuntimeException ex) {
-            log.warn("deleteCompositeMovie failed: {}", ex.toString());
-            throw ex;
+        if (eventOutbox != null) {
+            return eventOutbox.appendDelete(movieId)
+                    .doOnError(ex -> log.warn("deleteCompositeMovie failed: {}", ex.toString()));
         }
+
+        return Mono.when(
+                movieCompositeIntegration.deleteMovie(movieId),
+                movieCompositeIntegration.deleteReviews(movieId),
+                movieCompositeIntegration.deleteRecommendations(movieId))
+                .doOnSuccess(done -> log.debug("deleteCompositeMovie deleted Movie, Reviews, Recommendations belonging to Movie with id: {}", movieId))
+                .doOnError(ex -> log.warn("deleteCompositeMovie failed: {}", ex.toString()));
+    }
+
+
+    private <T> Mono<T> orMissing(Mono<T> part, String partName, List<String> missingParts, T fallback) {
+        return part.onErrorResume(ex -> {
+            log.warn("Composite continues without {}: {}", partName, ex.toString());
+            missingParts.add(partName);
+            return Mono.just(fallback);
+        });
+    }
+
+    /**
+     * Lists the missing parts in the response's {@link ResponseHeaders#MISSING_PARTS} header, so the gateway does not
+     * keep an aggregate degraded by a backend outage once the backend has recovered.
+     */
+    private Mono<Void> markIfPartial(List<String> missingParts) {
+        if (missingParts == null || missingParts.isEmpty()) return Mono.empty();
+
+        return Mono.subscriberContext()
+                .doOnNext(context -> ServerWebExchangeContextFilter.get(context)
+                        .ifPresent(exchange -> exchange.getResponse().getHeaders().put(ResponseHeaders.MISSING_PARTS, new ArrayList<>(missingParts))))
+                .then();
     }
 
+    private <T> Flux<T> skipPart(String partName, Throwable ex) {
+        log.warn("Composite stream continues without {}: {}", partName, ex.toString());
+        return Flux.empty();
+    }
+
+    private <T> List<T> forMovie(Map<Integer, Collection<T>> byMovieId, int movieId) {
+        return new ArrayList<>(byMovieId.getOrDefault(movieId, Collections.emptyList()));
+    }
+
+
+    private List<Review> reviewsFromBody(MovieAggregate body) {
+        List<Review> reviews = new ArrayList<>();
 
-    private void createReviewsFromBody(MovieAggregate body) {
         if (body.getReviews() != null && !body.getReviews().isEmpty()) {
             body.getReviews().forEach(reviewSummary -> {
                 Review review = Review.builder()
@@ -120,15 +267,19 @@ public class BaseMovieCompositeService implements MovieCompositeService {
                         .serviceAddress(null)
                         .build();
 
-                log.info("createReviewsFromBody -> reviews size: {}, actual: {}", body.getReviews().size(), review);
-                movieCompositeIntegration.createReview(review);
+                log.info("reviewsFromBody -> reviews size: {}, actual: {}", body.getReviews().size(), review);
+                reviews.add(review);
             });
+        } else {
+            log.info("There are no reviews in MovieAggregate");
         }
 
-        log.info("There are no reviews in MovieAggregate");
+        return reviews;
     }
 
-    private void createRecommendationsFromBody(MovieAggregate body) {
+    private List<Recommendation> recommendationsFromBody(MovieAggregate body) {
+        List<Recommendation> recommendations = new ArrayList<>();
+
         if (body.getRecommendations() != null && !body.getRecommendations().isEmpty()) {
             body.getRecommendations().forEach(recommendationSummary -> {
                 Recommendation recommendation = Recommendation.builder()
@@ -140,15 +291,17 @@ public class BaseMovieCompositeService implements MovieCompositeService {
                         .serviceAddress(null)
                         .build();
 
-                log.info("createRecommendationsFromBody -> recommendations size: {}, actual {}", body.getRecommendations().size(), recommendation);
-                movieCompositeIntegration.createRecommendation(recommendation);
+                log.info("recommendationsFromBody -> recommendations size: {}, actual {}", body.getRecommendations().size(), recommendation);
+                recommendations.add(recommendation);
             });
+        } else {
+            log.info("There are no recommendations in MovieAggregate");
         }
 
-        log.info("There are no recommendations in MovieAggregate");
+        return recommendations;
     }
 
-    private void createMovieFromBody(MovieAggregate body) {
+    private Movie movieFromBody(MovieAggregate body) {
         Movie movie = Movie.builder()
                 .movieId(body.getMovieId())
                 .genre(body.getGenre())
@@ -156,8 +309,8 @@ public class BaseMovieCompositeService implements MovieCompositeService {
                 .address(null)
                 .build();
 
-        log.debug("createMovieFromBody, movieId: {}", movie.getMovieId());
-        movieCompositeIntegration.createMovie(movie);
+        log.debug("movieFromBody, movieId: {}", movie.getMovieId());
+        return movie;
     }
 
     private void logAuthorizationInfo(SecurityContext securityContext) {
@@ -171,6 +324,14 @@ public class BaseMovieCompositeService implements MovieCompositeService {
         ) {
             Jwt jwt = ((JwtAuthenticationToken) securityContext.getAuthentication()).getToken();
             logAuthorizationInfo(jwt);
+        } else if (
+            //@formatter:off
+                securityContext != null &&
+                securityContext.getAuthentication() instanceof TrustedHopAuthenticationToken
+            //@formatter:on
+        ) {
+            TrustedIdentity identity = ((TrustedHopAuthenticationToken) securityContext.getAuthentication()).getIdentity();
+            log.debug("Authorization info from the gateway: Subject: {}, scopes: {}, expires: {}", identity.getSubject(), identity.getScopes(), identity.getExpiresAt());
         } else {
             log.warn("No JWT token supplied.");
         }
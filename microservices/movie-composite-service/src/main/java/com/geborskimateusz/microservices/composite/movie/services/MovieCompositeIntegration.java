@@ -8,15 +8,20 @@ import com.geborskimateusz.api.core.recommendation.RecommendationService;
 import com.geborskimateusz.api.core.review.Review;
 import com.geborskimateusz.api.core.review.ReviewService;
 import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.composite.movie.services.cache.MovieAggregateCache;
+import com.geborskimateusz.microservices.composite.movie.services.cache.SingleFlight;
+import com.geborskimateusz.microservices.composite.movie.services.publishing.EventPublisher;
+import com.geborskimateusz.microservices.composite.movie.services.resilience.Backends;
 import com.geborskimateusz.microservices.composite.movie.services.utils.MessageSources;
 import com.geborskimateusz.util.exceptions.InvalidInputException;
 import com.geborskimateusz.util.exceptions.NotFoundException;
 import com.geborskimateusz.util.http.HttpErrorInfo;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.cloud.stream.annotation.EnableBinding;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
@@ -24,6 +29,8 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
 
 
 @Slf4j
@@ -40,57 +47,72 @@ public class MovieCompositeIntegration implements MovieService, RecommendationSe
     private final String REVIEW_SERVICE_URL = "http://review";
     private static final String REVIEW = "/review";
 
-    private final WebClient.Builder webClientBuilder;
-    private WebClient webClient;
+    private final WebClient webClient;
     private final ObjectMapper mapper;
 
     private final MessageSources messageSources;
+    private final EventPublisher eventPublisher;
+    private final MovieAggregateCache movieAggregateCache;
+    private final Backends backends;
+
+    private final int detailsPageSize;
+    private final boolean detailsIncludeContent;
+
+    private final SingleFlight<Integer, Movie> movieCalls;
+    private final SingleFlight<Integer, List<Recommendation>> recommendationCalls;
+    private final SingleFlight<Integer, List<Review>> reviewCalls;
 
     @Autowired
     public MovieCompositeIntegration(
             WebClient.Builder webClientBuilder,
             MessageSources messageSources,
-            ObjectMapper mapper
+            EventPublisher eventPublisher,
+            ObjectMapper mapper,
+            MovieAggregateCache movieAggregateCache,
+            MeterRegistry meterRegistry,
+            Backends backends,
+            @Value("${app.movie-composite.details.page-size:0}") int detailsPageSize,
+            @Value("${app.movie-composite.details.include-content:true}") boolean detailsIncludeContent
     ) {
-        this.webClientBuilder = webClientBuilder;
+        this.webClient = webClientBuilder.build();
         this.messageSources = messageSources;
+        this.eventPublisher = eventPublisher;
         this.mapper = mapper;
+        this.movieAggregateCache = movieAggregateCache;
+        this.backends = backends;
+        this.detailsPageSize = detailsPageSize;
+        this.detailsIncludeContent = detailsIncludeContent;
+
+        this.movieCalls = new SingleFlight<>("getMovie", meterRegistry);
+        this.recommendationCalls = new SingleFlight<>("getRecommendations", meterRegistry);
+        this.reviewCalls = new SingleFlight<>("getReviews", meterRegistry);
     }
 
     @Override
-    public Movie createMovie(Movie movie) {
+    public Mono<Movie> createMovie(Movie movie) {
         log.info("MovieCompositeIntegration.createMovie(Movie movie), passed argument: {}", movie.toString());
 
-        messageSources.outputMovies()
-                .send(MessageBuilder.withPayload(
-                        new Event<>(Event.Type.CREATE, movie.getMovieId(), movie)
-                ).build());
-
-        return movie;
+        return eventPublisher.publish(messageSources.outputMovies(), new Event<>(Event.Type.CREATE, movie.getMovieId(), movie))
+                .doFinally(signal -> movieAggregateCache.invalidate(movie.getMovieId()))
+                .thenReturn(movie);
     }
 
     @Override
-    public Recommendation createRecommendation(Recommendation recommendation) {
+    public Mono<Recommendation> createRecommendation(Recommendation recommendation) {
         log.info("MovieCompositeIntegration.createRecommendation(Recommendation recommendation), passed argument: {}", recommendation.toString());
 
-        messageSources.outputRecommendations()
-                .send(MessageBuilder.withPayload(
-                        new Event<>(Event.Type.CREATE, recommendation.getMovieId(), recommendation)
-                ).build());
-
-        return recommendation;
+        return eventPublisher.publish(messageSources.outputRecommendations(), new Event<>(Event.Type.CREATE, recommendation.getMovieId(), recommendation))
+                .doFinally(signal -> movieAggregateCache.invalidate(recommendation.getMovieId()))
+                .thenReturn(recommendation);
     }
 
     @Override
-    public Review createReview(Review review) {
+    public Mono<Review> createReview(Review review) {
         log.info("MovieCompositeIntegration.createReview(Review review), passed argument: {}", review.toString());
 
-        messageSources.outputReviews()
-                .send(MessageBuilder.withPayload(
-                        new Event<>(Event.Type.CREATE, review.getMovieId(), review)
-                ).build());
-
-        return review;
+        return eventPublisher.publish(messageSources.outputReviews(), new Event<>(Event.Type.CREATE, review.getMovieId(), review))
+                .doFinally(signal -> movieAggregateCache.invalidate(review.getMovieId()))
+                .thenReturn(review);
     }
 
     @Override
@@ -100,72 +122,194 @@ public class MovieCompositeIntegration implements MovieService, RecommendationSe
 
         log.debug("Will call getMovie API on URL: {}", url);
 
-        return getWebClient()
+        return movieCalls.execute(movieId, () -> backends.movie().call(() -> webClient
                 .get().uri(url)
                 .retrieve()
                 .bodyToMono(Movie.class)
                 .log()
-                .onErrorMap(WebClientResponseException.class, this::handleHttpClientException);
+                .onErrorMap(WebClientResponseException.class, this::handleHttpClientException)));
     }
 
 
+    @Override
+    public Flux<Movie> getMovies(List<Integer> movieIds) {
+
+        String url = MOVIE_SERVICE_URL + MOVIE + "?ids=" + joinIds(movieIds);
+
+        log.debug("Will call getMovies API on URL: {}", url);
+
+        return fetchMovies(url).flatMapIterable(movies -> movies);
+    }
+
+
+    @Override
+    public Flux<Movie> getMovies(int afterMovieId, int limit) {
+
+        String url = MOVIE_SERVICE_URL + MOVIE + "?afterMovieId=" + afterMovieId + "&limit=" + limit;
+
+        log.debug("Will call getMovies API on URL: {}", url);
+
+        return fetchMovies(url).flatMapIterable(movies -> movies);
+    }
+
+    /**
+     * All recommendations of the movie, or only the first page of them when app.movie-composite.details.page-size is set.
+     */
     @Override
     public Flux<Recommendation> getRecommendations(int movieId) {
 
-        String url = RECOMMENDATION_SERVICE_URL + RECOMMENDATION + "?movieId=" + movieId;
+        String url = RECOMMENDATION_SERVICE_URL + RECOMMENDATION + "?movieId=" + movieId + firstPageParams();
 
         log.debug("Will call the getRecommendations API on URL: {}", url);
 
-        return getWebClient().get()
+        return recommendationCalls.execute(movieId, () -> fetchRecommendations(url))
+                .flatMapIterable(recommendations -> recommendations);
+    }
+
+    /**
+     * The recommendations of {@link #getRecommendations(int)} as they arrive, neither coalesced nor collected,
+     * so a streamed composite can pass each one on at once.
+     */
+    public Flux<Recommendation> streamRecommendations(int movieId) {
+
+        String url = RECOMMENDATION_SERVICE_URL + RECOMMENDATION + "?movieId=" + movieId + firstPageParams();
+
+        log.debug("Will stream the getRecommendations API on URL: {}", url);
+
+        return backends.recommendation().stream(() -> webClient.get()
                 .uri(url)
                 .retrieve()
                 .bodyToFlux(Recommendation.class)
-                .log()
-                .onErrorResume(error -> Flux.empty());
+                .onErrorMap(WebClientResponseException.class, this::handleHttpClientException));
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(int movieId, int afterRecommendationId, int limit, boolean includeContent) {
+
+        String url = RECOMMENDATION_SERVICE_URL + RECOMMENDATION + "?movieId=" + movieId
+                + "&afterRecommendationId=" + afterRecommendationId + "&limit=" + limit + "&includeContent=" + includeContent;
+
+        log.debug("Will call the getRecommendations API on URL: {}", url);
+
+        return fetchRecommendations(url).flatMapIterable(recommendations -> recommendations);
     }
 
+    /**
+     * All reviews of the movie, or only the first page of them when app.movie-composite.details.page-size is set.
+     */
     @Override
     public Flux<Review> getReviews(int movieId) {
-        String url = REVIEW_SERVICE_URL + REVIEW + "?movieId=" + movieId;
+        String url = REVIEW_SERVICE_URL + REVIEW + "?movieId=" + movieId + firstPageParams();
 
         log.debug("Will call the getReviews API on URL: {}", url);
 
-        return getWebClient().get()
+        return reviewCalls.execute(movieId, () -> fetchReviews(url))
+                .flatMapIterable(reviews -> reviews);
+    }
+
+    /**
+     * The reviews of {@link #getReviews(int)} as they arrive, neither coalesced nor collected,
+     * so a streamed composite can pass each one on at once.
+     */
+    public Flux<Review> streamReviews(int movieId) {
+        String url = REVIEW_SERVICE_URL + REVIEW + "?movieId=" + movieId + firstPageParams();
+
+        log.debug("Will stream the getReviews API on URL: {}", url);
+
+        return backends.review().stream(() -> webClient.get()
                 .uri(url)
                 .retrieve()
                 .bodyToFlux(Review.class)
-                .log()
-                .onErrorResume(error -> Flux.empty());
+                .onErrorMap(WebClientResponseException.class, this::handleHttpClientException));
+    }
+
+    @Override
+    public Flux<Review> getReviews(int movieId, int afterReviewId, int limit, boolean includeContent) {
+        String url = REVIEW_SERVICE_URL + REVIEW + "?movieId=" + movieId
+                + "&afterReviewId=" + afterReviewId + "&limit=" + limit + "&includeContent=" + includeContent;
+
+        log.debug("Will call the getReviews API on URL: {}", url);
+
+        return fetchReviews(url).flatMapIterable(reviews -> reviews);
     }
 
     @Override
-    public void deleteMovie(Integer movieId) {
-        messageSources.outputMovies()
-                .send(MessageBuilder.withPayload(
-                        new Event<>(Event.Type.DELETE, movieId, null)).build());
+    public Flux<Recommendation> getRecommendations(List<Integer> movieIds) {
+
+        String url = RECOMMENDATION_SERVICE_URL + RECOMMENDATION + "?ids=" + joinIds(movieIds);
+
+        log.debug("Will call the getRecommendations API on URL: {}", url);
+
+        return fetchRecommendations(url).flatMapIterable(recommendations -> recommendations);
     }
 
     @Override
-    public void deleteRecommendations(int movieId) {
-        messageSources.outputRecommendations()
-                .send(MessageBuilder.withPayload(
-                        new Event<>(Event.Type.DELETE, movieId, null))
-                        .build());
+    public Flux<Review> getReviews(List<Integer> movieIds) {
+        String url = REVIEW_SERVICE_URL + REVIEW + "?ids=" + joinIds(movieIds);
+
+        log.debug("Will call the getReviews API on URL: {}", url);
+
+        return fetchReviews(url).flatMapIterable(reviews -> reviews);
     }
 
     @Override
-    public void deleteReviews(int movieId) {
-        messageSources.outputReviews()
-                .send(MessageBuilder.withPayload(
-                        new Event<>(Event.Type.DELETE, movieId, null)).build());
+    public Mono<Void> deleteMovie(Integer movieId) {
+        return eventPublisher.publish(messageSources.outputMovies(), new Event<>(Event.Type.DELETE, movieId, null))
+                .doFinally(signal -> movieAggregateCache.invalidate(movieId));
     }
 
-    private WebClient getWebClient() {
-        if (webClient == null) {
-            webClient = webClientBuilder.build();
-        }
+    @Override
+    public Mono<Void> deleteRecommendations(int movieId) {
+        return eventPublisher.publish(messageSources.outputRecommendations(), new Event<>(Event.Type.DELETE, movieId, null))
+                .doFinally(signal -> movieAggregateCache.invalidate(movieId));
+    }
+
+    @Override
+    public Mono<Void> deleteReviews(int movieId) {
+        return eventPublisher.publish(messageSources.outputReviews(), new Event<>(Event.Type.DELETE, movieId, null))
+                .doFinally(signal -> movieAggregateCache.invalidate(movieId));
+    }
+
+    /**
+     * Each response is collected as a whole within the backend's timeout and bulkhead, and errors reach the caller,
+     * which decides whether the composite can do without the data.
+     */
+    private Mono<List<Movie>> fetchMovies(String url) {
+        return backends.movie().call(() -> webClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Movie.class)
+                .log()
+                .collectList()
+                .onErrorMap(WebClientResponseException.class, this::handleHttpClientException));
+    }
+
+    private Mono<List<Recommendation>> fetchRecommendations(String url) {
+        return backends.recommendation().call(() -> webClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Recommendation.class)
+                .log()
+                .collectList()
+                .onErrorMap(WebClientResponseException.class, this::handleHttpClientException));
+    }
+
+    private Mono<List<Review>> fetchReviews(String url) {
+        return backends.review().call(() -> webClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .log()
+                .collectList()
+                .onErrorMap(WebClientResponseException.class, this::handleHttpClientException));
+    }
+
+    private String firstPageParams() {
+        return detailsPageSize > 0 ? "&limit=" + detailsPageSize + "&includeContent=" + detailsIncludeContent : "";
+    }
 
-        return webClient;
+    private String joinIds(List<Integer> movieIds) {
+        return movieIds.stream().map(String::valueOf).collect(Collectors.joining(","));
     }
 
 
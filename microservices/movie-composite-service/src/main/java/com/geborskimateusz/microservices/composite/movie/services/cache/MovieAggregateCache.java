@@ -0,0 +1,104 @@
+package com.geborskimateusz.microservices.composite.movie.services.cache;
+
+import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of assembled {@link MovieAggregate}s, keyed by movieId.
+ * <p>
+ * Core services apply CREATE and DELETE events asynchronously, so right after a write
+ * a lookup may still see the old or a half-written state. A movieId that was just
+ * invalidated is therefore served uncached until the settle period has passed.
+ * Aggregates with missing parts are not cached either.
+ * <p>
+ * Concurrent misses for the same movieId share a single load, see {@link SingleFlight}.
+ */
+@Slf4j
+@Component
+public class MovieAggregateCache {
+
+    public static final String CACHE_NAME = "movie-aggregates";
+
+    private final Cache<Integer, MovieAggregate> aggregates;
+    private final Cache<Integer, Boolean> recentlyWritten;
+    private final SingleFlight<Integer, MovieAggregate> loads;
+
+    @Autowired
+    public MovieAggregateCache(
+            @Value("${app.movie-composite.cache.max-size:10000}") long maxSize,
+            @Value("${app.movie-composite.cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${app.movie-composite.cache.write-settle-seconds:10}") long writeSettleSeconds,
+            MeterRegistry meterRegistry
+    ) {
+        this.aggregates = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        this.recentlyWritten = Caffeine.newBuilder()
+                .expireAfterWrite(writeSettleSeconds, TimeUnit.SECONDS)
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, aggregates, CACHE_NAME);
+
+        this.loads = new SingleFlight<>("getCompositeMovie", meterRegistry);
+
+        log.info("Created movie aggregate cache, maxSize: {}, ttl: {}s, writeSettle: {}s", maxSize, ttlSeconds, writeSettleSeconds);
+    }
+
+    /**
+     * Returns the cached aggregate for movieId, or subscribes to the one created by loader and caches it.
+     * The loader is invoked eagerly on a miss, so errors it throws reach the caller unchanged,
+     * but only the first of concurrent subscribers for a movieId subscribes to its loader's Mono.
+     */
+    public Mono<MovieAggregate> get(int movieId, Supplier<Mono<MovieAggregate>> loader) {
+        MovieAggregate cached = aggregates.getIfPresent(movieId);
+
+        if (cached != null) {
+            log.debug("get: cache hit for movieId: {}", movieId);
+            return Mono.just(cached);
+        }
+
+        Mono<MovieAggregate> load = loader.get().doOnNext(aggregate -> put(movieId, aggregate));
+
+        return loads.execute(movieId, () -> load);
+    }
+
+    public void invalidate(int movieId) {
+        log.debug("invalidate: evicts movie aggregate for movieId: {}", movieId);
+
+        recentlyWritten.put(movieId, Boolean.TRUE);
+        aggregates.invalidate(movieId);
+    }
+
+    public void invalidateAll() {
+        recentlyWritten.invalidateAll();
+        aggregates.invalidateAll();
+    }
+
+    private void put(int movieId, MovieAggregate aggregate) {
+        if (recentlyWritten.getIfPresent(movieId) != null) {
+            log.debug("put: skips caching movieId: {}, written recently", movieId);
+            return;
+        }
+
+        if (aggregate.getMissingParts() != null && !aggregate.getMissingParts().isEmpty()) {
+            log.debug("put: skips caching movieId: {}, missing {}", movieId, aggregate.getMissingParts());
+            return;
+        }
+
+        aggregates.put(movieId, aggregate);
+    }
+}
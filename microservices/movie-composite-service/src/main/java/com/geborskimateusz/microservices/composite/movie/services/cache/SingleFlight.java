@@ -0,0 +1,57 @@
+package com.geborskimateusz.microservices.composite.movie.services.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Shares one in-flight call per key among all concurrent subscribers.
+ * <p>
+ * The first subscriber for a key starts the call; everyone subscribing for the same key
+ * until it completes gets the same result or error, and is counted as a coalesced call
+ * in the composite.calls.coalesced counter, tagged with the operation.
+ */
+@Slf4j
+public class SingleFlight<K, V> {
+
+    public static final String COALESCED_CALLS_METRIC = "composite.calls.coalesced";
+
+    private final String operation;
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalescedCalls;
+
+    public SingleFlight(String operation, MeterRegistry meterRegistry) {
+        this.operation = operation;
+        this.coalescedCalls = Counter.builder(COALESCED_CALLS_METRIC)
+                .description("Calls that shared an identical call already in flight")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<V>> started = new AtomicReference<>();
+
+            Mono<V> shared = inFlight.computeIfAbsent(key, k -> {
+                Mono<V> sharedCall = call.get()
+                        .doFinally(signal -> inFlight.remove(k, started.get()))
+                        .cache();
+                started.set(sharedCall);
+                return sharedCall;
+            });
+
+            if (shared != started.get()) {
+                log.debug("{}: joins the call in flight for key: {}", operation, key);
+                coalescedCalls.increment();
+            }
+
+            return shared;
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.recommendation.Recommendation;
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.composite.movie.services.cache.MovieAggregateCache;
+import com.geborskimateusz.microservices.composite.movie.services.utils.MessageSources;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accepts the events of a composite write into the {@link OutboxLog}, all of them in one record,
+ * and leaves publishing them to the {@link OutboxRelay}.
+ * <p>
+ * The returned Mono completes as soon as the record is appended, so a write is acknowledged before the
+ * broker has seen it, and fails with a ServiceUnavailableException only when the outbox is full.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.outbox.enabled", havingValue = "true")
+public class EventOutbox {
+
+    private final OutboxLog outboxLog;
+    private final MovieAggregateCache movieAggregateCache;
+
+    @Autowired
+    public EventOutbox(OutboxLog outboxLog, MovieAggregateCache movieAggregateCache) {
+        this.outboxLog = outboxLog;
+        this.movieAggregateCache = movieAggregateCache;
+    }
+
+    public Mono<Void> appendCreate(Movie movie, List<Recommendation> recommendations, List<Review> reviews) {
+        List<OutboxEvent> events = new ArrayList<>();
+
+        events.add(new OutboxEvent(MessageSources.OUTPUT_MOVIES, new Event<>(Event.Type.CREATE, movie.getMovieId(), movie)));
+        recommendations.forEach(recommendation -> events.add(new OutboxEvent(MessageSources.OUTPUT_RECOMMENDATIONS,
+                new Event<>(Event.Type.CREATE, recommendation.getMovieId(), recommendation))));
+        reviews.forEach(review -> events.add(new OutboxEvent(MessageSources.OUTPUT_REVIEWS,
+                new Event<>(Event.Type.CREATE, review.getMovieId(), review))));
+
+        return append(movie.getMovieId(), events);
+    }
+
+    public Mono<Void> appendDelete(int movieId) {
+        return append(movieId, Arrays.asList(
+                new OutboxEvent(MessageSources.OUTPUT_MOVIES, new Event<>(Event.Type.DELETE, movieId, null)),
+                new OutboxEvent(MessageSources.OUTPUT_REVIEWS, new Event<>(Event.Type.DELETE, movieId, null)),
+                new OutboxEvent(MessageSources.OUTPUT_RECOMMENDATIONS, new Event<>(Event.Type.DELETE, movieId, null))));
+    }
+
+    private Mono<Void> append(int movieId, List<OutboxEvent> events) {
+        return Mono.fromRunnable(() -> {
+            long position = outboxLog.append(events);
+            movieAggregateCache.invalidate(movieId);
+
+            log.debug("Appended {} events for movieId: {} to the outbox at position {}", events.size(), movieId, position);
+        });
+    }
+}
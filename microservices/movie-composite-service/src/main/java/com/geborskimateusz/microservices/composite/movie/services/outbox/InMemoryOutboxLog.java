@@ -0,0 +1,70 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * {@link OutboxLog} kept on the heap, holding at most max-pending-events events.
+ * Pending events survive broker outages, but not a restart of the composite.
+ */
+@Slf4j
+public class InMemoryOutboxLog implements OutboxLog {
+
+    private final int maxPendingEvents;
+
+    private final Deque<OutboxRecord> records = new ArrayDeque<>();
+    private long nextPosition = 0;
+    private int pendingEvents = 0;
+
+    public InMemoryOutboxLog(int maxPendingEvents) {
+        this.maxPendingEvents = maxPendingEvents;
+
+        log.info("Created in-memory outbox, maxPendingEvents: {}", maxPendingEvents);
+    }
+
+    @Override
+    public synchronized long append(List<OutboxEvent> events) {
+        if (pendingEvents + events.size() > maxPendingEvents) {
+            throw new ServiceUnavailableException("The outbox is full, try again later");
+        }
+
+        OutboxRecord record = new OutboxRecord(nextPosition++, Collections.unmodifiableList(new ArrayList<>(events)));
+        records.addLast(record);
+        pendingEvents += events.size();
+
+        return record.getPosition();
+    }
+
+    @Override
+    public synchronized List<OutboxRecord> read(int maxEvents) {
+        List<OutboxRecord> batch = new ArrayList<>();
+        int events = 0;
+
+        for (OutboxRecord record : records) {
+            if (!batch.isEmpty() && events + record.getEvents().size() > maxEvents) break;
+
+            batch.add(record);
+            events += record.getEvents().size();
+        }
+
+        return batch;
+    }
+
+    @Override
+    public synchronized void commit(long position) {
+        while (!records.isEmpty() && records.peekFirst().getPosition() <= position) {
+            pendingEvents -= records.removeFirst().getEvents().size();
+        }
+    }
+
+    @Override
+    public synchronized int pendingEvents() {
+        return pendingEvents;
+    }
+}
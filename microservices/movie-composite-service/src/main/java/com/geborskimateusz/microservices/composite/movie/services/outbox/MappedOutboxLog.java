@@ -0,0 +1,374 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.util.exceptions.InvalidInputException;
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * {@link OutboxLog} kept in memory-mapped segment files, so pending events survive a restart of the composite.
+ * <p>
+ * Each segment is a file of segment-size-bytes named after the position of its first byte. A record is one entry:
+ * <pre>
+ * int length | int crc32 of the payload | payload: short event count, per event: byte output length, output, int event length, event as JSON
+ * </pre>
+ * The length is written last, so a segment ends at the first entry with a length of 0, and an entry that does not fit
+ * into the rest of a segment starts the next one. The position of a record is the position of its entry, and the last
+ * committed position is kept in a mapped commit file, plus one so a new commit file reads as nothing committed. Segments holding committed records only are
+ * unmapped and deleted. The event count is an unsigned short, so a record holds at most {@link #MAX_EVENTS_PER_RECORD} events.
+ * <p>
+ * An append is a write to the mapped memory, which the operating system flushes to disk even if the composite crashes;
+ * with force-on-append it is flushed before the append returns, so records also survive a crash of the host.
+ * On start the segments are scanned up to the first entry that is torn or fails its CRC, anything after it is dropped.
+ * Reads decode the events straight from the mapped segments, without copying the entries to the heap first.
+ */
+@Slf4j
+public class MappedOutboxLog implements OutboxLog, Closeable {
+
+    static final int MAX_EVENTS_PER_RECORD = Short.MAX_VALUE;
+
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String COMMIT_FILE = "commit.position";
+    private static final TypeReference<Event<Integer, Object>> EVENT_TYPE = new TypeReference<Event<Integer, Object>>() {};
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxPendingEvents;
+    private final boolean forceOnAppend;
+    private final ObjectMapper mapper;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Deque<Entry> pending = new ArrayDeque<>();
+    private final MappedByteBuffer commitFile;
+    private long committedPosition;
+    private int writeOffset;
+    private int pendingEvents = 0;
+
+    public MappedOutboxLog(Path directory, int segmentSize, int maxPendingEvents, boolean forceOnAppend, ObjectMapper mapper) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxPendingEvents = maxPendingEvents;
+        this.forceOnAppend = forceOnAppend;
+        this.mapper = mapper;
+
+        Files.createDirectories(directory);
+
+        this.commitFile = map(directory.resolve(COMMIT_FILE), Long.BYTES);
+        this.committedPosition = commitFile.getLong(0) - 1;
+
+        recover();
+
+        log.info("Opened mapped outbox in {}, segments: {}, pendingEvents: {}, segmentSize: {}, maxPendingEvents: {}, forceOnAppend: {}",
+                directory, segments.size(), pendingEvents, segmentSize, maxPendingEvents, forceOnAppend);
+    }
+
+    @Override
+    public synchronized long append(List<OutboxEvent> events) {
+        if (events.size() > MAX_EVENTS_PER_RECORD) {
+            throw new InvalidInputException("Invalid number of events: " + events.size() + ", an outbox record holds at most " + MAX_EVENTS_PER_RECORD);
+        }
+        if (pendingEvents + events.size() > maxPendingEvents) {
+            throw new ServiceUnavailableException("The outbox is full, try again later");
+        }
+
+        List<byte[]> outputs = new ArrayList<>();
+        List<byte[]> serializedEvents = new ArrayList<>();
+        int length = Short.BYTES;
+
+        for (OutboxEvent event : events) {
+            outputs.add(event.getOutput().getBytes(StandardCharsets.UTF_8));
+            serializedEvents.add(serialize(event.getEvent()));
+            length += 1 + outputs.get(outputs.size() - 1).length + Integer.BYTES + serializedEvents.get(serializedEvents.size() - 1).length;
+        }
+
+        if (HEADER_SIZE + length > segmentSize) {
+            throw new InvalidInputException("The events do not fit into an outbox segment of " + segmentSize + " bytes");
+        }
+
+        if (writeOffset + HEADER_SIZE + length > segmentSize) roll();
+
+        Segment segment = segments.peekLast();
+        ByteBuffer payload = segment.slice(writeOffset + HEADER_SIZE, length);
+
+        payload.putShort((short) events.size());
+        for (int i = 0; i < events.size(); i++) {
+            payload.put((byte) outputs.get(i).length).put(outputs.get(i));
+            payload.putInt(serializedEvents.get(i).length).put(serializedEvents.get(i));
+        }
+
+        segment.buffer.putInt(writeOffset + Integer.BYTES, crc(segment.slice(writeOffset + HEADER_SIZE, length)));
+        segment.buffer.putInt(writeOffset, length);
+        if (forceOnAppend) segment.buffer.force();
+
+        Entry entry = new Entry(segment, writeOffset, length, events.size());
+        pending.addLast(entry);
+        pendingEvents += events.size();
+        writeOffset += HEADER_SIZE + length;
+
+        return entry.position();
+    }
+
+    @Override
+    public synchronized List<OutboxRecord> read(int maxEvents) {
+        List<OutboxRecord> batch = new ArrayList<>();
+        int events = 0;
+
+        for (Entry entry : pending) {
+            if (!batch.isEmpty() && events + entry.eventCount > maxEvents) break;
+
+            batch.add(new OutboxRecord(entry.position(), decode(entry)));
+            events += entry.eventCount;
+        }
+
+        return batch;
+    }
+
+    @Override
+    public synchronized void commit(long position) {
+        while (!pending.isEmpty() && pending.peekFirst().position() <= position) {
+            pendingEvents -= pending.removeFirst().eventCount;
+        }
+
+        if (position <= committedPosition) return;
+
+        committedPosition = position;
+        commitFile.putLong(0, position + 1);
+        if (forceOnAppend) commitFile.force();
+
+        deleteCommittedSegments();
+    }
+
+    @Override
+    public synchronized int pendingEvents() {
+        return pendingEvents;
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.forEach(segment -> segment.buffer.force());
+        commitFile.force();
+    }
+
+    /**
+     * Indexes the uncommitted entries of all segments and continues writing after the last valid entry.
+     */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().collect(Collectors.toList());
+        }
+
+        boolean valid = true;
+
+        for (Path file : files) {
+            if (!valid) {
+                log.warn("Deletes outbox segment {}, it follows a damaged entry", file);
+                Files.delete(file);
+                continue;
+            }
+
+            Segment segment = new Segment(file, map(file, segmentSize));
+            segments.addLast(segment);
+            writeOffset = 0;
+
+            while (writeOffset + HEADER_SIZE <= segmentSize) {
+                int length = segment.buffer.getInt(writeOffset);
+                if (length == 0) break;
+
+                if (length < Short.BYTES || length > segmentSize - writeOffset - HEADER_SIZE
+                        || segment.buffer.getInt(writeOffset + Integer.BYTES) != crc(segment.slice(writeOffset + HEADER_SIZE, length))) {
+                    log.warn("Found a damaged entry in outbox segment {} at offset {}, drops the rest of the outbox", file, writeOffset);
+                    for (int offset = writeOffset; offset < segmentSize; offset++) segment.buffer.put(offset, (byte) 0);
+                    valid = false;
+                    break;
+                }
+
+                Entry entry = new Entry(segment, writeOffset, length, Short.toUnsignedInt(segment.buffer.getShort(writeOffset + HEADER_SIZE)));
+                if (entry.position() > committedPosition) {
+                    pending.addLast(entry);
+                    pendingEvents += entry.eventCount;
+                }
+                writeOffset += HEADER_SIZE + length;
+            }
+        }
+
+        if (segments.isEmpty()) {
+            segments.addLast(createSegment(Math.max(0, committedPosition + 1)));
+            writeOffset = 0;
+        }
+    }
+
+    private void roll() {
+        Segment active = segments.peekLast();
+        segments.addLast(createSegment(active.base + segmentSize));
+        writeOffset = 0;
+
+        log.debug("Rolled the outbox over to a segment at position {}", segments.peekLast().base);
+
+        deleteCommittedSegments();
+    }
+
+    /**
+     * Deletes the segments before the active one that end at or before the oldest pending entry.
+     */
+    private void deleteCommittedSegments() {
+        long firstPending = pending.isEmpty() ? Long.MAX_VALUE : pending.peekFirst().position();
+
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == segments.peekLast() || segment.base + segmentSize > firstPending) break;
+
+            iterator.remove();
+            unmap(segment.buffer);
+            try {
+                Files.delete(segment.file);
+            } catch (IOException ex) {
+                log.warn("Could not delete outbox segment {}: {}", segment.file, ex.toString());
+            }
+        }
+    }
+
+    private Segment createSegment(long base) {
+        Path file = directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+        try {
+            return new Segment(file, map(file, segmentSize));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not create outbox segment " + file, ex);
+        }
+    }
+
+    private List<OutboxEvent> decode(Entry entry) {
+        ByteBuffer payload = entry.segment.slice(entry.offset + HEADER_SIZE, entry.length);
+        List<OutboxEvent> events = new ArrayList<>(entry.eventCount);
+
+        payload.getShort();
+        for (int i = 0; i < entry.eventCount; i++) {
+            byte[] output = new byte[payload.get()];
+            payload.get(output);
+
+            int eventLength = payload.getInt();
+            ByteBuffer event = payload.slice();
+            event.limit(eventLength);
+            payload.position(payload.position() + eventLength);
+
+            try {
+                events.add(new OutboxEvent(new String(output, StandardCharsets.UTF_8), mapper.readValue(new ByteBufferBackedInputStream(event), EVENT_TYPE)));
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not decode the outbox entry at position " + entry.position(), ex);
+            }
+        }
+
+        return events;
+    }
+
+    private byte[] serialize(Event<Integer, ?> event) {
+        try {
+            return mapper.writeValueAsBytes(event);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not serialize event " + event.getEventId(), ex);
+        }
+    }
+
+    private static int crc(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Releases the mapping and its file descriptor right away instead of when the buffer is garbage collected.
+     * The buffer must not be used afterwards. Java 8 exposes the cleaner on the buffer, Java 9+ through Unsafe.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException java8) {
+            try {
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object bufferCleaner = cleaner.invoke(buffer);
+                if (bufferCleaner != null) bufferCleaner.getClass().getMethod("clean").invoke(bufferCleaner);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                log.warn("Could not unmap an outbox segment, it is released when garbage collected: {}", ex.toString());
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.warn("Could not unmap an outbox segment, it is released when garbage collected: {}", ex.toString());
+        }
+    }
+
+    private static class Segment {
+
+        private final Path file;
+        private final long base;
+        private final MappedByteBuffer buffer;
+
+        Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.base = Long.parseLong(file.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+            this.buffer = buffer;
+        }
+
+        /**
+         * A view of length bytes at offset, sharing the mapped memory.
+         */
+        ByteBuffer slice(int offset, int length) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset).limit(offset + length);
+            return view.slice();
+        }
+    }
+
+    private static class Entry {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int eventCount;
+
+        Entry(Segment segment, int offset, int length, int eventCount) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.eventCount = eventCount;
+        }
+
+        long position() {
+            return segment.base + offset;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import com.geborskimateusz.api.event.Event;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * An event waiting in the outbox, with the {@link com.geborskimateusz.microservices.composite.movie.services.utils.MessageSources}
+ * output it is relayed to.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class OutboxEvent {
+
+    private final String output;
+    private final Event<Integer, ?> event;
+}
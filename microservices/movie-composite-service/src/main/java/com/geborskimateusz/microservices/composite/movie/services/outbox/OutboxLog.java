@@ -0,0 +1,30 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import java.util.List;
+
+/**
+ * Append-only log of the events the composite has accepted but not yet handed to the broker.
+ * <p>
+ * A record is appended as a whole or not at all. Records are read in the order they were appended,
+ * starting with the oldest one not committed, and stay in the log until a commit covers their position.
+ */
+public interface OutboxLog {
+
+    /**
+     * @return the position of the appended record
+     * @throws com.geborskimateusz.util.exceptions.ServiceUnavailableException if the log has no room for the events
+     */
+    long append(List<OutboxEvent> events);
+
+    /**
+     * @return the oldest uncommitted records holding at most maxEvents events, but at least one record if there is any
+     */
+    List<OutboxRecord> read(int maxEvents);
+
+    /**
+     * Drops the records up to and including position.
+     */
+    void commit(long position);
+
+    int pendingEvents();
+}
@@ -0,0 +1,19 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * The events of one write, appended to the {@link OutboxLog} as a whole, at an increasing position.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class OutboxRecord {
+
+    private final long position;
+    private final List<OutboxEvent> events;
+}
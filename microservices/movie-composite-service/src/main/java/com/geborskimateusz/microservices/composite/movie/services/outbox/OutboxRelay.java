@@ -0,0 +1,144 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import com.geborskimateusz.microservices.composite.movie.services.cache.MovieAggregateCache;
+import com.geborskimateusz.microservices.composite.movie.services.publishing.EventPublisher;
+import com.geborskimateusz.microservices.composite.movie.services.utils.MessageSources;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the {@link OutboxLog} to the {@link MessageSources} outputs in the background.
+ * <p>
+ * Every poll interval the relay publishes batches of up to batch-size events through the {@link EventPublisher},
+ * in the order they were appended, until the outbox is empty. A batch is committed once the broker has confirmed
+ * all of its events. A failed batch stays in the outbox and is published again, as a whole, after a backoff that
+ * doubles with every failure up to max-backoff-ms; consumers skip the events they already got by their event id.
+ * The composite.outbox.pending gauge reports the events not yet committed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.outbox.enabled", havingValue = "true")
+public class OutboxRelay {
+
+    public static final String PENDING_METRIC = "composite.outbox.pending";
+
+    private final OutboxLog outboxLog;
+    private final EventPublisher eventPublisher;
+    private final MessageSources messageSources;
+    private final MovieAggregateCache movieAggregateCache;
+
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final long maxBackoffMs;
+
+    private volatile Disposable relaying;
+    private volatile int failures = 0;
+    private volatile long pausedUntil = 0;
+
+    @Autowired
+    public OutboxRelay(
+            OutboxLog outboxLog,
+            EventPublisher eventPublisher,
+            MessageSources messageSources,
+            MovieAggregateCache movieAggregateCache,
+            MeterRegistry meterRegistry,
+            @Value("${app.outbox.batch-size:100}") int batchSize,
+            @Value("${app.outbox.poll-interval-ms:50}") long pollIntervalMs,
+            @Value("${app.outbox.max-backoff-ms:5000}") long maxBackoffMs) {
+
+        this.outboxLog = outboxLog;
+        this.eventPublisher = eventPublisher;
+        this.messageSources = messageSources;
+        this.movieAggregateCache = movieAggregateCache;
+        this.batchSize = batchSize;
+        this.pollInterval = Duration.ofMillis(pollIntervalMs);
+        this.maxBackoffMs = maxBackoffMs;
+
+        Gauge.builder(PENDING_METRIC, outboxLog, OutboxLog::pendingEvents)
+                .description("Events in the outbox not yet confirmed by the broker")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        log.info("Relays the outbox every {} ms in batches of {} events", pollInterval.toMillis(), batchSize);
+
+        relaying = Flux.interval(pollInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> System.currentTimeMillis() < pausedUntil ? Mono.empty() : drain(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (relaying != null) relaying.dispose();
+    }
+
+    /**
+     * Relays batch after batch until the outbox is empty or a batch fails.
+     */
+    Mono<Void> drain() {
+        return Mono.defer(this::relayBatch)
+                .repeat()
+                .takeWhile(relayed -> relayed)
+                .then();
+    }
+
+    /**
+     * @return true if a batch was relayed, false if the outbox was empty or the batch failed
+     */
+    private Mono<Boolean> relayBatch() {
+        List<OutboxRecord> batch = outboxLog.read(batchSize);
+        if (batch.isEmpty()) return Mono.just(false);
+
+        List<OutboxEvent> events = batch.stream().flatMap(record -> record.getEvents().stream()).collect(Collectors.toList());
+        long lastPosition = batch.get(batch.size() - 1).getPosition();
+
+        return Flux.fromIterable(events)
+                .flatMapSequential(event -> eventPublisher.publish(output(event.getOutput()), event.getEvent()), events.size())
+                .then(Mono.fromCallable(() -> {
+                    outboxLog.commit(lastPosition);
+                    events.forEach(event -> movieAggregateCache.invalidate(event.getEvent().getKey()));
+                    failures = 0;
+
+                    log.debug("Relayed {} events up to outbox position {}", events.size(), lastPosition);
+                    return true;
+                }))
+                .onErrorResume(ex -> {
+                    long backoffMs = Math.min(maxBackoffMs, pollInterval.toMillis() << Math.min(failures++, 20));
+                    pausedUntil = System.currentTimeMillis() + backoffMs;
+
+                    log.warn("Relaying {} events from outbox position {} failed, retries in {} ms: {}",
+                            events.size(), batch.get(0).getPosition(), backoffMs, ex.toString());
+                    return Mono.just(false);
+                });
+    }
+
+    private MessageChannel output(String output) {
+        switch (output) {
+            case MessageSources.OUTPUT_MOVIES:
+                return messageSources.outputMovies();
+            case MessageSources.OUTPUT_RECOMMENDATIONS:
+                return messageSources.outputRecommendations();
+            case MessageSources.OUTPUT_REVIEWS:
+                return messageSources.outputReviews();
+            default:
+                throw new IllegalStateException("Unknown output: " + output);
+        }
+    }
+}
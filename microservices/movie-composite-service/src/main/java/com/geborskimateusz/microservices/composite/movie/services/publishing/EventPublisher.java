@@ -0,0 +1,150 @@
+package com.geborskimateusz.microservices.composite.movie.services.publishing;
+
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes events without waiting for the broker between them.
+ * <p>
+ * All sends run back to back on one publisher thread, in the order they were subscribed to, so the events
+ * of a whole aggregate go out as one burst. With publisher confirms enabled the Mono returned by
+ * {@link #publish(MessageChannel, Object)} completes when the broker confirms the message, and at most
+ * max-in-flight messages may be unconfirmed at a time; further sends wait for a confirm, up to the confirm timeout.
+ * <p>
+ * Confirms arrive on the {@value #CONFIRM_ACK_CHANNEL} channel, configured as the confirmAckChannel of the
+ * output bindings, and negative acknowledgements on the errorChannel. Both carry the original message,
+ * which is correlated through the {@value #CORRELATION_HEADER} header.
+ */
+@Slf4j
+@Component
+public class EventPublisher {
+
+    public static final String CONFIRM_ACK_CHANNEL = "publisherConfirms";
+    public static final String CORRELATION_HEADER = "publishCorrelationId";
+
+    private final boolean confirmsEnabled;
+    private final Duration confirmTimeout;
+    private final Semaphore unconfirmed;
+    private final Map<String, MonoProcessor<Void>> pendingConfirms = new ConcurrentHashMap<>();
+    private final Scheduler publisherScheduler = Schedulers.newSingle("event-publisher");
+
+    @Autowired
+    public EventPublisher(
+            @Value("${app.event-publisher.confirms-enabled:false}") boolean confirmsEnabled,
+            @Value("${app.event-publisher.max-in-flight:1000}") int maxInFlight,
+            @Value("${app.event-publisher.confirm-timeout-ms:5000}") long confirmTimeoutMs) {
+
+        this.confirmsEnabled = confirmsEnabled;
+        this.confirmTimeout = Duration.ofMillis(confirmTimeoutMs);
+        this.unconfirmed = new Semaphore(maxInFlight);
+
+        log.info("Created event publisher, confirmsEnabled: {}, maxInFlight: {}, confirmTimeout: {}ms", confirmsEnabled, maxInFlight, confirmTimeoutMs);
+    }
+
+    public Mono<Void> publish(MessageChannel channel, Object payload) {
+        return Mono.fromCallable(() -> send(channel, payload))
+                .subscribeOn(publisherScheduler)
+                .flatMap(confirm -> confirm);
+    }
+
+    @ServiceActivator(inputChannel = CONFIRM_ACK_CHANNEL)
+    public void onConfirm(Message<?> confirm) {
+        String correlationId = correlationId(confirm);
+        if (correlationId != null) complete(correlationId, null);
+    }
+
+    @ServiceActivator(inputChannel = "errorChannel")
+    public void onPublishError(Message<?> errorMessage) {
+        Object error = errorMessage.getPayload();
+        if (!(error instanceof MessagingException)) return;
+
+        String correlationId = correlationId(((MessagingException) error).getFailedMessage());
+
+        if (correlationId != null) {
+            complete(correlationId, new ServiceUnavailableException("The message broker did not accept the event", (Throwable) error));
+        }
+    }
+
+    @PreDestroy
+    public void dispose() {
+        publisherScheduler.dispose();
+    }
+
+    private Mono<Void> send(MessageChannel channel, Object payload) throws InterruptedException {
+        if (!confirmsEnabled) {
+            channel.send(MessageBuilder.withPayload(payload).build());
+            return Mono.empty();
+        }
+
+        if (!unconfirmed.tryAcquire(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new ServiceUnavailableException("Too many unconfirmed events, try again later");
+        }
+
+        String correlationId = UUID.randomUUID().toString();
+        MonoProcessor<Void> confirm = MonoProcessor.create();
+        pendingConfirms.put(correlationId, confirm);
+
+        try {
+            channel.send(MessageBuilder.withPayload(payload).setHeader(CORRELATION_HEADER, correlationId).build());
+        } catch (RuntimeException ex) {
+            complete(correlationId, ex);
+            throw ex;
+        }
+
+        Schedulers.parallel().schedule(
+                () -> complete(correlationId, new ServiceUnavailableException("No publisher confirm within " + confirmTimeout.toMillis() + "ms")),
+                confirmTimeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        return confirm;
+    }
+
+    /**
+     * The correlated message is either the confirm itself or, depending on the binder, its payload.
+     */
+    private String correlationId(Message<?> message) {
+        if (message == null) return null;
+
+        String correlationId = message.getHeaders().get(CORRELATION_HEADER, String.class);
+        if (correlationId == null && message.getPayload() instanceof Message) {
+            return correlationId((Message<?>) message.getPayload());
+        }
+        return correlationId;
+    }
+
+    /**
+     * Whoever removes the pending confirm first completes it and frees its slot, later signals are ignored.
+     */
+    private void complete(String correlationId, Throwable error) {
+        MonoProcessor<Void> confirm = pendingConfirms.remove(correlationId);
+        if (confirm == null) return;
+
+        unconfirmed.release();
+
+        if (error == null) {
+            confirm.onComplete();
+        } else {
+            log.warn("Publishing event {} failed: {}", correlationId, error.toString());
+            confirm.onError(error);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.geborskimateusz.microservices.composite.movie.services.readmodel;
+
+import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.recommendation.Recommendation;
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.composite.movie.services.MovieCompositeIntegration;
+import com.geborskimateusz.microservices.composite.movie.services.utils.CompositeAggregator;
+import com.geborskimateusz.util.http.ServiceUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Denormalized {@link MovieAggregate}s kept up to date from the movie, recommendation and review events,
+ * so a composite movie is a single lookup instead of three calls.
+ * <p>
+ * Events of the three destinations arrive in any order, so the parts of a movie are kept until its events
+ * delete them; an aggregate is materialized as soon as the movie itself is known. Movies created before the
+ * read model started are loaded by {@link #rebuild()}, which pages through the core services.
+ * Events applied while a rebuild runs take precedence over what the rebuild loads, including the deletion
+ * of a movie, its recommendations or its reviews.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.read-model.enabled", havingValue = "true")
+public class MovieReadModel {
+
+    private final MovieCompositeIntegration integration;
+    private final ServiceUtil serviceUtil;
+    private final int rebuildPageSize;
+
+    private final Map<Integer, ProjectedMovie> projections = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Part>> deletedDuringRebuild = new ConcurrentHashMap<>();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    @Autowired
+    public MovieReadModel(
+            MovieCompositeIntegration integration,
+            ServiceUtil serviceUtil,
+            @Value("${app.read-model.rebuild-page-size:100}") int rebuildPageSize) {
+        this.integration = integration;
+        this.serviceUtil = serviceUtil;
+        this.rebuildPageSize = rebuildPageSize;
+    }
+
+    /**
+     * @return the materialized aggregate, or null if the movie is not (yet) in the read model
+     */
+    public MovieAggregate find(int movieId) {
+        ProjectedMovie projection = projections.get(movieId);
+        return projection == null ? null : projection.aggregate;
+    }
+
+    public int size() {
+        return projections.size();
+    }
+
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    public void applyMovieEvent(Event<Integer, Movie> event) {
+        update(event.getKey(), event.getEventType() == Event.Type.DELETE ? Part.MOVIE : null, projection -> {
+            projection.movie = event.getEventType() == Event.Type.DELETE ? null : event.getData();
+        });
+    }
+
+    public void applyRecommendationEvent(Event<Integer, Recommendation> event) {
+        update(event.getKey(), event.getEventType() == Event.Type.DELETE ? Part.RECOMMENDATIONS : null, projection -> {
+            if (event.getEventType() != Event.Type.DELETE) {
+                projection.recommendations.put(event.getData().getRecommendationId(), event.getData());
+            } else {
+                projection.recommendations.clear();
+            }
+        });
+    }
+
+    public void applyReviewEvent(Event<Integer, Review> event) {
+        update(event.getKey(), event.getEventType() == Event.Type.DELETE ? Part.REVIEWS : null, projection -> {
+            if (event.getEventType() != Event.Type.DELETE) {
+                projection.reviews.put(event.getData().getReviewId(), event.getData());
+            } else {
+                projection.reviews.clear();
+            }
+        });
+    }
+
+    /**
+     * Drops the read model and loads every movie with its recommendations and reviews from the core services,
+     * one page of movies at a time.
+     *
+     * @return the number of movies loaded, or an error if a rebuild is already running
+     */
+    public Mono<Long> rebuild() {
+        return Mono.defer(() -> {
+            if (!rebuilding.compareAndSet(false, true)) {
+                return Mono.error(new IllegalStateException("A rebuild of the read model is already running"));
+            }
+
+            log.info("rebuild: drops {} projected movies and reloads them from the core services", projections.size());
+            deletedDuringRebuild.clear();
+            projections.clear();
+
+            return moviesPage(0)
+                    .expand(page -> page.size() < rebuildPageSize ? Mono.empty() : moviesPage(page.get(page.size() - 1).getMovieId()))
+                    .concatMap(this::loadPage)
+                    .reduce(0L, Long::sum)
+                    .doOnSuccess(count -> log.info("rebuild: loaded {} movies", count))
+                    .doOnError(ex -> log.warn("rebuild failed: {}", ex.toString()))
+                    .doFinally(signal -> {
+                        deletedDuringRebuild.clear();
+                        rebuilding.set(false);
+                    });
+        });
+    }
+
+    private Mono<List<Movie>> moviesPage(int afterMovieId) {
+        return integration.getMovies(afterMovieId, rebuildPageSize).collectList();
+    }
+
+    private Mono<Long> loadPage(List<Movie> movies) {
+        if (movies.isEmpty()) return Mono.just(0L);
+
+        List<Integer> movieIds = movies.stream().map(Movie::getMovieId).collect(Collectors.toList());
+
+        return Mono.zip(
+                integration.getRecommendations(movieIds).collectMultimap(Recommendation::getMovieId),
+                integration.getReviews(movieIds).collectMultimap(Review::getMovieId)
+        ).map(details -> {
+            movies.forEach(movie -> load(
+                    movie,
+                    details.getT1().getOrDefault(movie.getMovieId(), Collections.emptyList()),
+                    details.getT2().getOrDefault(movie.getMovieId(), Collections.emptyList())));
+            return (long) movies.size();
+        });
+    }
+
+    /**
+     * Adds what the rebuild loaded underneath what events already put into the projection, except the parts
+     * deleted since the rebuild started; the rebuild may have fetched them before they were deleted.
+     * The deleted parts are looked up inside the update, after the update of a deleting event.
+     */
+    private void load(Movie movie, Collection<Recommendation> recommendations, Collection<Review> reviews) {
+        update(movie.getMovieId(), null, projection -> {
+            Set<Part> deleted = deletedDuringRebuild.getOrDefault(movie.getMovieId(), Collections.emptySet());
+
+            if (projection.movie == null && !deleted.contains(Part.MOVIE)) projection.movie = movie;
+            if (!deleted.contains(Part.RECOMMENDATIONS)) {
+                recommendations.forEach(recommendation -> projection.recommendations.putIfAbsent(recommendation.getRecommendationId(), recommendation));
+            }
+            if (!deleted.contains(Part.REVIEWS)) {
+                reviews.forEach(review -> projection.reviews.putIfAbsent(review.getReviewId(), review));
+            }
+        });
+    }
+
+    /**
+     * @param deletedPart the part a DELETE event deletes, null for other changes
+     */
+    private void update(int movieId, Part deletedPart, Consumer<ProjectedMovie> change) {
+        if (deletedPart != null && rebuilding.get()) {
+            deletedDuringRebuild.computeIfAbsent(movieId, key -> ConcurrentHashMap.newKeySet()).add(deletedPart);
+        }
+
+        projections.compute(movieId, (key, projection) -> {
+            ProjectedMovie updated = projection == null ? new ProjectedMovie() : projection;
+            change.accept(updated);
+
+            if (updated.isEmpty()) return null;
+
+            updated.materialize(serviceUtil.getServiceAddress());
+            return updated;
+        });
+    }
+
+    private enum Part {MOVIE, RECOMMENDATIONS, REVIEWS}
+
+    /**
+     * Mutated only inside {@link ConcurrentHashMap#compute}, readers only see the materialized aggregate.
+     */
+    private static class ProjectedMovie {
+        Movie movie;
+        final SortedMap<Integer, Recommendation> recommendations = new TreeMap<>();
+        final SortedMap<Integer, Review> reviews = new TreeMap<>();
+        volatile MovieAggregate aggregate;
+
+        boolean isEmpty() {
+            return movie == null && recommendations.isEmpty() && reviews.isEmpty();
+        }
+
+        void materialize(String serviceAddress) {
+            aggregate = movie == null ? null : CompositeAggregator.createMovieAggregate(
+                    movie,
+                    new ArrayList<>(recommendations.values()),
+                    new ArrayList<>(reviews.values()),
+                    serviceAddress);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.geborskimateusz.microservices.composite.movie.services.readmodel;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * GET /actuator/readmodel reports the state of the read model,
+ * POST /actuator/readmodel rebuilds it from scratch in the background.
+ */
+@Component
+@Endpoint(id = "readmodel")
+@ConditionalOnProperty(name = "app.read-model.enabled", havingValue = "true")
+public class ReadModelEndpoint {
+
+    private final MovieReadModel readModel;
+
+    public ReadModelEndpoint(MovieReadModel readModel) {
+        this.readModel = readModel;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("movies", readModel.size());
+        status.put("rebuilding", readModel.isRebuilding());
+        return status;
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        if (readModel.isRebuilding()) {
+            result.put("started", false);
+        } else {
+            // A failed rebuild is logged by the read model itself.
+            readModel.rebuild().subscribe(null, error -> { });
+            result.put("started", true);
+        }
+        return result;
+    }
+}
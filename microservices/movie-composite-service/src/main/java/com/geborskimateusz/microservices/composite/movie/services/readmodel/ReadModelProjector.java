@@ -0,0 +1,148 @@
+package com.geborskimateusz.microservices.composite.movie.services.readmodel;
+
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.recommendation.Recommendation;
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.api.event.Event;
+import com.rabbitmq.client.ShutdownSignalException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.Payload;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Feeds the movie, recommendation and review events into the {@link MovieReadModel}.
+ * <p>
+ * The read model inputs have no consumer group, so every composite instance gets its own copy of each event.
+ * Their queues are deleted while the composite is disconnected from RabbitMQ, and the events sent meanwhile with them,
+ * so with app.read-model.rebuild-on-reconnect the read model is rebuilt once the connection is back.
+ * Per destination the composite.read-model.lag gauge reports how long the last applied event took from
+ * its creation until it was applied, in milliseconds, and composite.read-model.events counts the applied events.
+ */
+@Slf4j
+@EnableBinding(ReadModelSinks.class)
+@ConditionalOnProperty(name = "app.read-model.enabled", havingValue = "true")
+public class ReadModelProjector {
+
+    public static final String LAG_METRIC = "composite.read-model.lag";
+    public static final String EVENTS_METRIC = "composite.read-model.events";
+
+    private final MovieReadModel readModel;
+    private final boolean rebuildOnStartup;
+
+    private final Map<String, AtomicLong> lagMs = new HashMap<>();
+    private final Map<String, Counter> appliedEvents = new HashMap<>();
+
+    public ReadModelProjector(
+            MovieReadModel readModel,
+            MeterRegistry meterRegistry,
+            ObjectProvider<ConnectionFactory> connectionFactory,
+            @Value("${app.read-model.rebuild-on-startup:true}") boolean rebuildOnStartup,
+            @Value("${app.read-model.rebuild-on-reconnect:true}") boolean rebuildOnReconnect) {
+
+        this.readModel = readModel;
+        this.rebuildOnStartup = rebuildOnStartup;
+
+        for (String destination : new String[]{"movies", "recommendations", "reviews"}) {
+            AtomicLong lag = new AtomicLong();
+            lagMs.put(destination, lag);
+
+            Gauge.builder(LAG_METRIC, lag, AtomicLong::get)
+                    .description("Time from creating the last applied event until the read model applied it")
+                    .baseUnit("milliseconds")
+                    .tag("destination", destination)
+                    .register(meterRegistry);
+
+            appliedEvents.put(destination, Counter.builder(EVENTS_METRIC)
+                    .description("Events applied to the read model")
+                    .tag("destination", destination)
+                    .register(meterRegistry));
+        }
+
+        if (rebuildOnReconnect) {
+            connectionFactory.ifAvailable(factory -> factory.addConnectionListener(new RebuildOnReconnect()));
+        }
+    }
+
+    @StreamListener(ReadModelSinks.MOVIES)
+    public void onMovieEvent(@Payload Event<Integer, Movie> event) {
+        apply("movies", event, readModel::applyMovieEvent);
+    }
+
+    @StreamListener(ReadModelSinks.RECOMMENDATIONS)
+    public void onRecommendationEvent(@Payload Event<Integer, Recommendation> event) {
+        apply("recommendations", event, readModel::applyRecommendationEvent);
+    }
+
+    @StreamListener(ReadModelSinks.REVIEWS)
+    public void onReviewEvent(@Payload Event<Integer, Review> event) {
+        apply("reviews", event, readModel::applyReviewEvent);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!rebuildOnStartup) return;
+
+        readModel.rebuild().subscribe(
+                count -> log.info("Read model built with {} movies", count),
+                error -> log.warn("Read model not built on startup, it is filled from events only until rebuilt: {}", error.toString()));
+    }
+
+    private <T> void apply(String destination, Event<Integer, T> event, Consumer<Event<Integer, T>> projection) {
+        log.debug("Apply {} event of type {} for movieId: {} to the read model", destination, event.getEventType(), event.getKey());
+
+        projection.accept(event);
+
+        if (event.getEventCreatedAt() != null) {
+            lagMs.get(destination).set(Duration.between(event.getEventCreatedAt(), LocalDateTime.now()).toMillis());
+        }
+        appliedEvents.get(destination).increment();
+    }
+
+    /**
+     * The connection is only created again after it was lost, not when the consumers merely restart.
+     */
+    private class RebuildOnReconnect implements ConnectionListener {
+
+        private final AtomicBoolean connectionLost = new AtomicBoolean();
+
+        @Override
+        public void onCreate(Connection connection) {
+            if (!connectionLost.compareAndSet(true, false)) return;
+
+            log.info("Reconnected to the broker, rebuilds the read model since events may have been lost meanwhile");
+            readModel.rebuild().subscribe(
+                    count -> log.info("Read model rebuilt with {} movies after reconnecting", count),
+                    error -> log.warn("Read model not rebuilt after reconnecting, it may miss events until rebuilt: {}", error.toString()));
+        }
+
+        @Override
+        public void onClose(Connection connection) {
+            connectionLost.set(true);
+        }
+
+        @Override
+        public void onShutDown(ShutdownSignalException signal) {
+            connectionLost.set(true);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.geborskimateusz.microservices.composite.movie.services.readmodel;
+
+import org.springframework.cloud.stream.annotation.Input;
+import org.springframework.messaging.SubscribableChannel;
+
+/**
+ * Inputs of the read model, bound to the same destinations as {@link com.geborskimateusz.microservices.composite.movie.services.utils.MessageSources}.
+ */
+public interface ReadModelSinks {
+
+    String MOVIES = "read-model-movies";
+    String RECOMMENDATIONS = "read-model-recommendations";
+    String REVIEWS = "read-model-reviews";
+
+    @Input(MOVIES)
+    SubscribableChannel movies();
+
+    @Input(RECOMMENDATIONS)
+    SubscribableChannel recommendations();
+
+    @Input(REVIEWS)
+    SubscribableChannel reviews();
+}
@@ -0,0 +1,159 @@
+package com.geborskimateusz.microservices.composite.movie.services.resilience;
+
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Guards the calls to one downstream service with a timeout, a bulkhead and, optionally, hedging.
+ * <p>
+ * At most maxConcurrent calls may be in flight, further calls fail fast with a {@link ServiceUnavailableException}
+ * instead of queueing behind a slow service. A call that takes longer than the timeout fails the same way.
+ * <p>
+ * With hedging, a second identical request is sent if the first has not answered after the service's recent
+ * p95 latency, but never earlier than hedgeMinDelay, and whichever answers first is used. The requests go
+ * through the load balanced WebClient, so the hedge normally reaches another instance of the service.
+ * The hedge takes a bulkhead slot of its own and is not sent while the bulkhead is full.
+ * Only idempotent reads may be hedged.
+ */
+@Slf4j
+public class Backend {
+
+    public static final String LATENCY_METRIC = "composite.backend.latency";
+    public static final String REJECTED_METRIC = "composite.backend.rejected";
+    public static final String HEDGES_METRIC = "composite.backend.hedges";
+    public static final String IN_FLIGHT_METRIC = "composite.backend.in-flight";
+
+    private final String name;
+    private final Duration timeout;
+    private final int maxConcurrent;
+    private final boolean hedgeEnabled;
+    private final Duration hedgeMinDelay;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer latency;
+    private final Counter rejected;
+    private final Counter hedges;
+
+    public Backend(String name, Duration timeout, int maxConcurrent, boolean hedgeEnabled, Duration hedgeMinDelay, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.timeout = timeout;
+        this.maxConcurrent = maxConcurrent;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinDelay = hedgeMinDelay;
+
+        this.latency = Timer.builder(LATENCY_METRIC)
+                .description("Latency of successful calls to a downstream service")
+                .tag("backend", name)
+                .publishPercentiles(0.95)
+                .register(meterRegistry);
+        this.rejected = Counter.builder(REJECTED_METRIC)
+                .description("Calls rejected because the bulkhead of a downstream service was full")
+                .tag("backend", name)
+                .register(meterRegistry);
+        this.hedges = Counter.builder(HEDGES_METRIC)
+                .description("Hedged second requests sent to a downstream service")
+                .tag("backend", name)
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, inFlight, AtomicInteger::get)
+                .description("Calls in flight to a downstream service")
+                .tag("backend", name)
+                .register(meterRegistry);
+
+        log.info("Created backend {}, timeout: {}ms, maxConcurrent: {}, hedgeEnabled: {}, hedgeMinDelay: {}ms",
+                name, timeout.toMillis(), maxConcurrent, hedgeEnabled, hedgeMinDelay.toMillis());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public <T> Mono<T> call(Supplier<Mono<T>> request) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                rejected.increment();
+                return Mono.error(bulkheadFull());
+            }
+
+            long start = System.nanoTime();
+
+            return (hedgeEnabled ? hedged(request) : request.get())
+                    .timeout(timeout)
+                    .onErrorMap(TimeoutException.class, ex -> new ServiceUnavailableException(name + " did not respond within " + timeout.toMillis() + "ms", ex))
+                    .doOnSuccess(value -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    /**
+     * Like {@link #call(Supplier)} for a response whose elements are passed on as they arrive: the timeout applies to the wait
+     * for each element instead of the whole response, and the request is neither hedged nor counted in the latency.
+     */
+    public <T> Flux<T> stream(Supplier<Flux<T>> request) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                rejected.increment();
+                return Flux.error(bulkheadFull());
+            }
+
+            return request.get()
+                    .timeout(timeout)
+                    .onErrorMap(TimeoutException.class, ex -> new ServiceUnavailableException(name + " did not send an element within " + timeout.toMillis() + "ms", ex))
+                    .doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    private boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > maxConcurrent) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private ServiceUnavailableException bulkheadFull() {
+        return new ServiceUnavailableException(name + " has " + maxConcurrent + " calls in flight, try again later");
+    }
+
+    private <T> Mono<T> hedged(Supplier<Mono<T>> request) {
+        Duration delay = hedgeDelay();
+
+        Mono<T> hedge = Mono.delay(delay).then(Mono.defer(() -> {
+            if (!tryAcquire()) {
+                log.debug("{}: no response after {}ms, but {} calls are in flight, does not hedge", name, delay.toMillis(), maxConcurrent);
+                return Mono.never();
+            }
+
+            log.debug("{}: no response after {}ms, sends a hedged request", name, delay.toMillis());
+            hedges.increment();
+            return request.get().doFinally(signal -> inFlight.decrementAndGet());
+        }));
+
+        return Mono.first(request.get(), hedge);
+    }
+
+    /**
+     * The recent p95 latency, or hedgeMinDelay until there are enough calls to tell.
+     */
+    Duration hedgeDelay() {
+        for (ValueAtPercentile percentile : latency.takeSnapshot().percentileValues()) {
+            double p95Ms = percentile.value(TimeUnit.MILLISECONDS);
+            if (!Double.isNaN(p95Ms) && p95Ms > hedgeMinDelay.toMillis()) {
+                return Duration.ofMillis((long) p95Ms);
+            }
+        }
+        return hedgeMinDelay;
+    }
+}
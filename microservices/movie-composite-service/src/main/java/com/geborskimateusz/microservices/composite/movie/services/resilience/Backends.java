@@ -0,0 +1,52 @@
+package com.geborskimateusz.microservices.composite.movie.services.resilience;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * The downstream services of the composite, each with its own timeout, bulkhead and hedging settings.
+ */
+@Component
+public class Backends {
+
+    private final Backend movie;
+    private final Backend recommendation;
+    private final Backend review;
+
+    @Autowired
+    public Backends(
+            MeterRegistry meterRegistry,
+            @Value("${app.movie-composite.backends.hedge-min-delay-ms:50}") long hedgeMinDelayMs,
+            @Value("${app.movie-composite.backends.movie.timeout-ms:2000}") long movieTimeoutMs,
+            @Value("${app.movie-composite.backends.movie.max-concurrent:100}") int movieMaxConcurrent,
+            @Value("${app.movie-composite.backends.movie.hedge-enabled:false}") boolean movieHedgeEnabled,
+            @Value("${app.movie-composite.backends.recommendation.timeout-ms:2000}") long recommendationTimeoutMs,
+            @Value("${app.movie-composite.backends.recommendation.max-concurrent:100}") int recommendationMaxConcurrent,
+            @Value("${app.movie-composite.backends.recommendation.hedge-enabled:false}") boolean recommendationHedgeEnabled,
+            @Value("${app.movie-composite.backends.review.timeout-ms:2000}") long reviewTimeoutMs,
+            @Value("${app.movie-composite.backends.review.max-concurrent:100}") int reviewMaxConcurrent,
+            @Value("${app.movie-composite.backends.review.hedge-enabled:false}") boolean reviewHedgeEnabled) {
+
+        Duration hedgeMinDelay = Duration.ofMillis(hedgeMinDelayMs);
+
+        this.movie = new Backend("movie", Duration.ofMillis(movieTimeoutMs), movieMaxConcurrent, movieHedgeEnabled, hedgeMinDelay, meterRegistry);
+        this.recommendation = new Backend("recommendation", Duration.ofMillis(recommendationTimeoutMs), recommendationMaxConcurrent, recommendationHedgeEnabled, hedgeMinDelay, meterRegistry);
+        this.review = new Backend("review", Duration.ofMillis(reviewTimeoutMs), reviewMaxConcurrent, reviewHedgeEnabled, hedgeMinDelay, meterRegistry);
+    }
+
+    public Backend movie() {
+        return movie;
+    }
+
+    public Backend recommendation() {
+        return recommendation;
+    }
+
+    public Backend review() {
+        return review;
+    }
+}
@@ -1,6 +1,7 @@
 package com.geborskimateusz.microservices.composite.movie.services.utils;
 
 import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.geborskimateusz.api.composite.movie.MovieAggregatePart;
 import com.geborskimateusz.api.composite.movie.RecommendationSummary;
 import com.geborskimateusz.api.composite.movie.ReviewSummary;
 import com.geborskimateusz.api.composite.movie.ServiceAddresses;
@@ -9,6 +10,7 @@ import com.geborskimateusz.api.core.recommendation.Recommendation;
 import com.geborskimateusz.api.core.review.Review;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -16,6 +18,13 @@ import java.util.stream.Collectors;
 public class CompositeAggregator {
 
     public static MovieAggregate createMovieAggregate(Movie movie, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress) {
+        return createMovieAggregate(movie, recommendations, reviews, serviceAddress, Collections.emptyList());
+    }
+
+    /**
+     * @param missingParts the parts, "recommendations" or "reviews", that could not be fetched and are left empty
+     */
+    public static MovieAggregate createMovieAggregate(Movie movie, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress, List<String> missingParts) {
 
         // 1. Setup movie info
         int movieId = movie.getMovieId();
@@ -24,24 +33,14 @@ public class CompositeAggregator {
 
         // 2. Copy summary recommendation info, if available
         List<RecommendationSummary> recommendationSummaries =
-                (recommendations == null) ? null : recommendations.stream().map(
-                        r -> RecommendationSummary.builder()
-                                .recommendationId(r.getRecommendationId())
-                                .content(r.getContent())
-                                .author(r.getAuthor())
-                                .rate(r.getRate())
-                                .build())
+                (recommendations == null) ? null : recommendations.stream()
+                        .map(CompositeAggregator::createRecommendationSummary)
                         .collect(Collectors.toList());
 
         // 3. Copy summary review info, if available
         List<ReviewSummary> reviewSummaries =
-                (reviews == null) ? null : reviews.stream().map(
-                        r -> ReviewSummary.builder()
-                                .reviewId(r.getReviewId())
-                                .author(r.getAuthor())
-                                .subject(r.getSubject())
-                                .content(r.getContent())
-                                .build())
+                (reviews == null) ? null : reviews.stream()
+                        .map(CompositeAggregator::createReviewSummary)
                         .collect(Collectors.toList());
 
 
@@ -62,6 +61,7 @@ public class CompositeAggregator {
                 .recommendations(recommendationSummaries)
                 .reviews(reviewSummaries)
                 .serviceAddresses(serviceAddresses)
+                .missingParts(missingParts)
                 .build();
 
         log.info("Created aggregate:");
@@ -70,4 +70,50 @@ public class CompositeAggregator {
         return aggregate;
     }
 
+    public static MovieAggregatePart createMoviePart(Movie movie, String serviceAddress) {
+        return MovieAggregatePart.builder()
+                .type(MovieAggregatePart.Type.MOVIE)
+                .movieId(movie.getMovieId())
+                .title(movie.getTitle())
+                .genre(movie.getGenre())
+                .serviceAddresses(ServiceAddresses.builder()
+                        .cmp(serviceAddress)
+                        .mov(movie.getAddress())
+                        .build())
+                .build();
+    }
+
+    public static MovieAggregatePart createRecommendationPart(Recommendation recommendation) {
+        return MovieAggregatePart.builder()
+                .type(MovieAggregatePart.Type.RECOMMENDATION)
+                .movieId(recommendation.getMovieId())
+                .recommendation(createRecommendationSummary(recommendation))
+                .build();
+    }
+
+    public static MovieAggregatePart createReviewPart(Review review) {
+        return MovieAggregatePart.builder()
+                .type(MovieAggregatePart.Type.REVIEW)
+                .movieId(review.getMovieId())
+                .review(createReviewSummary(review))
+                .build();
+    }
+
+    private static RecommendationSummary createRecommendationSummary(Recommendation r) {
+        return RecommendationSummary.builder()
+                .recommendationId(r.getRecommendationId())
+                .content(r.getContent())
+                .author(r.getAuthor())
+                .rate(r.getRate())
+                .build();
+    }
+
+    private static ReviewSummary createReviewSummary(Review r) {
+        return ReviewSummary.builder()
+                .reviewId(r.getReviewId())
+                .author(r.getAuthor())
+                .subject(r.getSubject())
+                .content(r.getContent())
+                .build();
+    }
 }
@@ -1,14 +1,19 @@
 package com.geborskimateusz.microservices.composite.movie;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.geborskimateusz.api.composite.movie.MovieAggregatePart;
 import com.geborskimateusz.api.composite.movie.RecommendationSummary;
 import com.geborskimateusz.api.composite.movie.ReviewSummary;
 import com.geborskimateusz.api.core.movie.Movie;
 import com.geborskimateusz.api.core.recommendation.Recommendation;
 import com.geborskimateusz.api.core.review.Review;
 import com.geborskimateusz.microservices.composite.movie.services.MovieCompositeIntegration;
+import com.geborskimateusz.microservices.composite.movie.services.cache.MovieAggregateCache;
 import com.geborskimateusz.util.exceptions.InvalidInputException;
 import com.geborskimateusz.util.exceptions.NotFoundException;
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import com.geborskimateusz.util.http.ResponseHeaders;
 import com.geborskimateusz.util.http.ServiceUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -25,10 +30,16 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
@@ -55,9 +66,23 @@ public class MovieCompositeServiceApplicationTests {
     @MockBean
     ServiceUtil serviceUtil;
 
+    @Autowired
+    MovieAggregateCache movieAggregateCache;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
+        movieAggregateCache.invalidateAll();
+
+        Mockito.when(movieCompositeIntegration.createMovie(any())).thenAnswer(invocation -> just(invocation.getArgument(0)));
+        Mockito.when(movieCompositeIntegration.createRecommendation(any())).thenAnswer(invocation -> just(invocation.getArgument(0)));
+        Mockito.when(movieCompositeIntegration.createReview(any())).thenAnswer(invocation -> just(invocation.getArgument(0)));
+        Mockito.when(movieCompositeIntegration.deleteMovie(any())).thenReturn(Mono.empty());
+        Mockito.when(movieCompositeIntegration.deleteRecommendations(anyInt())).thenReturn(Mono.empty());
+        Mockito.when(movieCompositeIntegration.deleteReviews(anyInt())).thenReturn(Mono.empty());
     }
 
     @Test
@@ -95,6 +120,11 @@ public class MovieCompositeServiceApplicationTests {
                 .jsonPath("$.movieId").isEqualTo(given)
                 .jsonPath("$.recommendations.length()").isEqualTo(recommendations.size())
                 .jsonPath("$.reviews.length()").isEqualTo(reviews.size());
+
+        webTestClient.get()
+                .uri("/movie-composite/" + given)
+                .exchange()
+                .expectHeader().doesNotExist(ResponseHeaders.MISSING_PARTS);
     }
 
     @Test
@@ -117,6 +147,117 @@ public class MovieCompositeServiceApplicationTests {
                 .jsonPath("$.path").isEqualTo("/movie-composite/" + given);
     }
 
+    @Test
+    void getMovieStream() {
+        int given = 1;
+
+        Movie movie = getMovies(given);
+        List<Recommendation> recommendations = getRecommendations(movie);
+        List<Review> reviews = getReviews(movie);
+
+        Mockito.when(movieCompositeIntegration.getMovie(given)).thenReturn(Mono.just(movie));
+        Mockito.when(movieCompositeIntegration.streamRecommendations(movie.getMovieId())).thenReturn(Flux.fromIterable(recommendations));
+        Mockito.when(movieCompositeIntegration.streamReviews(movie.getMovieId())).thenReturn(Flux.fromIterable(reviews));
+
+        List<MovieAggregatePart> ndjsonParts = webTestClient.get()
+                .uri("/movie-composite/" + given + "/stream")
+                .accept(MediaType.valueOf("application/x-ndjson"))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectHeader().contentTypeCompatibleWith(MediaType.valueOf("application/x-ndjson"))
+                .returnResult(String.class)
+                .getResponseBody()
+                .map(this::readPart)
+                .collectList()
+                .block();
+
+        List<MovieAggregatePart> sseParts = webTestClient.get()
+                .uri("/movie-composite/" + given + "/stream")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(MovieAggregatePart.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        for (List<MovieAggregatePart> parts : Arrays.asList(ndjsonParts, sseParts)) {
+            assertNotNull(parts);
+            assertEquals(1 + recommendations.size() + reviews.size(), parts.size());
+            assertEquals(MovieAggregatePart.Type.MOVIE, parts.get(0).getType());
+            assertEquals(FAKE_TITLE, parts.get(0).getTitle());
+        }
+    }
+
+    @Test
+    void getMoviesByIds() {
+        Movie first = getMovies(1);
+        Movie second = getMovies(2);
+        List<Integer> given = Arrays.asList(second.getMovieId(), first.getMovieId());
+
+        Mockito.when(serviceUtil.getServiceAddress()).thenReturn("Fake service address");
+
+        List<Recommendation> recommendations = getRecommendations(first);
+        List<Review> reviews = getReviews(second);
+
+        Mockito.when(movieCompositeIntegration.getMovies(given)).thenReturn(Flux.just(first, second));
+        Mockito.when(movieCompositeIntegration.getRecommendations(given)).thenReturn(Flux.fromIterable(recommendations));
+        Mockito.when(movieCompositeIntegration.getReviews(given)).thenReturn(Flux.fromIterable(reviews));
+
+        webTestClient.get()
+                .uri("/movie-composite?ids=2,1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].movieId").isEqualTo(second.getMovieId())
+                .jsonPath("$[0].recommendations.length()").isEqualTo(0)
+                .jsonPath("$[0].reviews.length()").isEqualTo(reviews.size())
+                .jsonPath("$[1].movieId").isEqualTo(first.getMovieId())
+                .jsonPath("$[1].recommendations.length()").isEqualTo(recommendations.size())
+                .jsonPath("$[1].reviews.length()").isEqualTo(0);
+    }
+
+    @Test
+    void partialMoviesListTheirMissingParts() {
+        Movie movie = getMovies(1);
+        List<Integer> given = Collections.singletonList(movie.getMovieId());
+        List<Recommendation> recommendations = getRecommendations(movie);
+        List<Review> reviews = getReviews(movie);
+
+        Mockito.when(movieCompositeIntegration.getMovie(movie.getMovieId())).thenReturn(Mono.just(movie));
+        Mockito.when(movieCompositeIntegration.getRecommendations(movie.getMovieId())).thenReturn(Flux.fromIterable(recommendations));
+        Mockito.when(movieCompositeIntegration.getReviews(movie.getMovieId())).thenReturn(Flux.error(new ServiceUnavailableException("review did not respond within 2000ms")));
+        Mockito.when(movieCompositeIntegration.getMovies(given)).thenReturn(Flux.just(movie));
+        Mockito.when(movieCompositeIntegration.getRecommendations(given)).thenReturn(Flux.error(new ServiceUnavailableException("recommendation did not respond within 2000ms")));
+        Mockito.when(movieCompositeIntegration.getReviews(given)).thenReturn(Flux.fromIterable(reviews));
+
+        getAndVerifyMovie(movie.getMovieId(), HttpStatus.OK, "reviews")
+                .jsonPath("$.missingParts[0]").isEqualTo("reviews");
+
+        webTestClient.get()
+                .uri("/movie-composite?ids=1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectHeader().valueEquals(ResponseHeaders.MISSING_PARTS, "recommendations")
+                .expectBody()
+                .jsonPath("$[0].missingParts[0]").isEqualTo("recommendations");
+    }
+
+    @Test
+    void getMoviesByIdsThrowsInvalidInputException() {
+        webTestClient.get()
+                .uri("/movie-composite?ids=1,-1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Invalid movieId: -1");
+    }
+
     @Test
     void deleteCompositeMovie() {
         int movieId = 1;
@@ -140,6 +281,14 @@ public class MovieCompositeServiceApplicationTests {
         verify(movieCompositeIntegration, times(movieAggregate.getRecommendations().size())).deleteRecommendations(given);
     }
 
+    private MovieAggregatePart readPart(String line) {
+        try {
+            return objectMapper.readValue(line, MovieAggregatePart.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private WebTestClient.BodyContentSpec getAndVerifyMovie(int movieId, HttpStatus status) {
         return webTestClient.get()
                 .uri("/movie-composite/" + movieId)
@@ -150,6 +299,16 @@ public class MovieCompositeServiceApplicationTests {
                 .expectBody();
     }
 
+    private WebTestClient.BodyContentSpec getAndVerifyMovie(int movieId, HttpStatus status, String missingParts) {
+        return webTestClient.get()
+                .uri("/movie-composite/" + movieId)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(status)
+                .expectHeader().valueEquals(ResponseHeaders.MISSING_PARTS, missingParts)
+                .expectBody();
+    }
+
     private WebTestClient.BodyContentSpec postAndVerify(MovieAggregate movieAggregate) {
         return webTestClient.post()
                 .uri("/movie-composite")
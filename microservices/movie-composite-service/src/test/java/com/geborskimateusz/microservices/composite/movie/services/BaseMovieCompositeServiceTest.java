@@ -1,24 +1,43 @@
 package com.geborskimateusz.microservices.composite.movie.services;
 
 import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.geborskimateusz.api.composite.movie.MovieAggregatePart;
 import com.geborskimateusz.api.core.movie.Movie;
 import com.geborskimateusz.api.core.recommendation.Recommendation;
 import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.composite.movie.services.cache.MovieAggregateCache;
+import com.geborskimateusz.microservices.composite.movie.services.cache.SingleFlight;
+import com.geborskimateusz.microservices.composite.movie.services.outbox.EventOutbox;
+import com.geborskimateusz.microservices.composite.movie.services.outbox.InMemoryOutboxLog;
+import com.geborskimateusz.microservices.composite.movie.services.outbox.OutboxRecord;
+import com.geborskimateusz.microservices.composite.movie.services.readmodel.MovieReadModel;
 import com.geborskimateusz.microservices.composite.movie.services.utils.CompositeAggregator;
+import com.geborskimateusz.util.exceptions.InvalidInputException;
 import com.geborskimateusz.util.exceptions.NotFoundException;
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
 import com.geborskimateusz.util.http.ServiceUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -34,12 +53,41 @@ class BaseMovieCompositeServiceTest {
     @Mock
     ServiceUtil serviceUtil;
 
-    @InjectMocks
+    SimpleMeterRegistry meterRegistry;
+
+    MovieAggregateCache movieAggregateCache;
+
     BaseMovieCompositeService movieCompositeService;
 
     @BeforeEach
     void setup() {
         MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        movieAggregateCache = new MovieAggregateCache(100, 60, 60, meterRegistry);
+        movieCompositeService = new BaseMovieCompositeService(movieCompositeIntegration, serviceUtil, movieAggregateCache, new StaticListableBeanFactory().getBeanProvider(MovieReadModel.class), new StaticListableBeanFactory().getBeanProvider(EventOutbox.class), 100);
+    }
+
+    @Test
+    void getCompositeMovieFromReadModel() {
+
+        int given = 1;
+
+        Movie movie = getMovie(given);
+
+        when(serviceUtil.getServiceAddress()).thenReturn("Fake service address");
+
+        MovieReadModel readModel = new MovieReadModel(movieCompositeIntegration, serviceUtil, 10);
+        readModel.applyMovieEvent(new Event<>(Event.Type.CREATE, given, movie));
+
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("movieReadModel", readModel);
+        movieCompositeService = new BaseMovieCompositeService(movieCompositeIntegration, serviceUtil, movieAggregateCache, beanFactory.getBeanProvider(MovieReadModel.class), beanFactory.getBeanProvider(EventOutbox.class), 100);
+
+        MovieAggregate movieAggregate = movieCompositeService.getCompositeMovie(given).block();
+
+        assertNotNull(movieAggregate);
+        assertEquals(movie.getTitle(), movieAggregate.getTitle());
+        verify(movieCompositeIntegration, never()).getMovie(given);
     }
 
     @Test
@@ -69,6 +117,134 @@ class BaseMovieCompositeServiceTest {
         });
     }
 
+    @Test
+    void getCompositeMovieServedFromCache() {
+        int given = 1;
+        Movie movie = getMovie(given);
+
+        when(movieCompositeIntegration.getMovie(given)).thenReturn(Mono.just(movie));
+        when(movieCompositeIntegration.getRecommendations(given)).thenReturn(Flux.empty());
+        when(movieCompositeIntegration.getReviews(given)).thenReturn(Flux.empty());
+
+        MovieAggregate first = movieCompositeService.getCompositeMovie(given).block();
+        MovieAggregate second = movieCompositeService.getCompositeMovie(given).block();
+
+        assertSame(first, second);
+        verify(movieCompositeIntegration, times(1)).getMovie(given);
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void getCompositeMovieMarksMissingPartsAndSkipsCache() {
+        int given = 1;
+        Movie movie = getMovie(given);
+        List<Recommendation> recommendations = getRecommendations(movie);
+
+        when(movieCompositeIntegration.getMovie(given)).thenReturn(Mono.just(movie));
+        when(movieCompositeIntegration.getRecommendations(given)).thenReturn(Flux.fromIterable(recommendations));
+        when(movieCompositeIntegration.getReviews(given)).thenReturn(Flux.error(new ServiceUnavailableException("review did not respond within 2000ms")));
+
+        MovieAggregate first = movieCompositeService.getCompositeMovie(given).block();
+        movieCompositeService.getCompositeMovie(given).block();
+
+        assertNotNull(first);
+        assertEquals(Collections.singletonList("reviews"), first.getMissingParts());
+        assertTrue(first.getReviews().isEmpty());
+        assertEquals(3, first.getRecommendations().size());
+        verify(movieCompositeIntegration, times(2)).getMovie(given);
+    }
+
+    @Test
+    void getCompositeMovieNotCachedAfterInvalidation() {
+        int given = 1;
+        Movie movie = getMovie(given);
+
+        when(movieCompositeIntegration.getMovie(given)).thenReturn(Mono.just(movie));
+        when(movieCompositeIntegration.getRecommendations(given)).thenReturn(Flux.empty());
+        when(movieCompositeIntegration.getReviews(given)).thenReturn(Flux.empty());
+
+        movieCompositeService.getCompositeMovie(given).block();
+        movieAggregateCache.invalidate(given);
+        movieCompositeService.getCompositeMovie(given).block();
+        movieCompositeService.getCompositeMovie(given).block();
+
+        verify(movieCompositeIntegration, times(3)).getMovie(given);
+    }
+
+    @Test
+    void getCompositeMovieCoalescesConcurrentCalls() {
+        int given = 1;
+        Movie movie = getMovie(given);
+        AtomicInteger movieSubscriptions = new AtomicInteger();
+
+        when(movieCompositeIntegration.getMovie(given)).thenReturn(Mono.just(movie)
+                .delayElement(Duration.ofMillis(100))
+                .doOnSubscribe(subscription -> movieSubscriptions.incrementAndGet()));
+        when(movieCompositeIntegration.getRecommendations(given)).thenReturn(Flux.empty());
+        when(movieCompositeIntegration.getReviews(given)).thenReturn(Flux.empty());
+
+        List<MovieAggregate> aggregates = Flux.merge(
+                movieCompositeService.getCompositeMovie(given),
+                movieCompositeService.getCompositeMovie(given),
+                movieCompositeService.getCompositeMovie(given)
+        ).collectList().block();
+
+        assertEquals(3, aggregates.size());
+        assertEquals(1, movieSubscriptions.get());
+        assertEquals(2, meterRegistry.get(SingleFlight.COALESCED_CALLS_METRIC).tag("operation", "getCompositeMovie").counter().count());
+    }
+
+    @Test
+    void getCompositeMovieStreamEmitsMovieFirst() {
+        int given = 1;
+        Movie movie = getMovie(given);
+
+        List<Recommendation> recommendations = getRecommendations(movie);
+        List<Review> reviews = getReviews(movie);
+
+        when(movieCompositeIntegration.getMovie(given)).thenReturn(Mono.just(movie).delayElement(Duration.ofMillis(100)));
+        when(movieCompositeIntegration.streamRecommendations(given)).thenReturn(Flux.fromIterable(recommendations));
+        when(movieCompositeIntegration.streamReviews(given)).thenReturn(Flux.fromIterable(reviews));
+
+        StepVerifier.create(movieCompositeService.getCompositeMovieStream(given))
+                .expectNextMatches(part -> part.getType() == MovieAggregatePart.Type.MOVIE && part.getTitle().equals(movie.getTitle()))
+                .expectNextCount(recommendations.size() + reviews.size())
+                .verifyComplete();
+    }
+
+    @Test
+    void getCompositeMovieStreamPropagatesNotFound() {
+        int given = 1;
+
+        when(movieCompositeIntegration.getMovie(given)).thenReturn(Mono.error(new NotFoundException()));
+        when(movieCompositeIntegration.streamRecommendations(given)).thenReturn(Flux.empty());
+        when(movieCompositeIntegration.streamReviews(given)).thenReturn(Flux.empty());
+
+        StepVerifier.create(movieCompositeService.getCompositeMovieStream(given))
+                .expectError(NotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void getCompositeMovieStreamPassesDetailsOnBeforeTheBackendsComplete() {
+        int given = 1;
+        Movie movie = getMovie(given);
+        Recommendation recommendation = getRecommendations(movie).get(0);
+
+        when(movieCompositeIntegration.getMovie(given)).thenReturn(Mono.just(movie));
+        when(movieCompositeIntegration.streamRecommendations(given)).thenReturn(Flux.concat(Flux.just(recommendation), Flux.never()));
+        when(movieCompositeIntegration.streamReviews(given)).thenReturn(Flux.never());
+
+        StepVerifier.create(movieCompositeService.getCompositeMovieStream(given))
+                .expectNextMatches(part -> part.getType() == MovieAggregatePart.Type.MOVIE)
+                .expectNextMatches(part -> part.getType() == MovieAggregatePart.Type.RECOMMENDATION)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        verify(movieCompositeIntegration, never()).getRecommendations(given);
+        verify(movieCompositeIntegration, never()).getReviews(given);
+    }
+
     @Test
     void getCompositeMovieShouldThrowNotFoundException() {
         int given = 1;
@@ -79,6 +255,107 @@ class BaseMovieCompositeServiceTest {
     }
 
 
+    @Test
+    void getCompositeMovies() {
+        Movie first = getMovie(1);
+        Movie second = getMovie(2);
+        List<Integer> given = Arrays.asList(1, 2, 1, 3);
+        List<Integer> distinct = Arrays.asList(1, 2, 3);
+
+        List<Recommendation> recommendations = getRecommendations(first);
+        List<Review> reviews = getReviews(second);
+
+        when(movieCompositeIntegration.getMovies(distinct)).thenReturn(Flux.just(second, first));
+        when(movieCompositeIntegration.getRecommendations(distinct)).thenReturn(Flux.fromIterable(recommendations));
+        when(movieCompositeIntegration.getReviews(distinct)).thenReturn(Flux.fromIterable(reviews));
+
+        List<MovieAggregate> movieAggregates = movieCompositeService.getCompositeMovies(given).collectList().block();
+
+        assertNotNull(movieAggregates);
+        assertAll(() -> {
+            assertEquals(2, movieAggregates.size());
+            assertEquals(first.getMovieId(), movieAggregates.get(0).getMovieId());
+            assertEquals(recommendations.size(), movieAggregates.get(0).getRecommendations().size());
+            assertTrue(movieAggregates.get(0).getReviews().isEmpty());
+            assertEquals(second.getMovieId(), movieAggregates.get(1).getMovieId());
+            assertTrue(movieAggregates.get(1).getRecommendations().isEmpty());
+            assertEquals(reviews.size(), movieAggregates.get(1).getReviews().size());
+        });
+    }
+
+    @Test
+    void getCompositeMoviesShouldThrowInvalidInputException() {
+        assertThrows(InvalidInputException.class, () -> movieCompositeService.getCompositeMovies(Arrays.asList(1, 0)));
+        verifyNoMoreInteractions(movieCompositeIntegration);
+    }
+
+    @Test
+    void getCompositeMoviesRejectsMoreIdsThanMaxLimit() {
+        List<Integer> given = IntStream.rangeClosed(1, 101).boxed().collect(Collectors.toList());
+
+        InvalidInputException ex = assertThrows(InvalidInputException.class, () -> movieCompositeService.getCompositeMovies(given));
+
+        assertEquals("Invalid number of movieIds: 101, expected at most 100", ex.getMessage());
+        verifyNoMoreInteractions(movieCompositeIntegration);
+    }
+
+    @Test
+    void createCompositeMovieCompletesWhenAllEventsAreConfirmed() {
+        Movie movie = getMovie(1);
+        List<Recommendation> recommendations = getRecommendations(movie);
+        List<Review> reviews = getReviews(movie);
+        MovieAggregate given = CompositeAggregator.createMovieAggregate(movie, recommendations, reviews, null);
+
+        MonoProcessor<Review> lastConfirm = MonoProcessor.create();
+        when(movieCompositeIntegration.createMovie(any())).thenReturn(Mono.just(movie));
+        when(movieCompositeIntegration.createRecommendation(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(movieCompositeIntegration.createReview(any())).thenReturn(Mono.just(reviews.get(0)), lastConfirm);
+
+        StepVerifier.create(movieCompositeService.createCompositeMovie(given))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> lastConfirm.onNext(reviews.get(1)))
+                .verifyComplete();
+
+        verify(movieCompositeIntegration, times(1)).createMovie(any(Movie.class));
+        verify(movieCompositeIntegration, times(recommendations.size())).createRecommendation(any(Recommendation.class));
+        verify(movieCompositeIntegration, times(reviews.size())).createReview(any(Review.class));
+    }
+
+    @Test
+    void createCompositeMovieFailsWhenAnEventIsNotConfirmed() {
+        Movie movie = getMovie(1);
+        MovieAggregate given = CompositeAggregator.createMovieAggregate(movie, getRecommendations(movie), getReviews(movie), null);
+
+        when(movieCompositeIntegration.createMovie(any())).thenReturn(Mono.error(new ServiceUnavailableException("Nack")));
+        when(movieCompositeIntegration.createRecommendation(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(movieCompositeIntegration.createReview(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(movieCompositeService.createCompositeMovie(given))
+                .expectError(ServiceUnavailableException.class)
+                .verify();
+    }
+
+    @Test
+    void createCompositeMovieAppendsTheWholeAggregateToTheOutbox() {
+        Movie movie = getMovie(1);
+        List<Recommendation> recommendations = getRecommendations(movie);
+        List<Review> reviews = getReviews(movie);
+        MovieAggregate given = CompositeAggregator.createMovieAggregate(movie, recommendations, reviews, null);
+
+        InMemoryOutboxLog outboxLog = new InMemoryOutboxLog(100);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("eventOutbox", new EventOutbox(outboxLog, movieAggregateCache));
+        movieCompositeService = new BaseMovieCompositeService(movieCompositeIntegration, serviceUtil, movieAggregateCache, beanFactory.getBeanProvider(MovieReadModel.class), beanFactory.getBeanProvider(EventOutbox.class), 100);
+
+        StepVerifier.create(movieCompositeService.createCompositeMovie(given)).verifyComplete();
+
+        List<OutboxRecord> records = outboxLog.read(100);
+        assertEquals(1, records.size());
+        assertEquals(1 + recommendations.size() + reviews.size(), records.get(0).getEvents().size());
+        verifyNoMoreInteractions(movieCompositeIntegration);
+    }
+
     @Disabled
     @Test
     void createCompositeMovie() {
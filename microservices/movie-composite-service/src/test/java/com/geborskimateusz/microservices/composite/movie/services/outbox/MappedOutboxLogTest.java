@@ -0,0 +1,174 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.composite.movie.services.utils.MessageSources;
+import com.geborskimateusz.util.exceptions.InvalidInputException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MappedOutboxLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("outbox");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    void readReturnsTheAppendedEvents() throws IOException {
+        MappedOutboxLog outboxLog = open();
+        Event<Integer, Movie> created = new Event<>(Event.Type.CREATE, 1, Movie.builder().movieId(1).title("Title").genre("Genre").build());
+
+        outboxLog.append(Arrays.asList(
+                new OutboxEvent(MessageSources.OUTPUT_MOVIES, created),
+                new OutboxEvent(MessageSources.OUTPUT_REVIEWS, new Event<>(Event.Type.DELETE, 1, null))));
+
+        List<OutboxRecord> records = outboxLog.read(10);
+
+        assertEquals(1, records.size());
+        assertEquals(2, outboxLog.pendingEvents());
+
+        OutboxEvent movieEvent = records.get(0).getEvents().get(0);
+        assertEquals(MessageSources.OUTPUT_MOVIES, movieEvent.getOutput());
+        assertEquals(created.getEventId(), movieEvent.getEvent().getEventId());
+        assertEquals(created.getEventCreatedAt(), movieEvent.getEvent().getEventCreatedAt());
+        assertEquals("Title", ((Map<?, ?>) movieEvent.getEvent().getData()).get("title"));
+        assertEquals(Event.Type.DELETE, records.get(0).getEvents().get(1).getEvent().getEventType());
+    }
+
+    @Test
+    void pendingRecordsSurviveReopening() throws IOException {
+        MappedOutboxLog outboxLog = open();
+        long first = outboxLog.append(deleteEvents(1));
+        outboxLog.append(deleteEvents(2));
+        outboxLog.commit(first);
+        outboxLog.close();
+
+        MappedOutboxLog reopened = open();
+
+        List<OutboxRecord> records = reopened.read(10);
+        assertEquals(1, records.size());
+        assertEquals(2, (int) records.get(0).getEvents().get(0).getEvent().getKey());
+
+        reopened.commit(records.get(0).getPosition());
+        reopened.append(deleteEvents(3));
+
+        assertEquals(3, (int) open().read(10).get(0).getEvents().get(0).getEvent().getKey());
+    }
+
+    @Test
+    void segmentsRollOverAndCommittedSegmentsAreDeleted() throws IOException {
+        MappedOutboxLog outboxLog = open();
+
+        long last = 0;
+        for (int movieId = 1; movieId <= 20; movieId++) last = outboxLog.append(deleteEvents(movieId));
+
+        assertEquals(20, outboxLog.read(100).size());
+        assertEquals(true, segmentFiles().size() > 2);
+
+        outboxLog.commit(last);
+
+        assertEquals(1, segmentFiles().size());
+        assertEquals(0, outboxLog.read(100).size());
+        assertEquals(0, open().pendingEvents());
+    }
+
+    @Test
+    void deletedSegmentsAreUnmapped() throws IOException {
+        Path maps = Paths.get("/proc/self/maps");
+        assumeTrue(Files.isReadable(maps));
+
+        MappedOutboxLog outboxLog = open();
+        long last = 0;
+        for (int movieId = 1; movieId <= 20; movieId++) last = outboxLog.append(deleteEvents(movieId));
+        List<Path> rolledOver = segmentFiles().subList(0, segmentFiles().size() - 1);
+
+        outboxLog.commit(last);
+
+        String mappings = new String(Files.readAllBytes(maps), StandardCharsets.UTF_8);
+        rolledOver.forEach(segment -> assertFalse(mappings.contains(segment.toString()), segment + " is still mapped"));
+    }
+
+    @Test
+    void rejectsMoreEventsThanARecordHolds() throws IOException {
+        MappedOutboxLog outboxLog = new MappedOutboxLog(directory, SEGMENT_SIZE, Integer.MAX_VALUE, false, mapper);
+        List<OutboxEvent> events = Collections.nCopies(MappedOutboxLog.MAX_EVENTS_PER_RECORD + 1, deleteEvents(1).get(0));
+
+        assertThrows(InvalidInputException.class, () -> outboxLog.append(events));
+        assertEquals(0, outboxLog.pendingEvents());
+    }
+
+    @Test
+    void recoveryStopsAtADamagedEntry() throws IOException {
+        MappedOutboxLog outboxLog = open();
+        outboxLog.append(deleteEvents(1));
+        long damaged = outboxLog.append(deleteEvents(2));
+        outboxLog.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            file.seek(damaged + 20);
+            file.write(file.read() ^ 0xFF);
+        }
+
+        MappedOutboxLog reopened = open();
+        assertEquals(1, reopened.read(10).size());
+
+        reopened.append(deleteEvents(3));
+        List<Integer> keys = open().read(10).stream()
+                .map(record -> record.getEvents().get(0).getEvent().getKey())
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(1, 3), keys);
+    }
+
+    private MappedOutboxLog open() throws IOException {
+        return new MappedOutboxLog(directory, SEGMENT_SIZE, 1000, false, mapper);
+    }
+
+    private List<OutboxEvent> deleteEvents(int movieId) {
+        return Collections.singletonList(new OutboxEvent(MessageSources.OUTPUT_MOVIES, new Event<>(Event.Type.DELETE, movieId, null)));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".segment")).sorted().collect(Collectors.toList());
+        }
+    }
+}
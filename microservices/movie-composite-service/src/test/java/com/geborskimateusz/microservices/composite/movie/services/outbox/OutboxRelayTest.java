@@ -0,0 +1,120 @@
+package com.geborskimateusz.microservices.composite.movie.services.outbox;
+
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.composite.movie.services.cache.MovieAggregateCache;
+import com.geborskimateusz.microservices.composite.movie.services.publishing.EventPublisher;
+import com.geborskimateusz.microservices.composite.movie.services.utils.MessageSources;
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OutboxRelayTest {
+
+    QueueChannel movies = new QueueChannel();
+    QueueChannel recommendations = new QueueChannel();
+    QueueChannel reviews = new QueueChannel();
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    InMemoryOutboxLog outboxLog = new InMemoryOutboxLog(10);
+    EventPublisher eventPublisher = new EventPublisher(false, 10, 1000);
+    MovieAggregateCache movieAggregateCache = new MovieAggregateCache(100, 60, 60, meterRegistry);
+    MessageSources messageSources = mock(MessageSources.class);
+
+    EventOutbox eventOutbox;
+    OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        when(messageSources.outputMovies()).thenReturn(movies);
+        when(messageSources.outputRecommendations()).thenReturn(recommendations);
+        when(messageSources.outputReviews()).thenReturn(reviews);
+
+        eventOutbox = new EventOutbox(outboxLog, movieAggregateCache);
+        relay = new OutboxRelay(outboxLog, eventPublisher, messageSources, movieAggregateCache, meterRegistry, 2, 10, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventPublisher.dispose();
+    }
+
+    @Test
+    void drainRelaysAllEventsInOrderAndCommitsThem() {
+        eventOutbox.appendCreate(movie(1), Collections.emptyList(), Arrays.asList(review(1, 1), review(1, 2))).block();
+        eventOutbox.appendCreate(movie(2), Collections.emptyList(), Collections.emptyList()).block();
+
+        StepVerifier.create(relay.drain()).verifyComplete();
+
+        assertEquals(2, movies.getQueueSize());
+        assertEquals(1, keyOf(movies.receive(0)));
+        assertEquals(2, keyOf(movies.receive(0)));
+        assertEquals(2, reviews.getQueueSize());
+        assertEquals(0, outboxLog.pendingEvents());
+        assertEquals(0, meterRegistry.get(OutboxRelay.PENDING_METRIC).gauge().value());
+    }
+
+    @Test
+    void failedBatchStaysInTheOutboxAndIsRelayedAgain() {
+        AtomicBoolean brokerDown = new AtomicBoolean(true);
+        QueueChannel flakyMovies = new QueueChannel() {
+            @Override
+            public boolean send(Message<?> message) {
+                if (brokerDown.get()) throw new IllegalStateException("Broker down");
+                return super.send(message);
+            }
+        };
+        when(messageSources.outputMovies()).thenReturn(flakyMovies);
+
+        eventOutbox.appendDelete(1).block();
+        String eventId = outboxLog.read(10).get(0).getEvents().get(0).getEvent().getEventId();
+
+        StepVerifier.create(relay.drain()).verifyComplete();
+        assertEquals(3, outboxLog.pendingEvents());
+
+        brokerDown.set(false);
+        StepVerifier.create(relay.drain()).verifyComplete();
+
+        assertEquals(0, outboxLog.pendingEvents());
+        assertEquals(eventId, ((Event<?, ?>) flakyMovies.receive(0).getPayload()).getEventId());
+    }
+
+    @Test
+    void appendFailsWhenTheOutboxIsFull() {
+        eventOutbox.appendCreate(movie(1), Collections.emptyList(), Arrays.asList(review(1, 1), review(1, 2))).block();
+
+        assertThrows(ServiceUnavailableException.class, () -> eventOutbox.appendCreate(movie(2), Collections.emptyList(),
+                Arrays.asList(review(2, 1), review(2, 2), review(2, 3), review(2, 4), review(2, 5), review(2, 6), review(2, 7))).block());
+        assertEquals(3, outboxLog.pendingEvents());
+
+        eventOutbox.appendDelete(1).block();
+        assertEquals(6, outboxLog.pendingEvents());
+    }
+
+    private int keyOf(Message<?> message) {
+        return (Integer) ((Event<?, ?>) message.getPayload()).getKey();
+    }
+
+    private Movie movie(int movieId) {
+        return Movie.builder().movieId(movieId).title("Title " + movieId).genre("Genre").build();
+    }
+
+    private Review review(int movieId, int reviewId) {
+        return Review.builder().movieId(movieId).reviewId(reviewId).author("Author").subject("Subject").content("Content").build();
+    }
+}
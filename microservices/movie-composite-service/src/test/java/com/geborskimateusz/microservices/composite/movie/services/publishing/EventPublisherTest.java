@@ -0,0 +1,93 @@
+package com.geborskimateusz.microservices.composite.movie.services.publishing;
+
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class EventPublisherTest {
+
+    QueueChannel channel = new QueueChannel();
+
+    EventPublisher eventPublisher;
+
+    @AfterEach
+    void tearDown() {
+        if (eventPublisher != null) eventPublisher.dispose();
+    }
+
+    @Test
+    void publishCompletesOnSendWithoutConfirms() {
+        eventPublisher = new EventPublisher(false, 1, 100);
+
+        StepVerifier.create(eventPublisher.publish(channel, "event")).verifyComplete();
+
+        assertEquals(1, channel.getQueueSize());
+    }
+
+    @Test
+    void publishCompletesOnConfirm() {
+        eventPublisher = new EventPublisher(true, 10, 1000);
+
+        StepVerifier.create(eventPublisher.publish(channel, "event"))
+                .expectSubscription()
+                .then(() -> eventPublisher.onConfirm(confirmFor(channel.receive(100))))
+                .verifyComplete();
+    }
+
+    @Test
+    void publishFailsOnNack() {
+        eventPublisher = new EventPublisher(true, 10, 1000);
+
+        StepVerifier.create(eventPublisher.publish(channel, "event"))
+                .expectSubscription()
+                .then(() -> eventPublisher.onPublishError(new ErrorMessage(new MessageHandlingException(channel.receive(100), "Nacked"))))
+                .expectError(ServiceUnavailableException.class)
+                .verify();
+    }
+
+    @Test
+    void publishFailsWithoutConfirmInTime() {
+        eventPublisher = new EventPublisher(true, 10, 50);
+
+        StepVerifier.create(eventPublisher.publish(channel, "event"))
+                .expectError(ServiceUnavailableException.class)
+                .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void publishWaitsForConfirmsWhenTooManyInFlight() {
+        eventPublisher = new EventPublisher(true, 1, 1000);
+
+        Mono<Void> first = eventPublisher.publish(channel, "first");
+        Mono<Void> second = eventPublisher.publish(channel, "second");
+
+        first.subscribe();
+        Message<?> firstSent = channel.receive(100);
+        assertNotNull(firstSent);
+
+        StepVerifier.create(second)
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> eventPublisher.onConfirm(confirmFor(firstSent)))
+                .then(() -> eventPublisher.onConfirm(confirmFor(channel.receive(100))))
+                .verifyComplete();
+    }
+
+    private Message<?> confirmFor(Message<?> sent) {
+        assertNotNull(sent);
+        return MessageBuilder.fromMessage(sent).setHeader(AmqpHeaders.PUBLISH_CONFIRM, true).build();
+    }
+}
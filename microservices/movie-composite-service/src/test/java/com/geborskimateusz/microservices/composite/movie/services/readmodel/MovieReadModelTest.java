@@ -0,0 +1,155 @@
+package com.geborskimateusz.microservices.composite.movie.services.readmodel;
+
+import com.geborskimateusz.api.composite.movie.MovieAggregate;
+import com.geborskimateusz.api.core.movie.Movie;
+import com.geborskimateusz.api.core.recommendation.Recommendation;
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.composite.movie.services.MovieCompositeIntegration;
+import com.geborskimateusz.util.http.ServiceUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class MovieReadModelTest {
+
+    @Mock
+    MovieCompositeIntegration integration;
+
+    @Mock
+    ServiceUtil serviceUtil;
+
+    MovieReadModel readModel;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(serviceUtil.getServiceAddress()).thenReturn("Fake service address");
+        readModel = new MovieReadModel(integration, serviceUtil, 2);
+    }
+
+    @Test
+    void materializesMovieOnceItsMovieEventArrives() {
+        readModel.applyReviewEvent(new Event<>(Event.Type.CREATE, 1, review(1, 1)));
+        readModel.applyRecommendationEvent(new Event<>(Event.Type.CREATE, 1, recommendation(1, 1)));
+
+        assertNull(readModel.find(1));
+
+        readModel.applyMovieEvent(new Event<>(Event.Type.CREATE, 1, movie(1)));
+
+        MovieAggregate aggregate = readModel.find(1);
+        assertNotNull(aggregate);
+        assertEquals(1, aggregate.getReviews().size());
+        assertEquals(1, aggregate.getRecommendations().size());
+    }
+
+    @Test
+    void dropsMovieWhenAllItsPartsAreDeleted() {
+        readModel.applyMovieEvent(new Event<>(Event.Type.CREATE, 1, movie(1)));
+        readModel.applyReviewEvent(new Event<>(Event.Type.CREATE, 1, review(1, 1)));
+
+        readModel.applyMovieEvent(new Event<>(Event.Type.DELETE, 1, null));
+        assertNull(readModel.find(1));
+        assertEquals(1, readModel.size());
+
+        readModel.applyReviewEvent(new Event<>(Event.Type.DELETE, 1, null));
+        assertEquals(0, readModel.size());
+    }
+
+    @Test
+    void rebuildPagesThroughAllMovies() {
+        when(integration.getMovies(0, 2)).thenReturn(Flux.just(movie(1), movie(2)));
+        when(integration.getMovies(2, 2)).thenReturn(Flux.just(movie(3)));
+        when(integration.getRecommendations(anyList())).thenReturn(Flux.just(recommendation(1, 1), recommendation(3, 1)));
+        when(integration.getReviews(anyList())).thenReturn(Flux.just(review(2, 1)));
+
+        StepVerifier.create(readModel.rebuild())
+                .expectNext(3L)
+                .verifyComplete();
+
+        assertEquals(3, readModel.size());
+        assertEquals(1, readModel.find(1).getRecommendations().size());
+        assertEquals(1, readModel.find(2).getReviews().size());
+        assertFalse(readModel.isRebuilding());
+    }
+
+    @Test
+    void eventsAppliedDuringRebuildWin() {
+        MonoProcessor<Void> firstPage = MonoProcessor.create();
+
+        when(integration.getMovies(0, 2)).thenReturn(firstPage.thenMany(Flux.just(movie(1), movie(2))));
+        when(integration.getMovies(2, 2)).thenReturn(Flux.empty());
+        when(integration.getRecommendations(anyList())).thenReturn(Flux.empty());
+        when(integration.getReviews(anyList())).thenReturn(Flux.empty());
+
+        Mono<Long> rebuild = readModel.rebuild().cache();
+        rebuild.subscribe();
+        assertTrue(readModel.isRebuilding());
+
+        Movie renamed = Movie.builder().movieId(1).title("Renamed").genre("Fake genre").build();
+        readModel.applyMovieEvent(new Event<>(Event.Type.CREATE, 1, renamed));
+        readModel.applyMovieEvent(new Event<>(Event.Type.DELETE, 2, null));
+
+        firstPage.onComplete();
+
+        assertEquals(2L, rebuild.block());
+        assertEquals("Renamed", readModel.find(1).getTitle());
+        assertNull(readModel.find(2));
+    }
+
+    @Test
+    void detailsDeletedDuringRebuildStayDeleted() {
+        MonoProcessor<Void> details = MonoProcessor.create();
+
+        when(integration.getMovies(0, 2)).thenReturn(Flux.just(movie(1)));
+        when(integration.getRecommendations(anyList())).thenReturn(Flux.just(recommendation(1, 1)));
+        when(integration.getReviews(anyList())).thenReturn(details.thenMany(Flux.just(review(1, 1), review(1, 2))));
+
+        Mono<Long> rebuild = readModel.rebuild().cache();
+        rebuild.subscribe();
+
+        readModel.applyReviewEvent(new Event<>(Event.Type.DELETE, 1, null));
+        readModel.applyReviewEvent(new Event<>(Event.Type.CREATE, 1, review(1, 3)));
+
+        details.onComplete();
+
+        assertEquals(1L, rebuild.block());
+        MovieAggregate aggregate = readModel.find(1);
+        assertEquals(1, aggregate.getRecommendations().size());
+        assertEquals(1, aggregate.getReviews().size());
+        assertEquals(3, aggregate.getReviews().get(0).getReviewId());
+    }
+
+    @Test
+    void rejectsConcurrentRebuild() {
+        when(integration.getMovies(0, 2)).thenReturn(Flux.never());
+
+        readModel.rebuild().subscribe();
+
+        StepVerifier.create(readModel.rebuild())
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    private Movie movie(int movieId) {
+        return Movie.builder().movieId(movieId).title("Fake title").genre("Fake genre").build();
+    }
+
+    private Recommendation recommendation(int movieId, int recommendationId) {
+        return Recommendation.builder().movieId(movieId).recommendationId(recommendationId).author("Author").rate(1).content("Content").build();
+    }
+
+    private Review review(int movieId, int reviewId) {
+        return Review.builder().movieId(movieId).reviewId(reviewId).author("Author").subject("Subject").content("Content").build();
+    }
+}
@@ -0,0 +1,52 @@
+package com.geborskimateusz.microservices.composite.movie.services.readmodel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import reactor.core.publisher.Mono;
+
+import static org.mockito.Mockito.*;
+
+class ReadModelProjectorTest {
+
+    MovieReadModel readModel = mock(MovieReadModel.class);
+    ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+    Connection connection = mock(Connection.class);
+
+    ConnectionListener connectionListener;
+
+    @BeforeEach
+    void setup() {
+        when(readModel.rebuild()).thenReturn(Mono.just(0L));
+
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("connectionFactory", connectionFactory);
+        new ReadModelProjector(readModel, new SimpleMeterRegistry(), beanFactory.getBeanProvider(ConnectionFactory.class), false, true);
+
+        ArgumentCaptor<ConnectionListener> listener = ArgumentCaptor.forClass(ConnectionListener.class);
+        verify(connectionFactory).addConnectionListener(listener.capture());
+        connectionListener = listener.getValue();
+    }
+
+    @Test
+    void doesNotRebuildOnFirstConnection() {
+        connectionListener.onCreate(connection);
+
+        verify(readModel, never()).rebuild();
+    }
+
+    @Test
+    void rebuildsOnceReconnectedAfterLosingTheConnection() {
+        connectionListener.onCreate(connection);
+        connectionListener.onClose(connection);
+        connectionListener.onCreate(connection);
+        connectionListener.onCreate(connection);
+
+        verify(readModel, times(1)).rebuild();
+    }
+}
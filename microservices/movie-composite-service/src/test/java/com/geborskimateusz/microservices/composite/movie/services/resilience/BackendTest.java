@@ -0,0 +1,139 @@
+package com.geborskimateusz.microservices.composite.movie.services.resilience;
+
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackendTest {
+
+    SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void failsSlowCallAfterTimeout() {
+        Backend backend = new Backend("review", Duration.ofMillis(100), 10, false, Duration.ofMillis(10), meterRegistry);
+
+        StepVerifier.create(backend.call(() -> Mono.never()))
+                .expectError(ServiceUnavailableException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(0, meterRegistry.get(Backend.IN_FLIGHT_METRIC).gauge().value());
+    }
+
+    @Test
+    void rejectsCallsBeyondBulkhead() {
+        Backend backend = new Backend("review", Duration.ofSeconds(5), 1, false, Duration.ofMillis(10), meterRegistry);
+
+        Disposable first = backend.call(() -> Mono.never()).subscribe();
+
+        StepVerifier.create(backend.call(() -> Mono.just("second")))
+                .expectError(ServiceUnavailableException.class)
+                .verify();
+
+        assertEquals(1, meterRegistry.get(Backend.REJECTED_METRIC).counter().count());
+
+        first.dispose();
+        assertEquals(0, meterRegistry.get(Backend.IN_FLIGHT_METRIC).gauge().value());
+    }
+
+    @Test
+    void streamPassesElementsOnAndTimesOutBetweenThem() {
+        Backend backend = new Backend("review", Duration.ofMillis(200), 10, false, Duration.ofMillis(10), meterRegistry);
+
+        StepVerifier.create(backend.stream(() -> Flux.concat(Flux.just("first"), Flux.never())))
+                .expectNext("first")
+                .expectError(ServiceUnavailableException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(0, meterRegistry.get(Backend.IN_FLIGHT_METRIC).gauge().value());
+    }
+
+    @Test
+    void hedgedRequestAnswersForSlowFirstRequest() {
+        Backend backend = new Backend("review", Duration.ofSeconds(5), 10, true, Duration.ofMillis(20), meterRegistry);
+        AtomicInteger requests = new AtomicInteger();
+
+        Mono<String> call = backend.call(() -> requests.incrementAndGet() == 1 ? Mono.never() : Mono.just("hedge"));
+
+        StepVerifier.create(call)
+                .expectNext("hedge")
+                .verifyComplete();
+
+        assertEquals(2, requests.get());
+        assertEquals(1, meterRegistry.get(Backend.HEDGES_METRIC).counter().count());
+        assertEquals(0, meterRegistry.get(Backend.IN_FLIGHT_METRIC).gauge().value());
+    }
+
+    @Test
+    void hedgedRequestTakesABulkheadSlot() {
+        Backend backend = new Backend("review", Duration.ofSeconds(5), 2, true, Duration.ofMillis(20), meterRegistry);
+        AtomicInteger requests = new AtomicInteger();
+
+        Disposable first = backend.call(() -> {
+            requests.incrementAndGet();
+            return Mono.never();
+        }).subscribe();
+        awaitRequests(requests, 2);
+
+        assertEquals(2, meterRegistry.get(Backend.IN_FLIGHT_METRIC).gauge().value());
+        StepVerifier.create(backend.call(() -> Mono.just("third")))
+                .expectError(ServiceUnavailableException.class)
+                .verify();
+
+        first.dispose();
+        assertEquals(0, meterRegistry.get(Backend.IN_FLIGHT_METRIC).gauge().value());
+    }
+
+    @Test
+    void fullBulkheadIsNotHedged() {
+        Backend backend = new Backend("review", Duration.ofSeconds(5), 1, true, Duration.ofMillis(20), meterRegistry);
+        AtomicInteger requests = new AtomicInteger();
+
+        Mono<String> call = backend.call(() -> {
+            requests.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(200)).thenReturn("first");
+        });
+
+        StepVerifier.create(call)
+                .expectNext("first")
+                .verifyComplete();
+
+        assertEquals(1, requests.get());
+        assertEquals(0, meterRegistry.get(Backend.HEDGES_METRIC).counter().count());
+        assertEquals(0, meterRegistry.get(Backend.REJECTED_METRIC).counter().count());
+    }
+
+    @Test
+    void fastRequestIsNotHedged() {
+        Backend backend = new Backend("review", Duration.ofSeconds(5), 10, true, Duration.ofMillis(200), meterRegistry);
+        AtomicInteger requests = new AtomicInteger();
+
+        StepVerifier.create(backend.call(() -> Mono.fromCallable(requests::incrementAndGet)))
+                .expectNext(1)
+                .verifyComplete();
+
+        assertEquals(1, requests.get());
+        assertEquals(0, meterRegistry.get(Backend.HEDGES_METRIC).counter().count());
+    }
+
+    private void awaitRequests(AtomicInteger requests, int count) {
+        for (long deadline = System.currentTimeMillis() + 5000; requests.get() < count && System.currentTimeMillis() < deadline; ) {
+            Thread.yield();
+        }
+        assertEquals(count, requests.get());
+    }
+}
@@ -1,5 +1,6 @@
 package com.geborskimateusz.microservices.core.movie.persistence;
 
+import com.geborskimateusz.util.event.ContentHash;
 import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
@@ -26,4 +27,13 @@ public class MovieEntity {
     private String title;
     private String genre;
     private String address;
+
+    /**
+     * See {@link #computeContentHash()}, null for movies stored before it was introduced.
+     */
+    private String contentHash;
+
+    public String computeContentHash() {
+        return ContentHash.of(movieId, title, genre, address);
+    }
 }
@@ -1,8 +1,21 @@
 package com.geborskimateusz.microservices.core.movie.persistence;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 public interface MovieRepository extends ReactiveCrudRepository<MovieEntity, String> {
     Mono<MovieEntity> findByMovieId(Integer movieId);
+
+    /**
+     * Keyset page over the unique movieId index.
+     */
+    Flux<MovieEntity> findByMovieIdGreaterThanOrderByMovieIdAsc(int afterMovieId, Pageable pageable);
+
+    Flux<MovieEntity> findByMovieIdIn(Collection<Integer> movieIds);
+
+    Mono<Long> deleteByMovieIdIn(Collection<Integer> movieIds);
 }
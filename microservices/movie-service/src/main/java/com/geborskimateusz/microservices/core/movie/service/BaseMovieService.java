@@ -6,25 +6,55 @@ import com.geborskimateusz.microservices.core.movie.persistence.MovieEntity;
 import com.geborskimateusz.microservices.core.movie.persistence.MovieRepository;
 import com.geborskimateusz.util.exceptions.InvalidInputException;
 import com.geborskimateusz.util.exceptions.NotFoundException;
+import com.geborskimateusz.util.exceptions.PartialBatchException;
 import com.geborskimateusz.util.http.ServiceUtil;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
 @Slf4j
 @RestController
 public class BaseMovieService implements MovieService {
 
+    private static final int DUPLICATE_KEY = 11000;
+
     private final ServiceUtil serviceUtil;
     private final MovieRepository movieRepository;
+    private final ReactiveMongoOperations mongoOperations;
 
     private final MovieMapper movieMapper = MovieMapper.INSTANCE;
+    private final int maxPageLimit;
 
-    public BaseMovieService(ServiceUtil serviceUtil, MovieRepository movieRepository) {
+    public BaseMovieService(
+            ServiceUtil serviceUtil,
+            MovieRepository movieRepository,
+            ReactiveMongoOperations mongoOperations,
+            @Value("${app.page.max-limit:100}") int maxPageLimit) {
         this.serviceUtil = serviceUtil;
         this.movieRepository = movieRepository;
+        this.mongoOperations = mongoOperations;
+        this.maxPageLimit = maxPageLimit;
     }
 
     @Override
@@ -44,26 +74,159 @@ public class BaseMovieService implements MovieService {
     }
 
     @Override
-    public Movie createMovie(Movie movie) {
+    public Flux<Movie> getMovies(List<Integer> movieIds) {
+
+        if (movieIds.size() > maxPageLimit) throw new InvalidInputException("Invalid number of movieIds: " + movieIds.size() + ", expected at most " + maxPageLimit);
+
+        movieIds.stream().filter(movieId -> movieId < 1).findFirst().ifPresent(movieId -> {
+            throw new InvalidInputException("Invalid movieId: " + movieId);
+        });
+
+        return movieRepository.findByMovieIdIn(movieIds)
+                .log()
+                .map(movieMapper::entityToApi)
+                .map(movie -> {
+                    movie.setAddress(serviceUtil.getServiceAddress());
+                    return movie;
+                });
+    }
+
+    @Override
+    public Flux<Movie> getMovies(int afterMovieId, int limit) {
+
+        if (afterMovieId < 0) throw new InvalidInputException("Invalid afterMovieId: " + afterMovieId);
+        if (limit < 1 || limit > maxPageLimit) throw new InvalidInputException("Invalid limit: " + limit + ", expected 1 to " + maxPageLimit);
+
+        return movieRepository.findByMovieIdGreaterThanOrderByMovieIdAsc(afterMovieId, PageRequest.of(0, limit))
+                .log()
+                .map(movieMapper::entityToApi)
+                .map(movie -> {
+                    movie.setAddress(serviceUtil.getServiceAddress());
+                    return movie;
+                });
+    }
+
+    @Override
+    public Mono<Movie> createMovie(Movie movie) {
         log.info("createMovie: Trying to create Movie Entity, passed argument: {}",movie.toString());
 
-        MovieEntity movieEntity = movieMapper.apiToEntity(movie);
+        MovieEntity movieEntity = toEntity(movie);
 
         return movieRepository.save(movieEntity)
                 .onErrorMap(DuplicateKeyException.class, ex -> new InvalidInputException("Duplicate key for movieId: " + movie.getMovieId()))
                 .log()
-                .map(movieMapper::entityToApi)
-                .block();
+                .map(movieMapper::entityToApi);
     }
 
     @Override
-    public void deleteMovie(Integer movieId) {
+    public Mono<Void> deleteMovie(Integer movieId) {
         if (movieId < 1) throw new InvalidInputException("Invalid movieId: " + movieId);
 
-        movieRepository.findByMovieId(movieId)
+        return movieRepository.findByMovieId(movieId)
                 .log()
-                .map(movieRepository::delete)
-                .flatMap(e -> e)
-                .block();
+                .flatMap(movieRepository::delete);
+    }
+
+    /**
+     * Inserts all movies with a single insertMany. The insert is ordered, so when it fails
+     * the movies before the failing one are stored, which the thrown {@link PartialBatchException} reports.
+     */
+    public Mono<Void> createMovies(List<Movie> movies) {
+        log.info("createMovies: Trying to create {} Movie Entities", movies.size());
+
+        List<MovieEntity> movieEntities = movies.stream().map(this::toEntity).collect(Collectors.toList());
+
+        return movieRepository.saveAll(movieEntities)
+                .onErrorMap(ex -> new PartialBatchException(insertedCount(ex), ex))
+                .then();
+    }
+
+    /**
+     * Stores the movie whether it exists or not with a single findAndModify that only matches the movie
+     * if its stored content differs. A movie with the same content is not matched, so the upsert
+     * tries to insert it and fails on the unique movieId index, which means there was nothing to write.
+     *
+     * @return true if the movie was written
+     */
+    public Mono<Boolean> upsertMovie(Movie movie) {
+        log.info("upsertMovie: Trying to upsert Movie Entity for movieId: {}", movie.getMovieId());
+
+        MovieEntity movieEntity = toEntity(movie);
+
+        return mongoOperations.findAndModify(changedMovie(movieEntity), upsertOf(movieEntity), FindAndModifyOptions.options().upsert(true), MovieEntity.class)
+                .thenReturn(true)
+                .onErrorResume(DuplicateKeyException.class, ex -> Mono.just(false))
+                .doOnNext(written -> log.debug("upsertMovie: movieId: {}, written: {}", movie.getMovieId(), written));
+    }
+
+    /**
+     * Upserts all movies with a single unordered bulk write, skipping the unchanged ones like {@link #upsertMovie(Movie)}.
+     * Upserts are idempotent, so when the bulk write fails the whole batch can be retried.
+     */
+    public Mono<Void> upsertMovies(List<Movie> movies) {
+        log.info("upsertMovies: Trying to upsert {} Movie Entities", movies.size());
+
+        List<WriteModel<Document>> upserts = movies.stream()
+                .map(this::toEntity)
+                .map(movieEntity -> new UpdateOneModel<Document>(
+                        changedMovie(movieEntity).getQueryObject(),
+                        upsertOf(movieEntity).getUpdateObject(),
+                        new UpdateOptions().upsert(true)))
+                .collect(Collectors.toList());
+
+        return Mono.from(mongoOperations.getCollection(mongoOperations.getCollectionName(MovieEntity.class))
+                .bulkWrite(upserts, new BulkWriteOptions().ordered(false)))
+                .map(result -> result.getUpserts().size() + result.getModifiedCount())
+                .onErrorResume(MongoBulkWriteException.class, ex -> onlyUnchanged(ex)
+                        ? Mono.just(ex.getWriteResult().getUpserts().size() + ex.getWriteResult().getModifiedCount())
+                        : Mono.error(ex))
+                .onErrorMap(ex -> new PartialBatchException(0, ex))
+                .doOnNext(writtenCount -> log.debug("upsertMovies: wrote {} of {} movies", writtenCount, movies.size()))
+                .then();
+    }
+
+    public Mono<Void> deleteMovies(Collection<Integer> movieIds) {
+        movieIds.stream().filter(movieId -> movieId < 1).findFirst().ifPresent(movieId -> {
+            throw new InvalidInputException("Invalid movieId: " + movieId);
+        });
+
+        return movieRepository.deleteByMovieIdIn(movieIds)
+                .doOnNext(deletedCount -> log.debug("deleteMovies: deleted {} movies for {} movieIds", deletedCount, movieIds.size()))
+                .then();
+    }
+
+    private MovieEntity toEntity(Movie movie) {
+        MovieEntity movieEntity = movieMapper.apiToEntity(movie);
+        movieEntity.setContentHash(movieEntity.computeContentHash());
+        return movieEntity;
+    }
+
+    private Query changedMovie(MovieEntity movieEntity) {
+        return Query.query(where("movieId").is(movieEntity.getMovieId()).and("contentHash").ne(movieEntity.getContentHash()));
+    }
+
+    private Update upsertOf(MovieEntity movieEntity) {
+        return new Update()
+                .set("title", movieEntity.getTitle())
+                .set("genre", movieEntity.getGenre())
+                .set("address", movieEntity.getAddress())
+                .set("contentHash", movieEntity.getContentHash())
+                .inc("version", 1);
+    }
+
+    /**
+     * Duplicate key errors of an upsert mean the movie is stored with the same content.
+     */
+    private boolean onlyUnchanged(MongoBulkWriteException ex) {
+        return ex.getWriteErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY);
+    }
+
+    private int insertedCount(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoBulkWriteException) {
+                return ((MongoBulkWriteException) cause).getWriteResult().getInsertedCount();
+            }
+        }
+        return 0;
     }
 }
@@ -1,49 +1,96 @@
 package com.geborskimateusz.microservices.core.movie.service;
 
 import com.geborskimateusz.api.core.movie.Movie;
-import com.geborskimateusz.api.core.movie.MovieService;
 import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.util.event.EventProcessor;
+import com.geborskimateusz.util.event.EventProcessorFactory;
 import com.geborskimateusz.util.exceptions.EventProcessingException;
+import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+import reactor.core.publisher.Mono;
 
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Processes movie events, see {@link EventProcessor}.
+ */
 @Slf4j
 @EnableBinding(Sink.class)
 public class MessageProcessor {
 
-    private final MovieService movieService;
+    private final BaseMovieService movieService;
+    private final EventProcessor<Movie> eventProcessor;
 
-    public MessageProcessor(MovieService movieService) {
+    public MessageProcessor(BaseMovieService movieService, EventProcessorFactory eventProcessorFactory) {
         this.movieService = movieService;
+        this.eventProcessor = eventProcessorFactory.create("movies", this::processEvent, this::processRun);
     }
 
     @StreamListener(Sink.INPUT)
-    public void process(Event<Integer, Movie> event) {
-        log.info("Process message created at {}...", event.getEventCreatedAt());
+    public void process(
+            @Payload Event<Integer, Movie> event,
+            @Header(name = AmqpHeaders.CHANNEL, required = false) Channel channel,
+            @Header(name = AmqpHeaders.DELIVERY_TAG, required = false) Long deliveryTag) {
+
+        eventProcessor.process(event, channel, deliveryTag);
+    }
+
+    @PreDestroy
+    public void close() {
+        eventProcessor.close();
+    }
 
+    private Mono<Void> processEvent(Event<Integer, Movie> event) {
         switch (event.getEventType()) {
 
             case CREATE:
                 Movie movie = event.getData();
                 log.info("Create movie with ID: {}", movie.getMovieId());
                 log.info(movie.toString());
-                movieService.createMovie(movie);
-                break;
+                return movieService.createMovie(movie).then();
+
+            case UPSERT:
+                Movie upserted = event.getData();
+                log.info("Upsert movie with ID: {}", upserted.getMovieId());
+                return movieService.upsertMovie(upserted).then();
 
             case DELETE:
                 Integer movieId = event.getKey();
                 log.info("Delete movie with ID: {}", movieId);
-                movieService.deleteMovie(movieId);
-                break;
+                return movieService.deleteMovie(movieId);
 
             default:
-                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, UPSERT or DELETE event";
                 log.warn(errorMessage);
-                throw new EventProcessingException(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
         }
+    }
 
-        log.info("Message processing done!");
+    /**
+     * Consecutive CREATEs become one insertMany, consecutive UPSERTs one bulk upsert and consecutive DELETEs one delete by movieId,
+     * so a DELETE followed by a CREATE of the same movie in a batch still ends with the movie stored.
+     * The runs keep the order in which the events reached the batch, which is the order they were received
+     * only with manual acknowledgement, see {@link EventProcessor}.
+     */
+    private Mono<Void> processRun(List<Event<Integer, Movie>> run) {
+        Event.Type eventType = run.get(0).getEventType();
+
+        if (eventType == Event.Type.CREATE) {
+            return movieService.createMovies(run.stream().map(Event::getData).collect(Collectors.toList()));
+        } else if (eventType == Event.Type.UPSERT) {
+            return movieService.upsertMovies(run.stream().map(Event::getData).collect(Collectors.toList()));
+        } else if (eventType == Event.Type.DELETE) {
+            return movieService.deleteMovies(run.stream().map(Event::getKey).collect(Collectors.toList()));
+        } else {
+            return Mono.error(new EventProcessingException("Incorrect event type: " + eventType + ", expected a CREATE, UPSERT or DELETE event"));
+        }
     }
 }
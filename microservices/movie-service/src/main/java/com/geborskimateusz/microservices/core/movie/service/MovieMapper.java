@@ -19,7 +19,8 @@ public interface MovieMapper {
 
     @Mappings({
             @Mapping(target = "id", ignore = true),
-            @Mapping(target = "version", ignore = true)
+            @Mapping(target = "version", ignore = true),
+            @Mapping(target = "contentHash", ignore = true)
     })
     MovieEntity apiToEntity(Movie api);
 }
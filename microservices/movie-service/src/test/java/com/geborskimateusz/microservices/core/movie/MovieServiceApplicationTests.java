@@ -101,6 +101,43 @@ public class MovieServiceApplicationTests {
         getAndVerify(given, HttpStatus.BAD_REQUEST);
     }
 
+    @Test
+    public void getMovies() {
+        sendCreateMovie(1);
+        sendCreateMovie(2);
+        sendCreateMovie(3);
+
+        webTestClient.get()
+                .uri("/movie?ids=1,3,4")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON_UTF8)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[*].address").isNotEmpty();
+    }
+
+    @Test
+    public void upsertMovieWritesOnlyChanges() {
+        Integer given = 1;
+        Movie movie = getMovie(given);
+
+        sendUpsertMovie(movie);
+        sendUpsertMovie(movie);
+
+        MovieEntity stored = movieRepository.findByMovieId(given).block();
+        assertEquals(1, (long) movieRepository.count().block());
+
+        movie.setTitle("Changed title");
+        sendUpsertMovie(movie);
+
+        MovieEntity changed = movieRepository.findByMovieId(given).block();
+        assertEquals(1, (long) movieRepository.count().block());
+        assertEquals("Changed title", changed.getTitle());
+        assertEquals(stored.getVersion() + 1, (int) changed.getVersion());
+    }
+
     @Test
     public void deleteMovie() {
         Integer given = 1;
@@ -115,6 +152,11 @@ public class MovieServiceApplicationTests {
         assertEquals(0, (long) movieRepository.count().block());
     }
 
+    private void sendUpsertMovie(Movie movie) {
+        Event<Integer, Movie> event = new Event<>(Event.Type.UPSERT, movie.getMovieId(), movie);
+        input.send(new GenericMessage<>(event));
+    }
+
     private void sendDeleteMovie(Integer given) {
         Event<Integer, Movie> event = new Event<>(Event.Type.DELETE, given, null);
         input.send(new GenericMessage<>(event));
@@ -7,9 +7,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import reactor.test.StepVerifier;
 
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(SpringExtension.class)
@@ -83,6 +86,35 @@ public class MovieRepositoryTest {
                 .verifyComplete();
     }
 
+    @Test
+    void findByMovieIdIn() {
+        MovieEntity movieEntity = MovieEntity
+                .builder()
+                .movieId(2)
+                .title("Fall of Jedi")
+                .address("125.721.54x24")
+                .genre("Sci-Fi")
+                .build();
+
+        movieRepository.save(movieEntity).block();
+
+        StepVerifier.create(movieRepository.findByMovieIdIn(Arrays.asList(savedMovieEntity.getMovieId(), 2, 3)).count())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void findPageAfterMovieId() {
+        for (int movieId = BASE_MOVIE_ID + 1; movieId <= BASE_MOVIE_ID + 4; movieId++) {
+            movieRepository.save(MovieEntity.builder().movieId(movieId).title("Movie " + movieId).build()).block();
+        }
+
+        StepVerifier.create(movieRepository.findByMovieIdGreaterThanOrderByMovieIdAsc(BASE_MOVIE_ID + 1, PageRequest.of(0, 2)))
+                .expectNextMatches(movie -> movie.getMovieId() == BASE_MOVIE_ID + 2)
+                .expectNextMatches(movie -> movie.getMovieId() == BASE_MOVIE_ID + 3)
+                .verifyComplete();
+    }
+
     @Test
     void shouldPerformOptimisticLocking() {
         String concurrentM1actionData = "Concurrent action data performed on M1";
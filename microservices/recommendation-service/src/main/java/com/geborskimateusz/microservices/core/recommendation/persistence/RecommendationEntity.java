@@ -1,5 +1,6 @@
 package com.geborskimateusz.microservices.core.recommendation.persistence;
 
+import com.geborskimateusz.util.event.ContentHash;
 import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
@@ -27,6 +28,11 @@ public class RecommendationEntity {
     private String content;
     private String serviceAddress;
 
+    /**
+     * See {@link #computeContentHash()}, null for recommendations stored before it was introduced.
+     */
+    private String contentHash;
+
     @Builder
     public RecommendationEntity(Integer movieId, Integer recommendationId, String author, Integer rate, String content, String serviceAddress) {
         this.movieId = movieId;
@@ -36,4 +42,8 @@ public class RecommendationEntity {
         this.content = content;
         this.serviceAddress = serviceAddress;
     }
+
+    public String computeContentHash() {
+        return ContentHash.of(movieId, recommendationId, author, rate, content, serviceAddress);
+    }
 }
@@ -1,9 +1,23 @@
 package com.geborskimateusz.microservices.core.recommendation.persistence;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
 
 public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String> {
     Flux<RecommendationEntity> findByMovieId(int movieId);
+
+    /**
+     * Keyset page over the (movieId, recommendationId) unique index, type is either {@link RecommendationEntity}
+     * or {@link RecommendationSummaryView}.
+     */
+    <T> Flux<T> findByMovieIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(int movieId, int afterRecommendationId, Pageable pageable, Class<T> type);
+
+    Flux<RecommendationEntity> findByMovieIdIn(Collection<Integer> movieIds);
+
+    Mono<Long> deleteByMovieIdIn(Collection<Integer> movieIds);
 }
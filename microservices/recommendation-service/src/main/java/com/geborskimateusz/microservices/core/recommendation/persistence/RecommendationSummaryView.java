@@ -0,0 +1,15 @@
+package com.geborskimateusz.microservices.core.recommendation.persistence;
+
+/**
+ * Projection of a {@link RecommendationEntity} without its content, only these fields are read.
+ */
+public interface RecommendationSummaryView {
+
+    Integer getMovieId();
+
+    Integer getRecommendationId();
+
+    String getAuthor();
+
+    Integer getRate();
+}
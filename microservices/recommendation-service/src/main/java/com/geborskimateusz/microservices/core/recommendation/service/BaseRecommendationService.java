@@ -4,25 +4,56 @@ import com.geborskimateusz.api.core.recommendation.Recommendation;
 import com.geborskimateusz.api.core.recommendation.RecommendationService;
 import com.geborskimateusz.microservices.core.recommendation.persistence.RecommendationEntity;
 import com.geborskimateusz.microservices.core.recommendation.persistence.RecommendationRepository;
+import com.geborskimateusz.microservices.core.recommendation.persistence.RecommendationSummaryView;
 import com.geborskimateusz.util.exceptions.InvalidInputException;
+import com.geborskimateusz.util.exceptions.PartialBatchException;
 import com.geborskimateusz.util.http.ServiceUtil;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Slf4j
 @RestController
 public class BaseRecommendationService implements RecommendationService {
 
+    private static final int DUPLICATE_KEY = 11000;
+
     private final ServiceUtil serviceUtil;
     private RecommendationRepository recommendationRepository;
+    private final ReactiveMongoOperations mongoOperations;
 
     private final RecommendationMapper mapper = RecommendationMapper.INSTANCE;
+    private final int maxPageLimit;
 
-    public BaseRecommendationService(ServiceUtil serviceUtil, RecommendationRepository recommendationRepository) {
+    public BaseRecommendationService(
+            ServiceUtil serviceUtil,
+            RecommendationRepository recommendationRepository,
+            ReactiveMongoOperations mongoOperations,
+            @Value("${app.page.max-limit:100}") int maxPageLimit) {
         this.serviceUtil = serviceUtil;
         this.recommendationRepository = recommendationRepository;
+        this.mongoOperations = mongoOperations;
+        this.maxPageLimit = maxPageLimit;
     }
 
     @Override
@@ -40,24 +71,171 @@ public class BaseRecommendationService implements RecommendationService {
     }
 
     @Override
-    public Recommendation createRecommendation(Recommendation recommendation) {
+    public Flux<Recommendation> getRecommendations(int movieId, int afterRecommendationId, int limit, boolean includeContent) {
+
+        if (movieId < 1) throw new InvalidInputException("Invalid movieId: " + movieId);
+        if (afterRecommendationId < 0) throw new InvalidInputException("Invalid afterRecommendationId: " + afterRecommendationId);
+        if (limit < 1 || limit > maxPageLimit) throw new InvalidInputException("Invalid limit: " + limit + ", expected 1 to " + maxPageLimit);
+
+        PageRequest page = PageRequest.of(0, limit);
+
+        Flux<Recommendation> recommendations = includeContent
+                ? recommendationRepository.findByMovieIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(movieId, afterRecommendationId, page, RecommendationEntity.class)
+                        .map(mapper::entityToApi)
+                : recommendationRepository.findByMovieIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(movieId, afterRecommendationId, page, RecommendationSummaryView.class)
+                        .map(mapper::summaryViewToApi);
+
+        return recommendations
+                .log()
+                .map(e -> {
+                    e.setServiceAddress(serviceUtil.getServiceAddress());
+                    return e;
+                });
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(List<Integer> movieIds) {
+
+        if (movieIds.size() > maxPageLimit) throw new InvalidInputException("Invalid number of movieIds: " + movieIds.size() + ", expected at most " + maxPageLimit);
+
+        movieIds.stream().filter(movieId -> movieId < 1).findFirst().ifPresent(movieId -> {
+            throw new InvalidInputException("Invalid movieId: " + movieId);
+        });
+
+        return recommendationRepository.findByMovieIdIn(movieIds)
+                .log()
+                .map(mapper::entityToApi)
+                .map(e -> {
+                    e.setServiceAddress(serviceUtil.getServiceAddress());
+                    return e;
+                });
+    }
+
+    @Override
+    public Mono<Recommendation> createRecommendation(Recommendation recommendation) {
         log.debug("createRecommendation: Trying to create recommendation entity: {}/{}", recommendation.getMovieId(), recommendation.getRecommendationId());
 
-        RecommendationEntity recommendationEntity = mapper.apiToEntity(recommendation);
+        RecommendationEntity recommendationEntity = toEntity(recommendation);
         return recommendationRepository.save(recommendationEntity)
                 .onErrorMap(DuplicateKeyException.class,
                         ex -> new DuplicateKeyException("Non unique id for recommendation " + recommendation.getRecommendationId()))
                 .log()
-                .map(mapper::entityToApi)
-                .block();
-
+                .map(mapper::entityToApi);
     }
 
     @Override
-    public void deleteRecommendations(int movieId) {
+    public Mono<Void> deleteRecommendations(int movieId) {
         log.debug("deleteRecommendations: Trying to delete recommendation entity for movie " + movieId);
 
         if (movieId < 1) throw new InvalidInputException("Invalid movieId: " + movieId);
-        recommendationRepository.deleteAll(recommendationRepository.findByMovieId(movieId)).block();
+        return recommendationRepository.deleteAll(recommendationRepository.findByMovieId(movieId));
+    }
+
+    /**
+     * Inserts all recommendations with a single insertMany. The insert is ordered, so when it fails
+     * the recommendations before the failing one are stored, which the thrown {@link PartialBatchException} reports.
+     */
+    public Mono<Void> createRecommendations(List<Recommendation> recommendations) {
+        log.debug("createRecommendations: Trying to create {} recommendation entities", recommendations.size());
+
+        List<RecommendationEntity> recommendationEntities = recommendations.stream()
+                .map(this::toEntity)
+                .collect(Collectors.toList());
+
+        return recommendationRepository.saveAll(recommendationEntities)
+                .onErrorMap(ex -> new PartialBatchException(insertedCount(ex), ex))
+                .then();
+    }
+
+    /**
+     * Stores the recommendation whether it exists or not with a single findAndModify that only matches it
+     * if its stored content differs. A recommendation with the same content is not matched, so the upsert
+     * tries to insert it and fails on the mov-rec-id unique index, which means there was nothing to write.
+     *
+     * @return true if the recommendation was written
+     */
+    public Mono<Boolean> upsertRecommendation(Recommendation recommendation) {
+        log.debug("upsertRecommendation: Trying to upsert recommendation entity: {}/{}", recommendation.getMovieId(), recommendation.getRecommendationId());
+
+        RecommendationEntity recommendationEntity = toEntity(recommendation);
+
+        return mongoOperations.findAndModify(changedRecommendation(recommendationEntity), upsertOf(recommendationEntity),
+                FindAndModifyOptions.options().upsert(true), RecommendationEntity.class)
+                .thenReturn(true)
+                .onErrorResume(DuplicateKeyException.class, ex -> Mono.just(false))
+                .doOnNext(written -> log.debug("upsertRecommendation: {}/{}, written: {}", recommendation.getMovieId(), recommendation.getRecommendationId(), written));
+    }
+
+    /**
+     * Upserts all recommendations with a single unordered bulk write, skipping the unchanged ones like
+     * {@link #upsertRecommendation(Recommendation)}. Upserts are idempotent, so when the bulk write fails the whole batch can be retried.
+     */
+    public Mono<Void> upsertRecommendations(List<Recommendation> recommendations) {
+        log.debug("upsertRecommendations: Trying to upsert {} recommendation entities", recommendations.size());
+
+        List<WriteModel<Document>> upserts = recommendations.stream()
+                .map(this::toEntity)
+                .map(recommendationEntity -> new UpdateOneModel<Document>(
+                        changedRecommendation(recommendationEntity).getQueryObject(),
+                        upsertOf(recommendationEntity).getUpdateObject(),
+                        new UpdateOptions().upsert(true)))
+                .collect(Collectors.toList());
+
+        return Mono.from(mongoOperations.getCollection(mongoOperations.getCollectionName(RecommendationEntity.class))
+                .bulkWrite(upserts, new BulkWriteOptions().ordered(false)))
+                .map(result -> result.getUpserts().size() + result.getModifiedCount())
+                .onErrorResume(MongoBulkWriteException.class, ex -> onlyUnchanged(ex)
+                        ? Mono.just(ex.getWriteResult().getUpserts().size() + ex.getWriteResult().getModifiedCount())
+                        : Mono.error(ex))
+                .onErrorMap(ex -> new PartialBatchException(0, ex))
+                .doOnNext(writtenCount -> log.debug("upsertRecommendations: wrote {} of {} recommendations", writtenCount, recommendations.size()))
+                .then();
+    }
+
+    public Mono<Void> deleteRecommendations(Collection<Integer> movieIds) {
+        log.debug("deleteRecommendations: Trying to delete recommendation entities for {} movies", movieIds.size());
+
+        movieIds.stream().filter(movieId -> movieId < 1).findFirst().ifPresent(movieId -> {
+            throw new InvalidInputException("Invalid movieId: " + movieId);
+        });
+        return recommendationRepository.deleteByMovieIdIn(movieIds).then();
+    }
+
+    private RecommendationEntity toEntity(Recommendation recommendation) {
+        RecommendationEntity recommendationEntity = mapper.apiToEntity(recommendation);
+        recommendationEntity.setContentHash(recommendationEntity.computeContentHash());
+        return recommendationEntity;
+    }
+
+    private Query changedRecommendation(RecommendationEntity recommendationEntity) {
+        return Query.query(where("movieId").is(recommendationEntity.getMovieId())
+                .and("recommendationId").is(recommendationEntity.getRecommendationId())
+                .and("contentHash").ne(recommendationEntity.getContentHash()));
+    }
+
+    private Update upsertOf(RecommendationEntity recommendationEntity) {
+        return new Update()
+                .set("author", recommendationEntity.getAuthor())
+                .set("rate", recommendationEntity.getRate())
+                .set("content", recommendationEntity.getContent())
+                .set("serviceAddress", recommendationEntity.getServiceAddress())
+                .set("contentHash", recommendationEntity.getContentHash())
+                .inc("version", 1);
+    }
+
+    /**
+     * Duplicate key errors of an upsert mean the recommendation is stored with the same content.
+     */
+    private boolean onlyUnchanged(MongoBulkWriteException ex) {
+        return ex.getWriteErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY);
+    }
+
+    private int insertedCount(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoBulkWriteException) {
+                return ((MongoBulkWriteException) cause).getWriteResult().getInsertedCount();
+            }
+        }
+        return 0;
     }
 }
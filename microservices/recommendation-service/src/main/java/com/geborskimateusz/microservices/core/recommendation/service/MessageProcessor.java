@@ -1,52 +1,96 @@
 package com.geborskimateusz.microservices.core.recommendation.service;
 
-
-import com.geborskimateusz.api.core.movie.Movie;
-import com.geborskimateusz.api.core.movie.MovieService;
 import com.geborskimateusz.api.core.recommendation.Recommendation;
-import com.geborskimateusz.api.core.recommendation.RecommendationService;
 import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.util.event.EventProcessor;
+import com.geborskimateusz.util.event.EventProcessorFactory;
 import com.geborskimateusz.util.exceptions.EventProcessingException;
+import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.stream.Collectors;
 
+/**
+ * Processes recommendation events, see {@link EventProcessor}.
+ */
 @Slf4j
 @EnableBinding(Sink.class)
 public class MessageProcessor {
 
-    private final RecommendationService recommendationService;
+    private final BaseRecommendationService recommendationService;
+    private final EventProcessor<Recommendation> eventProcessor;
 
-    public MessageProcessor(RecommendationService recommendationService) {
+    public MessageProcessor(BaseRecommendationService recommendationService, EventProcessorFactory eventProcessorFactory) {
         this.recommendationService = recommendationService;
+        this.eventProcessor = eventProcessorFactory.create("recommendations", this::processEvent, this::processRun);
     }
 
     @StreamListener(Sink.INPUT)
-    public void process(Event<Integer, Recommendation> event) {
-        log.info("Process message created at {}...", event.getEventCreatedAt());
+    public void process(
+            @Payload Event<Integer, Recommendation> event,
+            @Header(name = AmqpHeaders.CHANNEL, required = false) Channel channel,
+            @Header(name = AmqpHeaders.DELIVERY_TAG, required = false) Long deliveryTag) {
+
+        eventProcessor.process(event, channel, deliveryTag);
+    }
+
+    @PreDestroy
+    public void close() {
+        eventProcessor.close();
+    }
 
+    private Mono<Void> processEvent(Event<Integer, Recommendation> event) {
         switch (event.getEventType()) {
 
             case CREATE:
                 Recommendation recommendation = event.getData();
                 log.info("Create recommendation with ID: {}", recommendation.getRecommendationId());
                 log.info(recommendation.toString());
-                recommendationService.createRecommendation(recommendation);
-                break;
+                return recommendationService.createRecommendation(recommendation).then();
+
+            case UPSERT:
+                Recommendation upserted = event.getData();
+                log.info("Upsert recommendation with ID: {}/{}", upserted.getMovieId(), upserted.getRecommendationId());
+                return recommendationService.upsertRecommendation(upserted).then();
 
             case DELETE:
                 Integer movieId = event.getKey();
                 log.info("Delete recommendations for movie with ID: {}", movieId);
-                recommendationService.deleteRecommendations(movieId);
-                break;
+                return recommendationService.deleteRecommendations(movieId);
 
             default:
-                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, UPSERT or DELETE event";
                 log.warn(errorMessage);
-                throw new EventProcessingException(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
         }
+    }
 
-        log.info("Message processing done!");
+    /**
+     * Consecutive CREATEs become one insertMany, consecutive UPSERTs one bulk upsert and consecutive DELETEs one delete by movieId,
+     * so a DELETE followed by a CREATE for the same movie in a batch still ends with the new recommendation stored.
+     * The runs keep the order in which the events reached the batch, which is the order they were received
+     * only with manual acknowledgement, see {@link EventProcessor}.
+     */
+    private Mono<Void> processRun(List<Event<Integer, Recommendation>> run) {
+        Event.Type eventType = run.get(0).getEventType();
+
+        if (eventType == Event.Type.CREATE) {
+            return recommendationService.createRecommendations(run.stream().map(Event::getData).collect(Collectors.toList()));
+        } else if (eventType == Event.Type.UPSERT) {
+            return recommendationService.upsertRecommendations(run.stream().map(Event::getData).collect(Collectors.toList()));
+        } else if (eventType == Event.Type.DELETE) {
+            return recommendationService.deleteRecommendations(run.stream().map(Event::getKey).collect(Collectors.toList()));
+        } else {
+            return Mono.error(new EventProcessingException("Incorrect event type: " + eventType + ", expected a CREATE, UPSERT or DELETE event"));
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.geborskimateusz.microservices.core.recommendation.service;
 
 import com.geborskimateusz.api.core.recommendation.Recommendation;
 import com.geborskimateusz.microservices.core.recommendation.persistence.RecommendationEntity;
+import com.geborskimateusz.microservices.core.recommendation.persistence.RecommendationSummaryView;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
@@ -21,10 +22,17 @@ public interface RecommendationMapper {
     })
     Recommendation entityToApi(RecommendationEntity entity);
 
+    @Mappings({
+        @Mapping(target = "content", ignore = true),
+        @Mapping(target = "serviceAddress", ignore = true)
+    })
+    Recommendation summaryViewToApi(RecommendationSummaryView view);
+
     @Mappings({
         @Mapping(target = "rate", source="api.rate"),
         @Mapping(target = "id", ignore = true),
-        @Mapping(target = "version", ignore = true)
+        @Mapping(target = "version", ignore = true),
+        @Mapping(target = "contentHash", ignore = true)
     })
     RecommendationEntity apiToEntity(Recommendation api);
 
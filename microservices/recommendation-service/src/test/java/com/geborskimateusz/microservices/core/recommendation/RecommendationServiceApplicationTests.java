@@ -2,7 +2,9 @@ package com.geborskimateusz.microservices.core.recommendation;
 
 import com.geborskimateusz.api.core.recommendation.Recommendation;
 import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.core.recommendation.persistence.RecommendationEntity;
 import com.geborskimateusz.microservices.core.recommendation.persistence.RecommendationRepository;
+import com.geborskimateusz.microservices.core.recommendation.service.BaseRecommendationService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,6 +21,8 @@ import org.springframework.messaging.support.GenericMessage;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.util.Arrays;
+
 import static org.assertj.core.api.Java6Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -36,6 +40,9 @@ public class RecommendationServiceApplicationTests {
     @Autowired
     RecommendationRepository recommendationRepository;
 
+    @Autowired
+    BaseRecommendationService recommendationService;
+
     @Autowired
     Sink sink;
 
@@ -65,6 +72,23 @@ public class RecommendationServiceApplicationTests {
                 .jsonPath("$[0].movieId").isEqualTo(movieId);
     }
 
+    @Test
+    public void getRecommendationsByMovieIds() {
+        sendCreateRecommendationEvent(1, 2);
+        sendCreateRecommendationEvent(1, 3);
+        sendCreateRecommendationEvent(2, 4);
+        sendCreateRecommendationEvent(3, 5);
+
+        webTestClient.get()
+                .uri("/recommendation?ids=1,2")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON_UTF8)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3);
+    }
+
     @Test
     public void getRecommendationsThrowsInvalidInputException() {
         Integer movieId = 0;
@@ -136,6 +160,46 @@ public class RecommendationServiceApplicationTests {
         assertEquals(0, recommendationRepository.findByMovieId(movieId).collectList().block().size());
     }
 
+    @Test
+    public void upsertRecommendationWritesOnlyChanges() {
+        Integer movieId = 1;
+        Recommendation recommendation = getRecommendation(movieId, 2, "Content 3");
+
+        sendUpsertRecommendationEvent(recommendation);
+        sendUpsertRecommendationEvent(recommendation);
+
+        RecommendationEntity stored = recommendationRepository.findByMovieId(movieId).blockFirst();
+        assertEquals(1, (long) recommendationRepository.count().block());
+
+        sendUpsertRecommendationEvent(getRecommendation(movieId, 2, "Changed content"));
+
+        RecommendationEntity changed = recommendationRepository.findByMovieId(movieId).blockFirst();
+        assertEquals(1, (long) recommendationRepository.count().block());
+        assertEquals("Changed content", changed.getContent());
+        assertEquals(stored.getVersion() + 1, (int) changed.getVersion());
+    }
+
+    @Test
+    public void upsertRecommendationsWritesOnlyChanges() {
+        Integer movieId = 1;
+        Recommendation first = getRecommendation(movieId, 2, "Content 3");
+        Recommendation second = getRecommendation(movieId, 3, "Content 3");
+
+        recommendationService.upsertRecommendations(Arrays.asList(first, second)).block();
+        recommendationService.upsertRecommendations(Arrays.asList(first, second)).block();
+
+        RecommendationEntity stored = recommendationRepository.findByMovieId(movieId)
+                .filter(entity -> entity.getRecommendationId() == 3).blockFirst();
+        assertEquals(2, (long) recommendationRepository.count().block());
+
+        recommendationService.upsertRecommendations(Arrays.asList(first, getRecommendation(movieId, 3, "Changed content"))).block();
+
+        RecommendationEntity changed = recommendationRepository.findByMovieId(movieId)
+                .filter(entity -> entity.getRecommendationId() == 3).blockFirst();
+        assertEquals(2, (long) recommendationRepository.count().block());
+        assertEquals("Changed content", changed.getContent());
+        assertEquals(stored.getVersion() + 1, (int) changed.getVersion());
+    }
 
     private WebTestClient.BodyContentSpec getAndVerify(Integer movieId, HttpStatus httpStatus) {
         return getAndVerify(movieId.toString(), httpStatus);
@@ -157,6 +221,15 @@ public class RecommendationServiceApplicationTests {
         input.send(new GenericMessage<>(event));
     }
 
+    private Recommendation getRecommendation(int movieId, int recommendationId, String content) {
+        return Recommendation.builder().movieId(movieId).recommendationId(recommendationId).author("Author 3").rate(3).content(content).build();
+    }
+
+    private void sendUpsertRecommendationEvent(Recommendation recommendation) {
+        Event<Integer, Recommendation> event = new Event<>(Event.Type.UPSERT, recommendation.getMovieId(), recommendation);
+        input.send(new GenericMessage<>(event));
+    }
+
     private void deleteAndVerify(int movieId) {
         Event event = new Event(Event.Type.DELETE, movieId, null);
         input.send(new GenericMessage<>(event));
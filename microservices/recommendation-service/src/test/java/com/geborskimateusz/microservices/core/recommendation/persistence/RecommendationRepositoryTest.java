@@ -8,9 +8,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import reactor.test.StepVerifier;
 
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -74,6 +76,34 @@ public class RecommendationRepositoryTest {
         assertRecommendation(savedRecommendationEntity, recommendationEntities.get(0));
     }
 
+    @Test
+    void findPageByMovieIdAfterRecommendationId() {
+        for (int recommendationId = BASE_RECOMMENDATION_ID + 1; recommendationId <= BASE_RECOMMENDATION_ID + 4; recommendationId++) {
+            recommendationRepository.save(RecommendationEntity.builder()
+                    .recommendationId(recommendationId)
+                    .movieId(BASE_MOVIE_ID)
+                    .author("Author " + recommendationId)
+                    .content("Fake recommendation")
+                    .build()).block();
+        }
+
+        StepVerifier.create(recommendationRepository.findByMovieIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(
+                BASE_MOVIE_ID, BASE_RECOMMENDATION_ID + 1, PageRequest.of(0, 2), RecommendationSummaryView.class))
+                .expectNextMatches(view -> view.getRecommendationId() == BASE_RECOMMENDATION_ID + 2 && view.getAuthor().equals("Author " + view.getRecommendationId()))
+                .expectNextMatches(view -> view.getRecommendationId() == BASE_RECOMMENDATION_ID + 3)
+                .verifyComplete();
+    }
+
+    @Test
+    void findByMovieIdIn() {
+        List<RecommendationEntity> recommendationEntities =
+                recommendationRepository.findByMovieIdIn(Arrays.asList(savedRecommendationEntity.getMovieId(), BASE_MOVIE_ID + 1))
+                        .collectList().block();
+
+        assertThat(recommendationEntities, hasSize(1));
+        assertRecommendation(savedRecommendationEntity, recommendationEntities.get(0));
+    }
+
     @Test
     void update() {
         String newContent = "Updated Content";
@@ -0,0 +1,72 @@
+package com.geborskimateusz.microservices.core.review.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed size pool with a bounded queue that rejects work once the queue is full.
+ * <p>
+ * Besides the executor.* gauges of {@link ExecutorServiceMetrics} it records how long each
+ * task waited in the queue (executor.idle) and how long it ran (executor), the same
+ * meter names later Micrometer versions use for timed executors.
+ */
+class MeteredThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final Timer idleTimer;
+    private final Timer executionTimer;
+
+    MeteredThreadPoolExecutor(String name, int poolSize, int queueCapacity, MeterRegistry meterRegistry) {
+        super(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                namedThreadFactory(name),
+                new AbortPolicy());
+
+        Tags tags = Tags.of("name", name);
+
+        this.idleTimer = Timer.builder("executor.idle")
+                .description("Time tasks spent waiting in the queue")
+                .tags(tags)
+                .register(meterRegistry);
+
+        this.executionTimer = Timer.builder("executor")
+                .description("Time tasks spent executing")
+                .tags(tags)
+                .register(meterRegistry);
+
+        Gauge.builder("executor.queue.remaining", getQueue(), queue -> queue.remainingCapacity())
+                .description("Number of additional tasks the queue can take before rejecting")
+                .tags(tags)
+                .register(meterRegistry);
+
+        new ExecutorServiceMetrics(this, name, tags).bindTo(meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long queuedAt = System.nanoTime();
+
+        super.execute(() -> {
+            idleTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+            executionTimer.record(command);
+        });
+    }
+
+    private static ThreadFactory namedThreadFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,29 +1,44 @@
 package com.geborskimateusz.microservices.core.review.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
-import java.util.concurrent.Executors;
-
 @Slf4j
 @Configuration
 public class SchedulerConfig {
 
+    public static final String JDBC_SCHEDULER_NAME = "jdbcScheduler";
+
     private final Integer connectionPoolSize;
+    private final Integer queueCapacity;
 
-    public SchedulerConfig(@Value("${spring.datasource.maximum-pool-size:10}") Integer connectionPoolSize) {
+    public SchedulerConfig(
+            @Value("${spring.datasource.maximum-pool-size:10}") Integer connectionPoolSize,
+            @Value("${app.jdbc-scheduler.queue-capacity:100}") Integer queueCapacity) {
         this.connectionPoolSize = connectionPoolSize;
+        this.queueCapacity = queueCapacity;
     }
 
 
-    @Bean
-    public Scheduler jdbcScheduler() {
-        log.info("Creates a jdbcScheduler with connectionPoolSize = " + connectionPoolSize);
-        return Schedulers.fromExecutor(Executors.newFixedThreadPool(connectionPoolSize));
+    /**
+     * The meter registry is optional so that slices without actuator metrics, like @DataJpaTest, still start.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler(ObjectProvider<MeterRegistry> meterRegistry) {
+        return createJdbcScheduler(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    Scheduler createJdbcScheduler(MeterRegistry meterRegistry) {
+        log.info("Creates a jdbcScheduler with connectionPoolSize = {}, queueCapacity = {}", connectionPoolSize, queueCapacity);
+        return Schedulers.fromExecutorService(
+                new MeteredThreadPoolExecutor(JDBC_SCHEDULER_NAME, connectionPoolSize, queueCapacity, meterRegistry));
     }
 
 }
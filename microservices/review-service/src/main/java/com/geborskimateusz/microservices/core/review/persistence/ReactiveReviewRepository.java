@@ -0,0 +1,125 @@
+package com.geborskimateusz.microservices.core.review.persistence;
+
+import com.geborskimateusz.util.exceptions.ServiceUnavailableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reactive view of {@link ReviewRepository}. Every JDBC call is deferred until subscription
+ * and runs on the jdbcScheduler, never on the caller's (event loop) thread.
+ * When the scheduler's queue is full the call fails fast with a {@link ServiceUnavailableException}.
+ */
+@Component
+public class ReactiveReviewRepository {
+
+    private final ReviewRepository reviewRepository;
+    private final Scheduler jdbcScheduler;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public ReactiveReviewRepository(ReviewRepository reviewRepository, Scheduler jdbcScheduler, PlatformTransactionManager transactionManager) {
+        this.reviewRepository = reviewRepository;
+        this.jdbcScheduler = jdbcScheduler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public Flux<ReviewEntity> findByMovieId(int movieId) {
+        return onJdbcScheduler(() -> reviewRepository.findByMovieId(movieId))
+                .flatMapIterable(reviewEntities -> reviewEntities);
+    }
+
+    public <T> Flux<T> findPageByMovieId(int movieId, int afterReviewId, int limit, Class<T> type) {
+        return onJdbcScheduler(() -> reviewRepository.findByMovieIdAndReviewIdGreaterThanOrderByReviewIdAsc(movieId, afterReviewId, PageRequest.of(0, limit), type))
+                .flatMapIterable(page -> page);
+    }
+
+    public Flux<ReviewEntity> findByMovieIdIn(Collection<Integer> movieIds) {
+        return onJdbcScheduler(() -> reviewRepository.findByMovieIdIn(movieIds))
+                .flatMapIterable(reviewEntities -> reviewEntities);
+    }
+
+    public Mono<ReviewEntity> save(ReviewEntity reviewEntity) {
+        return onJdbcScheduler(() -> reviewRepository.save(reviewEntity));
+    }
+
+    /**
+     * Saves all entities in one transaction, so either all of them are stored or none.
+     */
+    public Flux<ReviewEntity> saveAll(Collection<ReviewEntity> reviewEntities) {
+        return onJdbcScheduler(() -> reviewRepository.saveAll(reviewEntities))
+                .flatMapIterable(savedEntities -> savedEntities);
+    }
+
+    /**
+     * Inserts the new entities and merges the changed ones into the stored entities in one transaction.
+     * Entities whose contentHash matches the stored one are not written at all.
+     *
+     * @return the number of entities written
+     */
+    public Mono<Integer> upsertAll(Collection<ReviewEntity> reviewEntities) {
+        return onJdbcScheduler(() -> transactionTemplate.execute(status -> {
+            Map<String, ReviewEntity> stored = reviewRepository
+                    .findByMovieIdIn(reviewEntities.stream().map(ReviewEntity::getMovieId).collect(Collectors.toSet()))
+                    .stream()
+                    .collect(Collectors.toMap(ReactiveReviewRepository::naturalKey, Function.identity()));
+
+            int writtenCount = 0;
+            for (ReviewEntity reviewEntity : reviewEntities) {
+                ReviewEntity storedEntity = stored.get(naturalKey(reviewEntity));
+
+                if (storedEntity == null) {
+                    stored.put(naturalKey(reviewEntity), reviewRepository.save(reviewEntity));
+                } else if (!reviewEntity.getContentHash().equals(storedEntity.getContentHash())) {
+                    // Managed by the transaction's persistence context, flushed on commit
+                    storedEntity.setAuthor(reviewEntity.getAuthor());
+                    storedEntity.setSubject(reviewEntity.getSubject());
+                    storedEntity.setContent(reviewEntity.getContent());
+                    storedEntity.setServiceAddress(reviewEntity.getServiceAddress());
+                    storedEntity.setContentHash(reviewEntity.getContentHash());
+                } else {
+                    continue;
+                }
+                writtenCount++;
+            }
+            return writtenCount;
+        }));
+    }
+
+    public Mono<Void> deleteByMovieId(int movieId) {
+        return onJdbcScheduler(() -> {
+            reviewRepository.deleteByMovieId(movieId);
+            return movieId;
+        }).then();
+    }
+
+    public Mono<Void> deleteByMovieIdIn(Collection<Integer> movieIds) {
+        return onJdbcScheduler(() -> {
+            reviewRepository.deleteByMovieIdIn(movieIds);
+            return movieIds;
+        }).then();
+    }
+
+    private static String naturalKey(ReviewEntity reviewEntity) {
+        return reviewEntity.getMovieId() + "/" + reviewEntity.getReviewId();
+    }
+
+    private <T> Mono<T> onJdbcScheduler(Callable<T> jdbcCall) {
+        return Mono.fromCallable(jdbcCall)
+                .subscribeOn(jdbcScheduler)
+                .onErrorMap(RejectedExecutionException.class,
+                        ex -> new ServiceUnavailableException("Too many concurrent database requests, try again later", ex));
+    }
+}
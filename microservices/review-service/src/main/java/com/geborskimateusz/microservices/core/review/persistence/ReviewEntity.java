@@ -1,5 +1,6 @@
 package com.geborskimateusz.microservices.core.review.persistence;
 
+import com.geborskimateusz.util.event.ContentHash;
 import lombok.*;
 
 import javax.persistence.*;
@@ -27,4 +28,12 @@ public class ReviewEntity {
     private String content;
     private String serviceAddress;
 
+    /**
+     * See {@link #computeContentHash()}, null for reviews stored before it was introduced.
+     */
+    private String contentHash;
+
+    public String computeContentHash() {
+        return ContentHash.of(movieId, reviewId, author, subject, content, serviceAddress);
+    }
 }
@@ -1,12 +1,29 @@
 package com.geborskimateusz.microservices.core.review.persistence;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
 
     @Transactional(readOnly = true)
     List<ReviewEntity> findByMovieId(int movieId);
+
+    /**
+     * Keyset page over the (movieId, reviewId) unique index, type is either {@link ReviewEntity} or {@link ReviewSummaryView}.
+     */
+    @Transactional(readOnly = true)
+    <T> List<T> findByMovieIdAndReviewIdGreaterThanOrderByReviewIdAsc(int movieId, int afterReviewId, Pageable pageable, Class<T> type);
+
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByMovieIdIn(Collection<Integer> movieIds);
+
+    @Transactional
+    void deleteByMovieId(int movieId);
+
+    @Transactional
+    void deleteByMovieIdIn(Collection<Integer> movieIds);
 }
@@ -0,0 +1,15 @@
+package com.geborskimateusz.microservices.core.review.persistence;
+
+/**
+ * Projection of a {@link ReviewEntity} without its content, only these columns are selected.
+ */
+public interface ReviewSummaryView {
+
+    Integer getMovieId();
+
+    Integer getReviewId();
+
+    String getAuthor();
+
+    String getSubject();
+}
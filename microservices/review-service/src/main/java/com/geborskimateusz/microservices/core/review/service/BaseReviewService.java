@@ -2,77 +2,155 @@ package com.geborskimateusz.microservices.core.review.service;
 
 import com.geborskimateusz.api.core.review.Review;
 import com.geborskimateusz.api.core.review.ReviewService;
+import com.geborskimateusz.microservices.core.review.persistence.ReactiveReviewRepository;
 import com.geborskimateusz.microservices.core.review.persistence.ReviewEntity;
-import com.geborskimateusz.microservices.core.review.persistence.ReviewRepository;
+import com.geborskimateusz.microservices.core.review.persistence.ReviewSummaryView;
 import com.geborskimateusz.util.exceptions.InvalidInputException;
 import com.geborskimateusz.util.http.ServiceUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Scheduler;
 
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
 public class BaseReviewService implements ReviewService {
 
     private final ServiceUtil serviceUtil;
-    private final ReviewRepository reviewRepository;
+    private final ReactiveReviewRepository reviewRepository;
     private final ReviewMapper mapper = ReviewMapper.INSTANCE;
-    private final Scheduler scheduler;
+    private final int maxPageLimit;
 
     @Autowired
-    public BaseReviewService(ServiceUtil seriviceUtil, ReviewRepository reviewRepository, Scheduler scheduler) {
+    public BaseReviewService(
+            ServiceUtil seriviceUtil,
+            ReactiveReviewRepository reviewRepository,
+            @Value("${app.page.max-limit:100}") int maxPageLimit) {
         this.serviceUtil = seriviceUtil;
         this.reviewRepository = reviewRepository;
-        this.scheduler = scheduler;
+        this.maxPageLimit = maxPageLimit;
     }
 
     @Override
     public Flux<Review> getReviews(int movieId) {
         if (movieId < 1) throw new InvalidInputException("Invalid productId: " + movieId);
 
-        List<Review> reviews = getByMovieId(movieId);
+        return reviewRepository.findByMovieId(movieId)
+                .map(this::toApi)
+                .log();
+    }
 
-        return getAsyncFlux(reviews).log();
+    @Override
+    public Flux<Review> getReviews(int movieId, int afterReviewId, int limit, boolean includeContent) {
+        if (movieId < 1) throw new InvalidInputException("Invalid movieId: " + movieId);
+        if (afterReviewId < 0) throw new InvalidInputException("Invalid afterReviewId: " + afterReviewId);
+        if (limit < 1 || limit > maxPageLimit) throw new InvalidInputException("Invalid limit: " + limit + ", expected 1 to " + maxPageLimit);
+
+        Flux<Review> reviews = includeContent
+                ? reviewRepository.findPageByMovieId(movieId, afterReviewId, limit, ReviewEntity.class).map(mapper::entityToApi)
+                : reviewRepository.findPageByMovieId(movieId, afterReviewId, limit, ReviewSummaryView.class).map(mapper::summaryViewToApi);
+
+        return reviews
+                .map(this::withServiceAddress)
+                .log();
     }
 
     @Override
-    public Review createReview(Review review) {
-        log.info("createReview: Trying to create Review entity, passed argument: {}",review.toString());
+    public Flux<Review> getReviews(List<Integer> movieIds) {
+        if (movieIds.size() > maxPageLimit) throw new InvalidInputException("Invalid number of movieIds: " + movieIds.size() + ", expected at most " + maxPageLimit);
 
-        try {
-            ReviewEntity reviewEntity = mapper.apiToEntity(review);
-            ReviewEntity saved = reviewRepository.save(reviewEntity);
+        movieIds.stream().filter(movieId -> movieId < 1).findFirst().ifPresent(movieId -> {
+            throw new InvalidInputException("Invalid movieId: " + movieId);
+        });
 
-            log.debug("createReview: created a review entity: {}/{}", saved.getMovieId(), saved.getReviewId());
+        return reviewRepository.findByMovieIdIn(movieIds)
+                .map(this::toApi)
+                .log();
+    }
 
-            return mapper.entityToApi(saved);
+    @Override
+    public Mono<Review> createReview(Review review) {
+        log.info("createReview: Trying to create Review entity, passed argument: {}",review.toString());
 
-        } catch (DataIntegrityViolationException e) {
-            throw new InvalidInputException("Duplicate key, Movie Id: " + review.getMovieId() + ", Review Id:" + review.getReviewId());
-        }
+        ReviewEntity reviewEntity = toEntity(review);
+
+        return reviewRepository.save(reviewEntity)
+                .onErrorMap(DataIntegrityViolationException.class,
+                        ex -> new InvalidInputException("Duplicate key, Movie Id: " + review.getMovieId() + ", Review Id:" + review.getReviewId()))
+                .doOnNext(saved -> log.debug("createReview: created a review entity: {}/{}", saved.getMovieId(), saved.getReviewId()))
+                .map(mapper::entityToApi);
     }
 
     @Override
-    public void deleteReviews(int movieId) {
+    public Mono<Void> deleteReviews(int movieId) {
         log.debug("deleteReviews: tries to delete reviews for the movie with movieId: {}", movieId);
-        reviewRepository.deleteAll(reviewRepository.findByMovieId(movieId));
+        return reviewRepository.deleteByMovieId(movieId);
+    }
+
+    /**
+     * Creates all reviews in one transaction, a duplicate key rolls back the whole batch.
+     */
+    public Mono<Void> createReviews(List<Review> reviews) {
+        log.info("createReviews: Trying to create {} Review entities", reviews.size());
+
+        List<ReviewEntity> reviewEntities = reviews.stream().map(this::toEntity).collect(Collectors.toList());
+
+        return reviewRepository.saveAll(reviewEntities)
+                .onErrorMap(DataIntegrityViolationException.class,
+                        ex -> new InvalidInputException("Duplicate key in a batch of " + reviews.size() + " reviews"))
+                .then();
+    }
+
+    /**
+     * Stores the review whether it exists or not, the write is skipped when the stored review has the same content.
+     *
+     * @return true if the review was written
+     */
+    public Mono<Boolean> upsertReview(Review review) {
+        log.info("upsertReview: Trying to upsert Review entity: {}/{}", review.getMovieId(), review.getReviewId());
+
+        return reviewRepository.upsertAll(Collections.singletonList(toEntity(review)))
+                .map(writtenCount -> writtenCount > 0);
+    }
+
+    /**
+     * Upserts all reviews in one transaction like {@link #upsertReview(Review)}.
+     */
+    public Mono<Void> upsertReviews(List<Review> reviews) {
+        log.info("upsertReviews: Trying to upsert {} Review entities", reviews.size());
+
+        List<ReviewEntity> reviewEntities = reviews.stream().map(this::toEntity).collect(Collectors.toList());
+
+        return reviewRepository.upsertAll(reviewEntities)
+                .doOnNext(writtenCount -> log.debug("upsertReviews: wrote {} of {} reviews", writtenCount, reviews.size()))
+                .then();
+    }
+
+    public Mono<Void> deleteReviews(Collection<Integer> movieIds) {
+        log.debug("deleteReviews: tries to delete reviews for {} movies", movieIds.size());
+        return reviewRepository.deleteByMovieIdIn(movieIds);
+    }
+
+    private ReviewEntity toEntity(Review review) {
+        ReviewEntity reviewEntity = mapper.apiToEntity(review);
+        reviewEntity.setContentHash(reviewEntity.computeContentHash());
+        return reviewEntity;
     }
 
-    private <T> Flux<T> getAsyncFlux(Iterable<T> reviews) {
-        return Flux.fromIterable(reviews).publishOn(scheduler);
+    private Review toApi(ReviewEntity reviewEntity) {
+        return withServiceAddress(mapper.entityToApi(reviewEntity));
     }
 
-    private List<Review> getByMovieId(int movieId) {
-        List<ReviewEntity> reviewEntities = reviewRepository.findByMovieId(movieId);
-        List<Review> reviews = mapper.entityListToApiList(reviewEntities);
-        reviews.forEach(review -> review.setServiceAddress(serviceUtil.getServiceAddress()));
-        return reviews;
+    private Review withServiceAddress(Review review) {
+        review.setServiceAddress(serviceUtil.getServiceAddress());
+        return review;
     }
 }
@@ -1,51 +1,97 @@
 package com.geborskimateusz.microservices.core.review.service;
 
 import com.geborskimateusz.api.core.review.Review;
-import com.geborskimateusz.api.core.review.ReviewService;
 import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.util.event.EventProcessor;
+import com.geborskimateusz.util.event.EventProcessorFactory;
 import com.geborskimateusz.util.exceptions.EventProcessingException;
+import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+import reactor.core.publisher.Mono;
 
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Processes review events, see {@link EventProcessor}.
+ */
 @Slf4j
 @EnableBinding(Sink.class)
 public class MessageProcessor {
 
-    private final ReviewService reviewService;
+    private final BaseReviewService reviewService;
+    private final EventProcessor<Review> eventProcessor;
 
-    public MessageProcessor(ReviewService reviewService) {
+    public MessageProcessor(BaseReviewService reviewService, EventProcessorFactory eventProcessorFactory) {
         this.reviewService = reviewService;
+        this.eventProcessor = eventProcessorFactory.create("reviews", this::processEvent, this::processRun);
     }
 
     @StreamListener(target = Sink.INPUT)
-    public void process(Event<Integer, Review> event) {
+    public void process(
+            @Payload Event<Integer, Review> event,
+            @Header(name = AmqpHeaders.CHANNEL, required = false) Channel channel,
+            @Header(name = AmqpHeaders.DELIVERY_TAG, required = false) Long deliveryTag) {
 
-        log.info("Process message created at {}...", event.getEventCreatedAt());
-        log.info("Process message body: {}", event.toString());
+        eventProcessor.process(event, channel, deliveryTag);
+    }
+
+    @PreDestroy
+    public void close() {
+        eventProcessor.close();
+    }
 
+    private Mono<Void> processEvent(Event<Integer, Review> event) {
+        log.info("Process message body: {}", event.toString());
         switch (event.getEventType()) {
 
             case CREATE:
                 Review review = event.getData();
                 log.info("Create review with ID: {}/{}", review.getMovieId(), review.getReviewId());
                 log.info(review.toString());
-                reviewService.createReview(review);
-                break;
+                return reviewService.createReview(review).then();
+
+            case UPSERT:
+                Review upserted = event.getData();
+                log.info("Upsert review with ID: {}/{}", upserted.getMovieId(), upserted.getReviewId());
+                return reviewService.upsertReview(upserted).then();
 
             case DELETE:
                 int movieId = event.getKey();
                 log.info("Delete reviews with movieID: {}", movieId);
-                reviewService.deleteReviews(movieId);
-                break;
+                return reviewService.deleteReviews(movieId);
 
             default:
-                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, UPSERT or DELETE event";
                 log.warn(errorMessage);
-                throw new EventProcessingException(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
         }
+    }
 
-        log.info("Message processing done!");
+    /**
+     * Consecutive CREATEs and consecutive UPSERTs are each saved in one transaction and consecutive DELETEs become one delete by movieId,
+     * so a DELETE followed by a CREATE for the same movie in a batch still ends with the new review stored.
+     * The runs keep the order in which the events reached the batch, which is the order they were received
+     * only with manual acknowledgement, see {@link EventProcessor}.
+     */
+    private Mono<Void> processRun(List<Event<Integer, Review>> run) {
+        Event.Type eventType = run.get(0).getEventType();
+
+        if (eventType == Event.Type.CREATE) {
+            return reviewService.createReviews(run.stream().map(Event::getData).collect(Collectors.toList()));
+        } else if (eventType == Event.Type.UPSERT) {
+            return reviewService.upsertReviews(run.stream().map(Event::getData).collect(Collectors.toList()));
+        } else if (eventType == Event.Type.DELETE) {
+            return reviewService.deleteReviews(run.stream().map(Event::getKey).collect(Collectors.toList()));
+        } else {
+            return Mono.error(new EventProcessingException("Incorrect event type: " + eventType + ", expected a CREATE, UPSERT or DELETE event"));
+        }
     }
-}
\ No newline at end of file
+}
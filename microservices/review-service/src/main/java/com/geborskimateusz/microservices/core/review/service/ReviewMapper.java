@@ -2,6 +2,7 @@ package com.geborskimateusz.microservices.core.review.service;
 
 import com.geborskimateusz.api.core.review.Review;
 import com.geborskimateusz.microservices.core.review.persistence.ReviewEntity;
+import com.geborskimateusz.microservices.core.review.persistence.ReviewSummaryView;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
@@ -19,9 +20,16 @@ public interface ReviewMapper {
     })
     Review entityToApi(ReviewEntity entity);
 
+    @Mappings({
+            @Mapping(target = "content", ignore = true),
+            @Mapping(target = "serviceAddress", ignore = true)
+    })
+    Review summaryViewToApi(ReviewSummaryView view);
+
     @Mappings({
             @Mapping(target = "id", ignore = true),
-            @Mapping(target = "version", ignore = true)
+            @Mapping(target = "version", ignore = true),
+            @Mapping(target = "contentHash", ignore = true)
     })
     ReviewEntity apiToEntity(Review api);
 
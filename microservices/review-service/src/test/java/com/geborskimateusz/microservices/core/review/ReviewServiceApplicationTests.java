@@ -2,7 +2,11 @@ package com.geborskimateusz.microservices.core.review;
 
 import com.geborskimateusz.api.core.review.Review;
 import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.api.event.EventContentType;
+import com.geborskimateusz.microservices.core.review.persistence.ReviewEntity;
 import com.geborskimateusz.microservices.core.review.persistence.ReviewRepository;
+import com.geborskimateusz.microservices.core.review.service.MessageProcessor;
+import com.rabbitmq.client.Channel;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,21 +16,35 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.stream.messaging.Sink;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.io.IOException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
         properties = {
                 "spring.datasource.url=jdbc:h2:mem:review-db",
                 "eureka.client.enabled=false",
-                "spring.cloud.config.enabled=false"})
+                "spring.cloud.config.enabled=false",
+                "spring.cloud.stream.bindings.input.consumer.backOffInitialInterval=10",
+                "spring.cloud.stream.bindings.input.consumer.backOffMaxInterval=20"})
 public class ReviewServiceApplicationTests {
 
     @Autowired
@@ -38,6 +56,9 @@ public class ReviewServiceApplicationTests {
     @Autowired
     Sink channels;
 
+    @Autowired
+    MessageProcessor messageProcessor;
+
     private AbstractMessageChannel input = null;
 
     @BeforeEach
@@ -62,6 +83,77 @@ public class ReviewServiceApplicationTests {
                 .jsonPath("$.[2].movieId").isEqualTo(movieId);
     }
 
+    @Test
+    public void getReviewsPage() {
+        Integer movieId = 1;
+
+        for (int reviewId = 1; reviewId <= 5; reviewId++) sendCreateReview(reviewId, movieId);
+
+        webTestClient.get()
+                .uri("/review?movieId=" + movieId + "&afterReviewId=2&limit=2&includeContent=false")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$.[0].reviewId").isEqualTo(3)
+                .jsonPath("$.[1].reviewId").isEqualTo(4)
+                .jsonPath("$.[0].author").isEqualTo("Author 1")
+                .jsonPath("$.[0].content").doesNotExist();
+    }
+
+    @Test
+    public void getReviewsPageThrowsInvalidInputException() {
+        webTestClient.get()
+                .uri("/review?movieId=1&limit=0")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Invalid limit: 0, expected 1 to 100");
+    }
+
+    @Test
+    public void getReviewsByMovieIds() {
+        sendCreateReview(1, 1);
+        sendCreateReview(2, 1);
+        sendCreateReview(3, 2);
+        sendCreateReview(4, 3);
+
+        webTestClient.get()
+                .uri("/review?ids=1,2")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.OK)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON_UTF8)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3);
+    }
+
+    @Test
+    public void getReviewsByMovieIdsThrowsInvalidInputException() {
+        webTestClient.get()
+                .uri("/review?ids=1,-1")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Invalid movieId: -1");
+    }
+
+    @Test
+    public void getReviewsByMovieIdsRejectsMoreIdsThanMaxLimit() {
+        String ids = IntStream.rangeClosed(1, 101).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+        webTestClient.get()
+                .uri("/review?ids=" + ids)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Invalid number of movieIds: 101, expected at most 100");
+    }
+
     @Test
     public void getReviewsThrowsInvalidInputException() {
         Integer movieId = -1;
@@ -93,6 +185,18 @@ public class ReviewServiceApplicationTests {
                 .jsonPath("$[0].movieId").isEqualTo(movieId);
     }
 
+    @Test
+    public void createReviewFromSmileEvent() throws IOException {
+        byte[] smile = Jackson2ObjectMapperBuilder.smile().build().writeValueAsBytes(createReviewEvent(2, 1));
+
+        input.send(MessageBuilder.withPayload(smile)
+                .setHeader(MessageHeaders.CONTENT_TYPE, EventContentType.SMILE_VERSIONED)
+                .build());
+
+        assertEquals(1, reviewRepository.count());
+        assertEquals("Content 1", reviewRepository.findByMovieId(1).get(0).getContent());
+    }
+
     @Test
     public void createReviewInvalidInputException() {
         Integer movieId = 1;
@@ -113,6 +217,73 @@ public class ReviewServiceApplicationTests {
         });
     }
 
+    @Test
+    public void createReviewAcknowledgedManually() throws IOException {
+        Channel channel = mock(Channel.class);
+
+        messageProcessor.process(createReviewEvent(2, 1), channel, 1L);
+
+        verify(channel, timeout(5000)).basicAck(1L, false);
+        assertEquals(1, reviewRepository.count());
+    }
+
+    @Test
+    public void createReviewRejectedManually() throws IOException {
+        Channel channel = mock(Channel.class);
+        sendCreateReview(2, 1);
+
+        messageProcessor.process(createReviewEvent(2, 1), channel, 1L);
+
+        verify(channel, timeout(5000)).basicNack(1L, false, false);
+        verify(channel, never()).basicAck(1L, false);
+        assertEquals(1, reviewRepository.count());
+    }
+
+    @Test
+    public void redeliveredEventIsSkipped() throws IOException {
+        Event<Integer, Review> event = createReviewEvent(2, 1);
+        input.send(new GenericMessage<>(event));
+
+        input.send(new GenericMessage<>(event));
+
+        Channel channel = mock(Channel.class);
+        messageProcessor.process(event, channel, 1L);
+
+        verify(channel, timeout(5000)).basicAck(1L, false);
+        verify(channel, never()).basicNack(1L, false, false);
+        assertEquals(1, reviewRepository.count());
+    }
+
+    @Test
+    public void upsertReviewWritesOnlyChanges() {
+        Review review = createReviewEvent(2, 1).getData();
+
+        sendUpsertReview(review);
+        sendUpsertReview(review);
+
+        ReviewEntity stored = reviewRepository.findByMovieId(1).get(0);
+        assertEquals(1, reviewRepository.count());
+        assertEquals(0, (int) stored.getVersion());
+
+        review.setContent("Changed content");
+        sendUpsertReview(review);
+
+        ReviewEntity changed = reviewRepository.findByMovieId(1).get(0);
+        assertEquals(1, reviewRepository.count());
+        assertEquals("Changed content", changed.getContent());
+        assertNotEquals(stored.getVersion(), changed.getVersion());
+    }
+
+    @Test
+    public void upsertReviewAfterCreateSkipsUnchanged() {
+        sendCreateReview(2, 1);
+        ReviewEntity created = reviewRepository.findByMovieId(1).get(0);
+
+        sendUpsertReview(createReviewEvent(2, 1).getData());
+
+        assertEquals(created.getVersion(), reviewRepository.findByMovieId(1).get(0).getVersion());
+    }
+
     @Test
     public void deleteReviews() {
         Integer movieId = 1;
@@ -156,7 +327,15 @@ public class ReviewServiceApplicationTests {
 //                .expectBody();
 //    }
 
+    private void sendUpsertReview(Review review) {
+        input.send(new GenericMessage<>(new Event<>(Event.Type.UPSERT, review.getMovieId(), review)));
+    }
+
     private void sendCreateReview(Integer reviewId, Integer movieId) {
+        input.send(new GenericMessage<>(createReviewEvent(reviewId, movieId)));
+    }
+
+    private Event<Integer, Review> createReviewEvent(Integer reviewId, Integer movieId) {
         Review review = Review.builder()
                 .movieId(movieId)
                 .reviewId(reviewId)
@@ -166,8 +345,7 @@ public class ReviewServiceApplicationTests {
                 .serviceAddress("Fake Address")
                 .build();
 
-        Event<Integer, Review> event = new Event(Event.Type.CREATE, movieId, review);
-        input.send(new GenericMessage<>(event));
+        return new Event<>(Event.Type.CREATE, movieId, review);
     }
 
     private WebTestClient.BodyContentSpec getAndVerify(Integer movieId, HttpStatus status) {
@@ -0,0 +1,138 @@
+package com.geborskimateusz.microservices.core.review;
+
+import com.geborskimateusz.api.core.review.Review;
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.microservices.core.review.persistence.ReviewRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:review-batch-db",
+                "eureka.client.enabled=false",
+                "spring.cloud.config.enabled=false",
+                "app.event-batch.enabled=true",
+                "app.event-batch.max-size=10",
+                "app.event-batch.max-wait-ms=500"})
+public class ReviewServiceBatchTests {
+
+    private static final int CONSUMERS = 10;
+
+    @Autowired
+    ReviewRepository reviewRepository;
+
+    @Autowired
+    Sink channels;
+
+    private AbstractMessageChannel input = null;
+    private ExecutorService consumers;
+
+    @BeforeEach
+    void setUp() {
+        input = (AbstractMessageChannel) channels.input();
+        consumers = Executors.newFixedThreadPool(CONSUMERS);
+    }
+
+    @Test
+    public void createReviewsInBatch() throws Exception {
+        List<Event<Integer, Review>> events = new ArrayList<>();
+        for (int reviewId = 1; reviewId <= CONSUMERS; reviewId++) {
+            events.add(createEvent(1, reviewId));
+        }
+
+        assertEquals(0, sendConcurrently(events).size());
+        assertEquals(CONSUMERS, reviewRepository.count());
+    }
+
+    @Test
+    public void createReviewsInBatchFailsOnlyTheDuplicate() throws Exception {
+        input.send(new GenericMessage<>(createEvent(1, 1)));
+
+        List<Event<Integer, Review>> events = new ArrayList<>();
+        for (int reviewId = 1; reviewId <= CONSUMERS; reviewId++) {
+            events.add(createEvent(1, reviewId));
+        }
+
+        List<Throwable> failures = sendConcurrently(events);
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof MessagingException);
+        assertEquals(CONSUMERS, reviewRepository.count());
+    }
+
+    @Test
+    public void deleteReviewsInBatch() throws Exception {
+        List<Event<Integer, Review>> events = new ArrayList<>();
+        for (int movieId = 1; movieId <= CONSUMERS; movieId++) {
+            input.send(new GenericMessage<>(createEvent(movieId, 1)));
+            events.add(new Event<>(Event.Type.DELETE, movieId, null));
+        }
+        assertEquals(CONSUMERS, reviewRepository.count());
+
+        assertEquals(0, sendConcurrently(events).size());
+        assertEquals(0, reviewRepository.count());
+    }
+
+    private List<Throwable> sendConcurrently(List<Event<Integer, Review>> events) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> sends = new ArrayList<>();
+        for (Event<Integer, Review> event : events) {
+            sends.add(consumers.submit(() -> {
+                start.await();
+                return input.send(new GenericMessage<>(event));
+            }));
+        }
+        start.countDown();
+
+        List<Throwable> failures = new ArrayList<>();
+        for (Future<?> send : sends) {
+            try {
+                send.get();
+            } catch (ExecutionException ex) {
+                failures.add(ex.getCause());
+            }
+        }
+        return failures;
+    }
+
+    private Event<Integer, Review> createEvent(int movieId, int reviewId) {
+        Review review = Review.builder()
+                .movieId(movieId)
+                .reviewId(reviewId)
+                .author("Author 1")
+                .subject("Subject 1")
+                .content("Content 1")
+                .serviceAddress("Fake Address")
+                .build();
+
+        return new Event<>(Event.Type.CREATE, movieId, review);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        consumers.shutdownNow();
+        reviewRepository.deleteAll();
+    }
+}
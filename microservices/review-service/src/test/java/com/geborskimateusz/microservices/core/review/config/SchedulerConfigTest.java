@@ -0,0 +1,76 @@
+package com.geborskimateusz.microservices.core.review.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchedulerConfigTest {
+
+    SimpleMeterRegistry meterRegistry;
+
+    Scheduler jdbcScheduler;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        jdbcScheduler = new SchedulerConfig(1, 1).createJdbcScheduler(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcScheduler.dispose();
+    }
+
+    @Test
+    void runsOnNamedJdbcThread() {
+        StepVerifier.create(Mono.fromCallable(() -> Thread.currentThread().getName()).subscribeOn(jdbcScheduler))
+                .expectNextMatches(threadName -> threadName.startsWith(SchedulerConfig.JDBC_SCHEDULER_NAME))
+                .verifyComplete();
+
+        assertEquals(1, meterRegistry.get("executor.idle").tag("name", SchedulerConfig.JDBC_SCHEDULER_NAME).timer().count());
+        assertEquals(1, meterRegistry.get("executor").tag("name", SchedulerConfig.JDBC_SCHEDULER_NAME).timer().count());
+    }
+
+    @Test
+    void rejectsWorkWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Occupies the only thread...
+        jdbcScheduler.schedule(() -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // ...and the only queue slot
+        jdbcScheduler.schedule(() -> { });
+
+        assertEquals(0, meterRegistry.get("executor.queue.remaining").gauge().value());
+
+        StepVerifier.create(Mono.fromCallable(() -> "rejected").subscribeOn(jdbcScheduler))
+                .expectError(RejectedExecutionException.class)
+                .verify();
+
+        release.countDown();
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -9,10 +9,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.apache.logging.log4j.ThreadContext.isEmpty;
@@ -97,6 +99,15 @@ class ReviewRepositoryTest {
 
     }
 
+    @Test
+    void deleteByMovieId() {
+
+        reviewRepository.deleteByMovieId(savedReviewEntity.getMovieId());
+
+        assertEquals(0, reviewRepository.count());
+
+    }
+
     @Test
     void findByMovieId() {
 
@@ -108,6 +119,42 @@ class ReviewRepositoryTest {
 
     }
 
+    @Test
+    void findByMovieIdIn() {
+
+        List<ReviewEntity> reviewEntities = reviewRepository.findByMovieIdIn(Arrays.asList(savedReviewEntity.getMovieId(), BASE_MOVIE_ID + 1));
+
+        assertThat(reviewEntities, hasSize(1));
+        assertReview(savedReviewEntity, reviewEntities.get(0));
+    }
+
+
+    @Test
+    void findPageByMovieIdAfterReviewId() {
+        for (int reviewId = BASE_REVIEW_ID + 1; reviewId <= BASE_REVIEW_ID + 4; reviewId++) {
+            reviewRepository.save(ReviewEntity.builder().movieId(BASE_MOVIE_ID).reviewId(reviewId).content("Content " + reviewId).build());
+        }
+        reviewRepository.save(ReviewEntity.builder().movieId(BASE_MOVIE_ID + 1).reviewId(BASE_REVIEW_ID + 2).build());
+
+        List<ReviewEntity> page = reviewRepository.findByMovieIdAndReviewIdGreaterThanOrderByReviewIdAsc(
+                BASE_MOVIE_ID, BASE_REVIEW_ID + 1, PageRequest.of(0, 2), ReviewEntity.class);
+
+        assertThat(page, hasSize(2));
+        assertEquals(BASE_REVIEW_ID + 2, (int) page.get(0).getReviewId());
+        assertEquals(BASE_REVIEW_ID + 3, (int) page.get(1).getReviewId());
+        assertEquals("Content " + (BASE_REVIEW_ID + 2), page.get(0).getContent());
+    }
+
+    @Test
+    void findPageByMovieIdProjectsSummary() {
+        List<ReviewSummaryView> page = reviewRepository.findByMovieIdAndReviewIdGreaterThanOrderByReviewIdAsc(
+                BASE_MOVIE_ID, 0, PageRequest.of(0, 10), ReviewSummaryView.class);
+
+        assertThat(page, hasSize(1));
+        assertEquals(savedReviewEntity.getReviewId(), page.get(0).getReviewId());
+        assertEquals(savedReviewEntity.getAuthor(), page.get(0).getAuthor());
+        assertEquals(savedReviewEntity.getSubject(), page.get(0).getSubject());
+    }
 
     @Test
     void onDuplicate() {
@@ -2,20 +2,10 @@ package com.geborskimateusz.gateway;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.cloud.client.loadbalancer.LoadBalanced;
-import org.springframework.context.annotation.Bean;
-import org.springframework.web.reactive.function.client.WebClient;
 
 @SpringBootApplication
 public class GatewayApplication {
 
-	@Bean
-	@LoadBalanced
-	public WebClient.Builder loadBalancedWebClientBuilder() {
-		final WebClient.Builder builder = WebClient.builder();
-		return builder;
-	}
-
 	public static void main(String[] args) {
 		SpringApplication.run(GatewayApplication.class, args);
 	}
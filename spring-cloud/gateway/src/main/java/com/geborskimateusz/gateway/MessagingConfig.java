@@ -0,0 +1,15 @@
+package com.geborskimateusz.gateway;
+
+import com.geborskimateusz.util.event.EventMessagingConfig;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * The movie-composite sends its events as Smile, read with util's {@link EventMessagingConfig}.
+ * {@link ResponseCachePurger} only reads the key of an event, so with app.event-schema.accept-newer-versions
+ * events of every schema version are accepted.
+ */
+@Configuration
+@Import(EventMessagingConfig.class)
+public class MessagingConfig {
+}
@@ -0,0 +1,123 @@
+package com.geborskimateusz.gateway;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Responses of the movie-composite service, keyed by request and scope, see {@link ResponseCacheGatewayFilterFactory}.
+ * <p>
+ * Each entry is indexed by the movieIds it contains, so the events of a movie purge every response that includes it.
+ * A response requested before the last purge of one of its movies is not cached, it may predate the event.
+ * Puts and purges hold the same lock, so a purge cannot slip in between the check of a put and its write.
+ * Entries expire after ttl-seconds in any case.
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    public static final String CACHE_NAME = "gateway-responses";
+
+    private final Cache<String, CachedResponse> responses;
+    private final Cache<Integer, Long> purgedAt;
+    private final Map<Integer, Set<String>> keysByMovieId = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+
+    public ResponseCache(
+            @Value("${app.response-cache.max-size:10000}") long maxSize,
+            @Value("${app.response-cache.ttl-seconds:60}") long ttlSeconds,
+            MeterRegistry meterRegistry) {
+
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .removalListener((String key, CachedResponse response, RemovalCause cause) -> {
+                    if (response != null && cause != RemovalCause.REPLACED) unindex(key, response);
+                })
+                .recordStats()
+                .build();
+
+        this.purgedAt = Caffeine.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, responses, CACHE_NAME);
+
+        log.info("Created gateway response cache, maxSize: {}, ttl: {}s", maxSize, ttlSeconds);
+    }
+
+    public CachedResponse get(String key) {
+        return responses.getIfPresent(key);
+    }
+
+    /**
+     * @param requestedAt System.nanoTime() when the response was requested from the backend
+     */
+    public CachedResponse put(String key, Set<Integer> movieIds, MediaType contentType, byte[] body, long requestedAt) {
+        CachedResponse response = new CachedResponse(movieIds, contentType, body);
+
+        synchronized (lock) {
+            boolean purgedSinceRequested = movieIds.stream()
+                    .map(purgedAt::getIfPresent)
+                    .anyMatch(purged -> purged != null && purged - requestedAt >= 0);
+
+            if (purgedSinceRequested) {
+                log.debug("put: skips caching {}, purged since it was requested", key);
+                return response;
+            }
+
+            movieIds.forEach(movieId -> keysByMovieId.computeIfAbsent(movieId, id -> ConcurrentHashMap.newKeySet()).add(key));
+            responses.put(key, response);
+        }
+
+        return response;
+    }
+
+    public void purge(int movieId) {
+        synchronized (lock) {
+            purgedAt.put(movieId, System.nanoTime());
+
+            Set<String> keys = keysByMovieId.remove(movieId);
+
+            if (keys != null) {
+                log.debug("purge: evicts {} responses for movieId: {}", keys.size(), movieId);
+                responses.invalidateAll(keys);
+            }
+        }
+    }
+
+    private void unindex(String key, CachedResponse response) {
+        response.getMovieIds().forEach(movieId -> keysByMovieId.computeIfPresent(movieId, (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        }));
+    }
+
+    @Getter
+    public static class CachedResponse {
+        private final Set<Integer> movieIds;
+        private final MediaType contentType;
+        private final byte[] body;
+        private final String eTag;
+
+        CachedResponse(Set<Integer> movieIds, MediaType contentType, byte[] body) {
+            this.movieIds = movieIds;
+            this.contentType = contentType;
+            this.body = body;
+            this.eTag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.geborskimateusz.gateway;
+
+import com.geborskimateusz.util.http.ResponseHeaders;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Serves repeated GETs of composite movies from the {@link ResponseCache}.
+ * <p>
+ * Responses are cached per path, query and the scope of the caller's token, and carry a strong ETag.
+ * A request whose If-None-Match matches the ETag is answered with 304 Not Modified, cached or not.
+ * Streamed responses and aggregates missing parts, see {@link ResponseHeaders#MISSING_PARTS}, are passed through
+ * without being cached. Cacheable requests are forwarded without Accept-Encoding,
+ * so the cached body is uncompressed and the gateway compresses it per client.
+ */
+@Slf4j
+@Component
+public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+    public static final String CACHE_HEADER = "X-Cache";
+
+    private static final String COMPOSITE_PATH = "/movie-composite";
+
+    private final ResponseCache responseCache;
+
+    public ResponseCacheGatewayFilterFactory(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public GatewayFilter apply(Object config) {
+        // Has to decorate the response before NettyWriteResponseFilter writes it
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+
+            Set<Integer> movieIds = movieIds(request);
+            if (request.getMethod() != HttpMethod.GET || movieIds.isEmpty()) {
+                return chain.filter(exchange);
+            }
+
+            return exchange.getPrincipal()
+                    .map(this::scope)
+                    .defaultIfEmpty("")
+                    .flatMap(scope -> {
+                        String key = request.getURI().getRawPath() + "?" + Objects.toString(request.getURI().getRawQuery(), "") + "#" + scope;
+
+                        ResponseCache.CachedResponse cached = responseCache.get(key);
+                        if (cached != null) {
+                            log.debug("Serves {} from the response cache", key);
+                            return writeCached(exchange, cached, "HIT");
+                        }
+
+                        ServerWebExchange forwarded = exchange.mutate()
+                                .request(request.mutate().headers(headers -> headers.remove(HttpHeaders.ACCEPT_ENCODING)).build())
+                                .response(cachingResponse(exchange, key, movieIds, System.nanoTime()))
+                                .build();
+
+                        return chain.filter(forwarded);
+                    });
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private ServerHttpResponse cachingResponse(ServerWebExchange exchange, String key, Set<Integer> movieIds, long requestedAt) {
+        return new ServerHttpResponseDecorator(exchange.getResponse()) {
+
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                if (getStatusCode() != HttpStatus.OK || getHeaders().containsKey(ResponseHeaders.MISSING_PARTS)) {
+                    return super.writeWith(body);
+                }
+
+                return DataBufferUtils.join(Flux.from(body)).flatMap(joined -> {
+                    byte[] bytes = new byte[joined.readableByteCount()];
+                    joined.read(bytes);
+                    DataBufferUtils.release(joined);
+
+                    ResponseCache.CachedResponse response = responseCache.put(key, movieIds, getHeaders().getContentType(), bytes, requestedAt);
+                    return writeCached(exchange, response, "MISS");
+                });
+            }
+        };
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, ResponseCache.CachedResponse cached, String cacheStatus) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+
+        headers.setETag(cached.getETag());
+        headers.set(CACHE_HEADER, cacheStatus);
+
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        if (ifNoneMatch.contains(cached.getETag()) || ifNoneMatch.contains("*")) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            return response.setComplete();
+        }
+
+        response.setStatusCode(HttpStatus.OK);
+        headers.setContentType(cached.getContentType());
+        headers.setContentLength(cached.getBody().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.getBody())));
+    }
+
+    /**
+     * The movieIds of GET /movie-composite/{movieId} and GET /movie-composite?ids=..., none for anything else.
+     */
+    static Set<Integer> movieIds(ServerHttpRequest request) {
+        String path = request.getPath().value();
+
+        try {
+            if (path.equals(COMPOSITE_PATH)) {
+                String ids = request.getQueryParams().getFirst("ids");
+                return ids == null ? Collections.emptySet() : Arrays.stream(ids.split(","))
+                        .map(String::trim)
+                        .map(Integer::valueOf)
+                        .collect(Collectors.toSet());
+            }
+
+            if (path.startsWith(COMPOSITE_PATH + "/") && path.indexOf('/', COMPOSITE_PATH.length() + 1) < 0) {
+                return Collections.singleton(Integer.valueOf(path.substring(COMPOSITE_PATH.length() + 1)));
+            }
+        } catch (NumberFormatException ex) {
+            // Left to the composite service to reject
+        }
+
+        return Collections.emptySet();
+    }
+
+    private String scope(Principal principal) {
+        if (principal instanceof JwtAuthenticationToken) {
+            return Objects.toString(((JwtAuthenticationToken) principal).getToken().getClaims().get("scope"), "");
+        }
+        return "";
+    }
+}
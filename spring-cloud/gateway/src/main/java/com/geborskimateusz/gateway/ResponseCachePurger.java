@@ -0,0 +1,69 @@
+package com.geborskimateusz.gateway;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.annotation.Input;
+import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.handler.annotation.Payload;
+
+import java.util.Map;
+
+/**
+ * Purges the cached responses of a movie when one of its movie, recommendation or review events passes the broker.
+ * The inputs have no consumer group, so every gateway instance sees every event.
+ */
+@Slf4j
+@EnableBinding(ResponseCachePurger.Sinks.class)
+public class ResponseCachePurger {
+
+    private final ResponseCache responseCache;
+
+    public ResponseCachePurger(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @StreamListener(Sinks.MOVIES)
+    public void onMovieEvent(@Payload Map<String, Object> event) {
+        purge(event);
+    }
+
+    @StreamListener(Sinks.RECOMMENDATIONS)
+    public void onRecommendationEvent(@Payload Map<String, Object> event) {
+        purge(event);
+    }
+
+    @StreamListener(Sinks.REVIEWS)
+    public void onReviewEvent(@Payload Map<String, Object> event) {
+        purge(event);
+    }
+
+    /**
+     * Only the key of the event is needed, the movieId, so the payload is not bound to the api's Event class.
+     */
+    private void purge(Map<String, Object> event) {
+        Object key = event.get("key");
+
+        if (key instanceof Number) {
+            responseCache.purge(((Number) key).intValue());
+        } else {
+            log.warn("Ignores event without a numeric key: {}", event);
+        }
+    }
+
+    public interface Sinks {
+
+        String MOVIES = "response-cache-movies";
+        String RECOMMENDATIONS = "response-cache-recommendations";
+        String REVIEWS = "response-cache-reviews";
+
+        @Input(MOVIES)
+        SubscribableChannel movies();
+
+        @Input(RECOMMENDATIONS)
+        SubscribableChannel recommendations();
+
+        @Input(REVIEWS)
+        SubscribableChannel reviews();
+    }
+}
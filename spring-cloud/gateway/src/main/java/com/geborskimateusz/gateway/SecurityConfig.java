@@ -1,13 +1,16 @@
 package com.geborskimateusz.gateway;
 
+import com.geborskimateusz.util.security.JwtDecoderConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 
 @Slf4j
 @EnableWebFluxSecurity
+@Import(JwtDecoderConfig.class)
 public class SecurityConfig {
 
     @Bean
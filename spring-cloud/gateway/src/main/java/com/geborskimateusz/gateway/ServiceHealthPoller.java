@@ -0,0 +1,229 @@
+package com.geborskimateusz.gateway;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Polls the health of every registered instance of the services behind the gateway in the background,
+ * so the gateway's health endpoint answers from the last poll instead of calling the services.
+ * <p>
+ * A service is UP when at least one of its instances answered its health endpoint within the timeout.
+ * The details list each instance with its latest status and the latencies of its last polls.
+ * A service not polled for three intervals is reported UNKNOWN.
+ * <p>
+ * The services are listed as name=serviceId, or just serviceId when the health component is named after it,
+ * so the component names can differ from the ids the services register in Eureka under.
+ */
+@Slf4j
+@Component
+public class ServiceHealthPoller {
+
+    private final DiscoveryClient discoveryClient;
+    private final WebClient webClient;
+    private final Map<String, String> services;
+    private final Duration interval;
+    private final Duration timeout;
+    private final int historySize;
+    private final Clock clock;
+
+    private final Map<String, Map<String, InstanceHealth>> instancesByService = new ConcurrentHashMap<>();
+    private final Map<String, Health> healthByService = new ConcurrentHashMap<>();
+    private final Map<String, Instant> polledAtByService = new ConcurrentHashMap<>();
+
+    private volatile Disposable polling;
+
+    @Autowired
+    public ServiceHealthPoller(
+            DiscoveryClient discoveryClient,
+            WebClient healthCheckWebClient,
+            @Value("${app.health-check.services:auth-server,movie,recommendations=recommendation,reviews=review,movie-composite}") String[] services,
+            @Value("${app.health-check.interval-ms:5000}") long intervalMs,
+            @Value("${app.health-check.timeout-ms:2000}") long timeoutMs,
+            @Value("${app.health-check.history-size:20}") int historySize) {
+        this(discoveryClient, healthCheckWebClient, parseServices(services), Duration.ofMillis(intervalMs), Duration.ofMillis(timeoutMs), historySize, Clock.systemUTC());
+    }
+
+    ServiceHealthPoller(DiscoveryClient discoveryClient, WebClient webClient, Map<String, String> services,
+                        Duration interval, Duration timeout, int historySize, Clock clock) {
+        this.discoveryClient = discoveryClient;
+        this.webClient = webClient;
+        this.services = services;
+        this.interval = interval;
+        this.timeout = timeout;
+        this.historySize = historySize;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the service id of each health component name, in the configured order
+     */
+    static Map<String, String> parseServices(String[] entries) {
+        Map<String, String> services = new LinkedHashMap<>();
+        Arrays.stream(entries).map(String::trim).filter(entry -> !entry.isEmpty()).forEach(entry -> {
+            int separator = entry.indexOf('=');
+            if (separator < 0) {
+                services.put(entry, entry);
+            } else {
+                services.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+            }
+        });
+        return services;
+    }
+
+    @PostConstruct
+    void start() {
+        log.info("Polls the health of {} every {} ms", services, interval.toMillis());
+
+        polling = Flux.interval(Duration.ZERO, interval)
+                .onBackpressureDrop(tick -> log.debug("Skips a health poll, the previous one is still running"))
+                .concatMap(tick -> poll(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (polling != null) polling.dispose();
+    }
+
+    /**
+     * @return the health component names
+     */
+    public Set<String> getServices() {
+        return services.keySet();
+    }
+
+    public Health health(String service) {
+        Instant polledAt = polledAtByService.get(service);
+        if (polledAt == null) {
+            return Health.unknown().withDetail("reason", "Not polled yet").build();
+        }
+        if (polledAt.plus(interval.multipliedBy(3)).isBefore(clock.instant())) {
+            return Health.unknown().withDetail("reason", "Last polled at " + polledAt).build();
+        }
+        return healthByService.get(service);
+    }
+
+    /**
+     * Polls all instances of all services concurrently, completes when every instance answered or timed out.
+     */
+    Mono<Void> poll() {
+        return Flux.fromIterable(services.entrySet())
+                .flatMap(service -> Flux.fromIterable(discoveryClient.getInstances(service.getValue()))
+                        .flatMap(instance -> probe(service.getKey(), instance))
+                        .collectList()
+                        .doOnNext(polled -> update(service.getKey(), polled)))
+                .onErrorResume(ex -> {
+                    log.warn("Health poll failed: {}", ex.toString());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<InstanceHealth> probe(String service, ServiceInstance instance) {
+        String id = instance.getInstanceId() != null ? instance.getInstanceId() : instance.getUri().toString();
+        InstanceHealth instanceHealth = instancesByService
+                .computeIfAbsent(service, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(id, key -> new InstanceHealth(id, historySize));
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+
+            return webClient.get().uri(instance.getUri() + "/actuator/health")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .timeout(timeout)
+                    .map(body -> instanceHealth.record(Status.UP, null, elapsedMs(start), clock.instant()))
+                    .onErrorResume(ex -> {
+                        log.debug("Health check of {} failed: {}", id, ex.toString());
+                        return Mono.just(instanceHealth.record(Status.DOWN, ex.toString(), elapsedMs(start), clock.instant()));
+                    });
+        });
+    }
+
+    private void update(String service, List<InstanceHealth> polled) {
+        Map<String, InstanceHealth> instances = instancesByService.computeIfAbsent(service, key -> new ConcurrentHashMap<>());
+        instances.keySet().retainAll(polled.stream().map(InstanceHealth::getId).collect(Collectors.toSet()));
+
+        Health.Builder builder = polled.stream().anyMatch(instance -> instance.getStatus() == Status.UP)
+                ? Health.up()
+                : Health.down();
+        if (polled.isEmpty()) {
+            builder.withDetail("reason", "No registered instances");
+        }
+        polled.forEach(instance -> builder.withDetail(instance.getId(), instance.details()));
+
+        healthByService.put(service, builder.build());
+        polledAtByService.put(service, clock.instant());
+    }
+
+    private static long elapsedMs(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    static class InstanceHealth {
+        private final String id;
+        private final int historySize;
+        private final Deque<Long> latenciesMs = new ArrayDeque<>();
+        private volatile Status status = Status.UNKNOWN;
+        private volatile String error;
+        private volatile Instant checkedAt;
+
+        InstanceHealth(String id, int historySize) {
+            this.id = id;
+            this.historySize = historySize;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        Status getStatus() {
+            return status;
+        }
+
+        synchronized InstanceHealth record(Status status, String error, long latencyMs, Instant checkedAt) {
+            this.status = status;
+            this.error = error;
+            this.checkedAt = checkedAt;
+            if (latenciesMs.size() == historySize) latenciesMs.removeFirst();
+            latenciesMs.addLast(latencyMs);
+            return this;
+        }
+
+        synchronized Map<String, Object> details() {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("status", status.getCode());
+            details.put("checkedAt", checkedAt);
+            details.put("latencyMs", new ArrayList<>(latenciesMs));
+            if (error != null) details.put("error", error);
+            return details;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.geborskimateusz.gateway;
+
+import com.geborskimateusz.util.security.IdentityHeaderCodec;
+import com.geborskimateusz.util.security.TrustedIdentity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Forwards the caller the gateway has authenticated as a {@link IdentityHeaderCodec} header instead of its JWT,
+ * so the service behind the route does not verify the token again.
+ * <p>
+ * An identity header sent by the client is always dropped. With app.trusted-hop.enabled false the JWT is forwarded as is.
+ */
+@Slf4j
+@Component
+public class TrustedHopGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+    private static final String SCOPE_PREFIX = "SCOPE_";
+
+    private final IdentityHeaderCodec codec;
+    private final Duration ttl;
+
+    public TrustedHopGatewayFilterFactory(
+            @Value("${app.trusted-hop.enabled:false}") boolean enabled,
+            @Value("${app.trusted-hop.secret:}") String secret,
+            @Value("${app.trusted-hop.ttl-seconds:30}") long ttlSeconds) {
+        this.codec = enabled ? new IdentityHeaderCodec(secret) : null;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+    }
+
+    @Override
+    public GatewayFilter apply(Object config) {
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest().mutate()
+                    .headers(headers -> headers.remove(IdentityHeaderCodec.HEADER))
+                    .build();
+
+            if (codec == null) {
+                return chain.filter(exchange.mutate().request(request).build());
+            }
+
+            return exchange.getPrincipal()
+                    .filter(principal -> principal instanceof JwtAuthenticationToken)
+                    .map(principal -> request.mutate()
+                            .headers(headers -> {
+                                headers.remove(HttpHeaders.AUTHORIZATION);
+                                headers.set(IdentityHeaderCodec.HEADER, codec.encode(identity((JwtAuthenticationToken) principal)));
+                            })
+                            .build())
+                    .defaultIfEmpty(request)
+                    .flatMap(forwarded -> chain.filter(exchange.mutate().request(forwarded).build()));
+        };
+    }
+
+    /**
+     * Valid for the ttl, but never longer than the token it replaces.
+     */
+    private TrustedIdentity identity(JwtAuthenticationToken authentication) {
+        List<String> scopes = authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .filter(authority -> authority.startsWith(SCOPE_PREFIX))
+                .map(authority -> authority.substring(SCOPE_PREFIX.length()))
+                .collect(Collectors.toList());
+
+        Instant expiresAt = Instant.now().plus(ttl);
+        Instant tokenExpiresAt = authentication.getToken().getExpiresAt();
+        if (tokenExpiresAt != null && tokenExpiresAt.isBefore(expiresAt)) {
+            expiresAt = tokenExpiresAt;
+        }
+
+        return new TrustedIdentity(authentication.getName(), scopes, expiresAt);
+    }
+}
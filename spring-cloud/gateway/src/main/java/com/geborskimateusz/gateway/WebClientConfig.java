@@ -0,0 +1,42 @@
+package com.geborskimateusz.gateway;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Connection pool of the WebClient used for the health checks of the service instances,
+ * routed requests use the pool configured with spring.cloud.gateway.httpclient.
+ */
+@Configuration
+public class WebClientConfig {
+
+	@Bean(destroyMethod = "dispose")
+	public ConnectionProvider serviceConnectionProvider(
+			@Value("${app.web-client.max-connections:10}") int maxConnections,
+			@Value("${app.web-client.acquire-timeout-ms:1000}") long acquireTimeoutMs,
+			@Value("${app.web-client.max-idle-ms:30000}") long maxIdleMs) {
+		return ConnectionProvider.fixed("health-checks", maxConnections, acquireTimeoutMs, Duration.ofMillis(maxIdleMs));
+	}
+
+	@Bean
+	public WebClient healthCheckWebClient(
+			ConnectionProvider serviceConnectionProvider,
+			@Value("${app.web-client.connect-timeout-ms:1000}") int connectTimeoutMs) {
+
+		HttpClient httpClient = HttpClient.create(serviceConnectionProvider)
+				.keepAlive(true)
+				.compress(true)
+				.metrics(true)
+				.tcpConfiguration(tcpClient -> tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs));
+
+		return WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+	}
+}
@@ -0,0 +1,127 @@
+package com.geborskimateusz.gateway;
+
+import com.geborskimateusz.util.http.ResponseHeaders;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheGatewayFilterFactoryTest {
+
+    ResponseCache responseCache;
+    GatewayFilter filter;
+    AtomicInteger backendCalls;
+
+    GatewayFilterChain backend = exchange -> {
+        backendCalls.incrementAndGet();
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap("{\"movieId\":1}".getBytes(StandardCharsets.UTF_8))));
+    };
+
+    @BeforeEach
+    void setup() {
+        responseCache = new ResponseCache(100, 60, new SimpleMeterRegistry());
+        filter = new ResponseCacheGatewayFilterFactory(responseCache).apply(new Object());
+        backendCalls = new AtomicInteger();
+    }
+
+    @Test
+    void servesRepeatedGetFromCache() {
+        MockServerWebExchange first = get("/movie-composite/1");
+        MockServerWebExchange second = get("/movie-composite/1");
+
+        filter.filter(first, backend).block();
+        filter.filter(second, backend).block();
+
+        assertEquals(1, backendCalls.get());
+        assertEquals("MISS", first.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER));
+        assertEquals("HIT", second.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER));
+        assertEquals("{\"movieId\":1}", second.getResponse().getBodyAsString().block());
+        assertEquals(first.getResponse().getHeaders().getETag(), second.getResponse().getHeaders().getETag());
+    }
+
+    @Test
+    void answersMatchingIfNoneMatchWithNotModified() {
+        MockServerWebExchange first = get("/movie-composite/1");
+        filter.filter(first, backend).block();
+        String eTag = first.getResponse().getHeaders().getETag();
+
+        MockServerWebExchange conditional = MockServerWebExchange.from(MockServerHttpRequest.get("/movie-composite/1").ifNoneMatch(eTag));
+        filter.filter(conditional, backend).block();
+
+        assertEquals(1, backendCalls.get());
+        assertEquals(HttpStatus.NOT_MODIFIED, conditional.getResponse().getStatusCode());
+    }
+
+    @Test
+    void purgeEvictsResponsesContainingTheMovie() {
+        filter.filter(get("/movie-composite/1"), backend).block();
+        filter.filter(get("/movie-composite?ids=1,2"), backend).block();
+        filter.filter(get("/movie-composite/3"), backend).block();
+
+        responseCache.purge(1);
+
+        filter.filter(get("/movie-composite/1"), backend).block();
+        filter.filter(get("/movie-composite?ids=1,2"), backend).block();
+        filter.filter(get("/movie-composite/3"), backend).block();
+
+        assertEquals(5, backendCalls.get());
+    }
+
+    @Test
+    void doesNotCacheAggregateMissingParts() {
+        GatewayFilterChain degradedBackend = exchange -> {
+            backendCalls.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            response.getHeaders().add(ResponseHeaders.MISSING_PARTS, "reviews");
+            return response.writeWith(Mono.just(response.bufferFactory().wrap("{\"movieId\":1,\"missingParts\":[\"reviews\"]}".getBytes(StandardCharsets.UTF_8))));
+        };
+
+        MockServerWebExchange degraded = get("/movie-composite/1");
+        filter.filter(degraded, degradedBackend).block();
+        filter.filter(get("/movie-composite/1"), backend).block();
+
+        assertEquals(2, backendCalls.get());
+        assertEquals("{\"movieId\":1,\"missingParts\":[\"reviews\"]}", degraded.getResponse().getBodyAsString().block());
+        assertNull(degraded.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER));
+    }
+
+    @Test
+    void passesStreamAndNonGetRequestsThrough() {
+        filter.filter(get("/movie-composite/1/stream"), backend).block();
+        filter.filter(get("/movie-composite/1/stream"), backend).block();
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.delete("/movie-composite/1")), backend).block();
+
+        assertEquals(3, backendCalls.get());
+    }
+
+    @Test
+    void extractsMovieIds() {
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), ResponseCacheGatewayFilterFactory.movieIds(MockServerHttpRequest.get("/movie-composite?ids=1,2").build()));
+        assertEquals(new HashSet<>(Arrays.asList(7)), ResponseCacheGatewayFilterFactory.movieIds(MockServerHttpRequest.get("/movie-composite/7").build()));
+        assertTrue(ResponseCacheGatewayFilterFactory.movieIds(MockServerHttpRequest.get("/movie-composite/abc").build()).isEmpty());
+    }
+
+    private MockServerWebExchange get(String uri) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(uri).header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE));
+    }
+}
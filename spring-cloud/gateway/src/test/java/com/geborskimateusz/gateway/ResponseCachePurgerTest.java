@@ -0,0 +1,70 @@
+package com.geborskimateusz.gateway;
+
+import com.geborskimateusz.api.event.EventContentType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"eureka.client.enabled=false", "spring.cloud.config.enabled=false", "app.event-schema.accept-newer-versions=true"})
+class ResponseCachePurgerTest {
+
+    @Autowired
+    ResponseCachePurger.Sinks sinks;
+
+    @MockBean
+    ResponseCache responseCache;
+
+    @Test
+    void purgesMovieOfSmileEvent() throws IOException {
+        byte[] smile = Jackson2ObjectMapperBuilder.smile().build().writeValueAsBytes(event(1));
+
+        sinks.reviews().send(MessageBuilder.withPayload(smile)
+                .setHeader(MessageHeaders.CONTENT_TYPE, EventContentType.SMILE_VERSIONED)
+                .build());
+
+        verify(responseCache).purge(1);
+    }
+
+    @Test
+    void purgesMovieOfSmileEventOfNewerSchemaVersion() throws IOException {
+        byte[] smile = Jackson2ObjectMapperBuilder.smile().build().writeValueAsBytes(event(3));
+
+        sinks.recommendations().send(MessageBuilder.withPayload(smile)
+                .setHeader(MessageHeaders.CONTENT_TYPE, EventContentType.SMILE + ";" + EventContentType.VERSION_PARAMETER + "=" + (EventContentType.SCHEMA_VERSION + 1))
+                .build());
+
+        verify(responseCache).purge(3);
+    }
+
+    @Test
+    void purgesMovieOfJsonEvent() throws IOException {
+        byte[] json = Jackson2ObjectMapperBuilder.json().build().writeValueAsBytes(event(2));
+
+        sinks.movies().send(MessageBuilder.withPayload(json)
+                .setHeader(MessageHeaders.CONTENT_TYPE, "application/json")
+                .build());
+
+        verify(responseCache).purge(2);
+    }
+
+    private Map<String, Object> event(int movieId) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("eventType", "DELETE");
+        event.put("key", movieId);
+        return event;
+    }
+}
@@ -0,0 +1,51 @@
+package com.geborskimateusz.gateway;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    ResponseCache responseCache = new ResponseCache(1000, 60, new SimpleMeterRegistry());
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void responseRequestedBeforeAPurgeIsNeverLeftCached() throws Exception {
+        byte[] body = "{\"movieId\":1}".getBytes(StandardCharsets.UTF_8);
+        CyclicBarrier start = new CyclicBarrier(2);
+
+        for (int i = 0; i < 10000; i++) {
+            String key = "/movie-composite/1?#" + i;
+            long requestedAt = System.nanoTime();
+
+            Future<?> put = executor.submit(() -> {
+                start.await();
+                return responseCache.put(key, Collections.singleton(1), MediaType.APPLICATION_JSON, body, requestedAt);
+            });
+            Future<?> purge = executor.submit(() -> {
+                start.await();
+                responseCache.purge(1);
+                return null;
+            });
+            put.get();
+            purge.get();
+
+            assertNull(responseCache.get(key), "response of iteration " + i + " outlived the purge");
+        }
+    }
+}
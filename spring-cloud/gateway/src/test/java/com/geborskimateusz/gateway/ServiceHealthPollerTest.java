@@ -0,0 +1,124 @@
+package com.geborskimateusz.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ServiceHealthPollerTest {
+
+    static final Instant NOW = Instant.parse("2020-01-01T00:00:00Z");
+
+    DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
+    AtomicInteger calls = new AtomicInteger();
+
+    WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                calls.incrementAndGet();
+                switch (request.url().getHost()) {
+                    case "hung":
+                        return Mono.never();
+                    case "failing":
+                        return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+                    default:
+                        return Mono.just(ClientResponse.create(HttpStatus.OK).body("{\"status\":\"UP\"}").build());
+                }
+            })
+            .build();
+
+    @Test
+    void serviceIsUpWhenAnyInstanceIsUp() {
+        when(discoveryClient.getInstances("movie")).thenReturn(Arrays.asList(instance("movie-1", "healthy"), instance("movie-2", "failing")));
+        ServiceHealthPoller poller = poller(Clock.fixed(NOW, ZoneOffset.UTC));
+
+        poller.poll().block();
+        Health health = poller.health("movie");
+
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals("UP", details(health, "movie-1").get("status"));
+        assertEquals("DOWN", details(health, "movie-2").get("status"));
+    }
+
+    @Test
+    void hungInstanceIsDownAfterTimeout() {
+        when(discoveryClient.getInstances("movie")).thenReturn(Collections.singletonList(instance("movie-1", "hung")));
+        ServiceHealthPoller poller = poller(Clock.fixed(NOW, ZoneOffset.UTC));
+
+        poller.poll().block(Duration.ofSeconds(5));
+
+        assertEquals(Status.DOWN, poller.health("movie").getStatus());
+    }
+
+    @Test
+    void answersFromLastPollAndKeepsLatencyHistory() {
+        when(discoveryClient.getInstances("movie")).thenReturn(Collections.singletonList(instance("movie-1", "healthy")));
+        ServiceHealthPoller poller = poller(Clock.fixed(NOW, ZoneOffset.UTC));
+
+        for (int i = 0; i < 4; i++) poller.poll().block();
+        poller.health("movie");
+        poller.health("movie");
+
+        assertEquals(4, calls.get());
+        assertEquals(3, ((List<?>) details(poller.health("movie"), "movie-1").get("latencyMs")).size());
+    }
+
+    @Test
+    void serviceWithoutInstancesIsDownAndUnpolledServiceUnknown() {
+        when(discoveryClient.getInstances("movie")).thenReturn(Collections.emptyList());
+        ServiceHealthPoller poller = poller(Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertEquals(Status.UNKNOWN, poller.health("movie").getStatus());
+
+        poller.poll().block();
+
+        assertEquals(Status.DOWN, poller.health("movie").getStatus());
+    }
+
+    @Test
+    void reportsServiceUnderItsConfiguredName() {
+        when(discoveryClient.getInstances("review")).thenReturn(Collections.singletonList(instance("review-1", "healthy")));
+        ServiceHealthPoller poller = new ServiceHealthPoller(discoveryClient, webClient,
+                ServiceHealthPoller.parseServices(new String[]{"movie", "reviews=review"}),
+                Duration.ofSeconds(5), Duration.ofMillis(100), 3, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        poller.poll().block();
+
+        assertEquals(Arrays.asList("movie", "reviews"), new ArrayList<>(poller.getServices()));
+        assertEquals(Status.UP, poller.health("reviews").getStatus());
+        assertEquals(Status.DOWN, poller.health("movie").getStatus());
+    }
+
+    ServiceHealthPoller poller(Clock clock) {
+        return new ServiceHealthPoller(discoveryClient, webClient, Collections.singletonMap("movie", "movie"),
+                Duration.ofSeconds(5), Duration.ofMillis(100), 3, clock);
+    }
+
+    ServiceInstance instance(String id, String host) {
+        return new DefaultServiceInstance(id, "movie", host, 8080, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> details(Health health, String instanceId) {
+        return (Map<String, Object>) health.getDetails().get(instanceId);
+    }
+}
@@ -0,0 +1,187 @@
+package com.geborskimateusz.util.batch;
+
+import com.geborskimateusz.util.exceptions.PartialBatchException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Collects items submitted by concurrent callers into batches of at most {@code maxBatchSize} items,
+ * waiting at most {@code maxWait} after the first item of a batch, and hands each batch to the batch handler.
+ * <p>
+ * Every caller blocks until its own item is processed and gets its own outcome: when the batch handler fails,
+ * the items it did not process are handed one by one to the item handler, so the exception a caller sees is
+ * the one its item alone would have caused. A batch of a single item goes straight to the item handler.
+ */
+@Slf4j
+public class MicroBatcher<T> implements AutoCloseable {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Consumer<List<T>> batchHandler;
+    private final Consumer<T> itemHandler;
+
+    private final BlockingQueue<PendingItem<T>> queue = new LinkedBlockingQueue<>();
+    private final Object lifecycleLock = new Object();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public MicroBatcher(String name, int maxBatchSize, Duration maxWait,
+                        Consumer<List<T>> batchHandler, Consumer<T> itemHandler) {
+        if (maxBatchSize < 1) throw new IllegalArgumentException("Invalid maxBatchSize: " + maxBatchSize);
+
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.batchHandler = batchHandler;
+        this.itemHandler = itemHandler;
+
+        this.flusher = new Thread(this::run, name + "-batcher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Splits the items into runs of consecutive items with the same classification, keeping their order.
+     */
+    public static <T, K> List<List<T>> consecutiveRuns(List<T> items, Function<T, K> classifier) {
+        List<List<T>> runs = new ArrayList<>();
+        List<T> run = new ArrayList<>();
+        K runKey = null;
+
+        for (T item : items) {
+            K key = classifier.apply(item);
+            if (!run.isEmpty() && !Objects.equals(key, runKey)) {
+                runs.add(run);
+                run = new ArrayList<>();
+            }
+            run.add(item);
+            runKey = key;
+        }
+        if (!run.isEmpty()) runs.add(run);
+
+        return runs;
+    }
+
+    public void submitAndWait(T item) {
+        PendingItem<T> pendingItem = new PendingItem<>(item);
+
+        synchronized (lifecycleLock) {
+            if (!running) throw new IllegalStateException("Batcher " + name + " is closed");
+            queue.add(pendingItem);
+        }
+
+        try {
+            pendingItem.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for batcher " + name, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Stops accepting items and waits for the items already submitted to be processed.
+     */
+    @Override
+    public void close() {
+        synchronized (lifecycleLock) {
+            running = false;
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<PendingItem<T>> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingItem<T> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingItem<T> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException ex) {
+                log.warn("Batcher {} was interrupted, processes the remaining items one by one", name);
+                batch.forEach(this::processItem);
+                queue.forEach(this::processItem);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingItem<T>> batch) {
+        if (batch.size() == 1) {
+            processItem(batch.get(0));
+            return;
+        }
+
+        int processedCount;
+        try {
+            batchHandler.accept(batch.stream().map(pendingItem -> pendingItem.item).collect(Collectors.toList()));
+            processedCount = batch.size();
+        } catch (PartialBatchException ex) {
+            processedCount = Math.min(Math.max(ex.getProcessedCount(), 0), batch.size());
+            log.warn("Batch of {} items in {} failed after {} items, processes the rest one by one: {}",
+                    batch.size(), name, processedCount, String.valueOf(ex.getCause()));
+        } catch (RuntimeException ex) {
+            processedCount = 0;
+            log.warn("Batch of {} items in {} failed, processes them one by one: {}", batch.size(), name, ex.toString());
+        }
+
+        log.debug("Batch of {} items in {} processed {} items in bulk", batch.size(), name, processedCount);
+
+        batch.subList(0, processedCount).forEach(pendingItem -> pendingItem.result.complete(null));
+        batch.subList(processedCount, batch.size()).forEach(this::processItem);
+    }
+
+    private void processItem(PendingItem<T> pendingItem) {
+        try {
+            itemHandler.accept(pendingItem.item);
+            pendingItem.result.complete(null);
+        } catch (Throwable ex) {
+            pendingItem.result.completeExceptionally(ex);
+        }
+    }
+
+    private static class PendingItem<T> {
+        private final T item;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private PendingItem(T item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.geborskimateusz.util.concurrent;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on a fixed number of lanes, each a worker thread with a bounded queue, choosing the lane by the hash of the task's key.
+ * <p>
+ * Tasks with the same key therefore run one after the other in the order they were submitted, while tasks with
+ * different keys run concurrently on different lanes. A busy key only holds up the keys that share its lane,
+ * and submitting blocks only while the key's lane is full. The queue depth of every lane is reported
+ * by the {@value #QUEUE_DEPTH_METRIC} gauge, tagged with the name and the lane.
+ */
+@Slf4j
+public class KeyedLanes<K> implements AutoCloseable {
+
+    public static final String QUEUE_DEPTH_METRIC = "lanes.queue.depth";
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final String name;
+    private final List<BlockingQueue<Runnable>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public KeyedLanes(String name, int laneCount, int laneCapacity, MeterRegistry meterRegistry) {
+        if (laneCount < 1) throw new IllegalArgumentException("Invalid laneCount: " + laneCount);
+        if (laneCapacity < 1) throw new IllegalArgumentException("Invalid laneCapacity: " + laneCapacity);
+
+        this.name = name;
+
+        for (int lane = 0; lane < laneCount; lane++) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(laneCapacity);
+            queues.add(queue);
+
+            Gauge.builder(QUEUE_DEPTH_METRIC, queue, BlockingQueue::size)
+                    .description("Tasks waiting in the lane")
+                    .tag("name", name)
+                    .tag("lane", String.valueOf(lane))
+                    .register(meterRegistry);
+
+            Thread worker = new Thread(() -> run(queue), name + "-lane-" + lane);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Blocks while the key's lane is full.
+     */
+    public void submit(K key, Runnable task) throws InterruptedException {
+        if (!running) throw new IllegalStateException("Lanes " + name + " are closed");
+
+        queues.get(laneOf(key)).put(task);
+    }
+
+    public int laneOf(K key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), queues.size());
+    }
+
+    public int queueDepth(int lane) {
+        return queues.get(lane).size();
+    }
+
+    /**
+     * Stops accepting tasks and waits for the tasks already submitted to run.
+     */
+    @Override
+    public void close() {
+        running = false;
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void run(BlockingQueue<Runnable> queue) {
+        while (running || !queue.isEmpty()) {
+            try {
+                Runnable task = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (task != null) task.run();
+            } catch (InterruptedException ex) {
+                log.warn("A lane of {} was interrupted with {} tasks waiting", name, queue.size());
+                return;
+            } catch (RuntimeException ex) {
+                log.error("A task in a lane of {} failed", name, ex);
+            }
+        }
+    }
+}
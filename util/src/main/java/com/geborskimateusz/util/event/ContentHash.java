@@ -0,0 +1,39 @@
+package com.geborskimateusz.util.event;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * SHA-256 of an entity's stored fields, kept with the entity so an upsert can tell whether its payload changed
+ * without comparing field by field.
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+    }
+
+    /**
+     * Fields are length prefixed, so null, "" and values containing separators hash differently.
+     */
+    public static String of(Object... fields) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object field : fields) {
+                if (field == null) {
+                    digest.update((byte) 0);
+                } else {
+                    byte[] bytes = field.toString().getBytes(StandardCharsets.UTF_8);
+                    digest.update((byte) 1);
+                    digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) ':');
+                    digest.update(bytes);
+                }
+            }
+            return Base64.getEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
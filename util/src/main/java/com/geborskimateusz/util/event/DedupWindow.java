@@ -0,0 +1,78 @@
+package com.geborskimateusz.util.event;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the ids of the most recently processed events, at most maxSize of them and each for at most ttl,
+ * so redelivered events can be acknowledged without processing them again.
+ * <p>
+ * Ids are added once their event is processed, an event that failed is processed again when redelivered.
+ * Events without an id, e.g. from producers that do not set one yet, are never considered duplicates.
+ */
+public class DedupWindow {
+
+    private final int maxSize;
+    private final Duration ttl;
+    private final Clock clock;
+
+    private final LinkedHashMap<String, Instant> processedAt = new LinkedHashMap<>();
+    private long duplicates = 0;
+
+    public DedupWindow(int maxSize, Duration ttl) {
+        this(maxSize, ttl, Clock.systemUTC());
+    }
+
+    DedupWindow(int maxSize, Duration ttl, Clock clock) {
+        if (maxSize < 1) throw new IllegalArgumentException("Invalid maxSize: " + maxSize);
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the event was processed within the window
+     */
+    public synchronized boolean isDuplicate(String eventId) {
+        if (eventId == null) return false;
+
+        evictExpired();
+        if (processedAt.containsKey(eventId)) {
+            duplicates++;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void processed(String eventId) {
+        if (eventId == null) return;
+
+        processedAt.remove(eventId);
+        processedAt.put(eventId, clock.instant());
+        if (processedAt.size() > maxSize) {
+            Iterator<String> oldest = processedAt.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return processedAt.size();
+    }
+
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    private void evictExpired() {
+        Instant expiredBefore = clock.instant().minus(ttl);
+        Iterator<Map.Entry<String, Instant>> entries = processedAt.entrySet().iterator();
+        while (entries.hasNext() && entries.next().getValue().isBefore(expiredBefore)) {
+            entries.remove();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.geborskimateusz.util.event;
+
+import com.geborskimateusz.api.event.EventContentType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.annotation.StreamMessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+
+/**
+ * Events are read in the content type they were sent with, Smile as well as JSON, see {@link EventContentType}.
+ * <p>
+ * Events of a schema version newer than {@link EventContentType#SCHEMA_VERSION} are rejected,
+ * unless app.event-schema.accept-newer-versions is set by a consumer that does not bind them to the api classes.
+ */
+@Configuration
+public class EventMessagingConfig {
+
+    @Bean
+    @StreamMessageConverter
+    public MessageConverter smileMessageConverter(@Value("${app.event-schema.accept-newer-versions:false}") boolean acceptNewerVersions) {
+        int schemaVersion = acceptNewerVersions ? Integer.MAX_VALUE : EventContentType.SCHEMA_VERSION;
+        return new SmileMessageConverter(EventContentType.SMILE, EventContentType.VERSION_PARAMETER, schemaVersion);
+    }
+}
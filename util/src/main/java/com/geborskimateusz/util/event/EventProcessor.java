@@ -0,0 +1,188 @@
+package com.geborskimateusz.util.event;
+
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.util.batch.MicroBatcher;
+import com.geborskimateusz.util.concurrent.KeyedLanes;
+import com.geborskimateusz.util.exceptions.EventProcessingException;
+import com.geborskimateusz.util.exceptions.PartialBatchException;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Processes the events of a core service's input binding, see {@link EventProcessorFactory}. The service supplies
+ * how to process one event and how to process a run of consecutive events of the same type at once.
+ * <p>
+ * With manual acknowledgement (RabbitMQ acknowledgeMode: MANUAL) events are handed to app.event-processing.lanes
+ * lanes by their key, the movieId, see {@link KeyedLanes}, so they are processed in order per movieId and concurrently
+ * for different movies. Each message is acknowledged once its event is processed; failed events are retried
+ * with the binding's back off settings and then rejected, which routes them to the dead letter queue.
+ * With app.event-batch.enabled the events of the lanes are collected into batches, see {@link MicroBatcher}.
+ * A lane waits for its event's batch before it takes its next event, so a batch holds at most one event per lane
+ * and the events of a movie still reach the database in the order they were received.
+ * <p>
+ * Otherwise the binder acknowledges and retries, and the consumer thread waits for its event. With
+ * app.event-batch.enabled the events received by the concurrent consumer threads are then collected
+ * into batches. Each consumer thread still waits for and fails with its own event, so the binder's retries
+ * and dead letter queue work per event exactly as without batching. Concurrent consumer threads do not keep
+ * the order of the events though, a DELETE may reach the batcher before the CREATE of the same movie.
+ * <p>
+ * Either way, an event whose eventId was processed within the {@link DedupWindow} is acknowledged
+ * without processing it again, so redeliveries after a broker failover or a lost acknowledgement
+ * do not reach the database.
+ */
+@Slf4j
+public class EventProcessor<T> implements AutoCloseable {
+
+    private final Function<Event<Integer, T>, Mono<Void>> eventHandler;
+    private final Function<List<Event<Integer, T>>, Mono<Void>> runHandler;
+    private final MicroBatcher<Event<Integer, T>> batcher;
+    private final KeyedLanes<Integer> lanes;
+    private final DedupWindow dedupWindow;
+
+    private final int maxAttempts;
+    private final Duration backOffInitialInterval;
+    private final Duration backOffMaxInterval;
+
+    EventProcessor(String name,
+                   Function<Event<Integer, T>, Mono<Void>> eventHandler,
+                   Function<List<Event<Integer, T>>, Mono<Void>> runHandler,
+                   boolean batchEnabled, int maxBatchSize, Duration maxWait,
+                   KeyedLanes<Integer> lanes,
+                   DedupWindow dedupWindow,
+                   int maxAttempts, Duration backOffInitialInterval, Duration backOffMaxInterval) {
+
+        this.eventHandler = eventHandler;
+        this.runHandler = runHandler;
+        this.batcher = batchEnabled
+                ? new MicroBatcher<>(name, maxBatchSize, maxWait, this::processBatch, event -> processEvent(event).block())
+                : null;
+        this.lanes = lanes;
+        this.dedupWindow = dedupWindow;
+        this.maxAttempts = maxAttempts;
+        this.backOffInitialInterval = backOffInitialInterval;
+        this.backOffMaxInterval = backOffMaxInterval;
+    }
+
+    /**
+     * @param channel     the RabbitMQ channel of a manually acknowledged message, else null
+     * @param deliveryTag the delivery tag of a manually acknowledged message, else null
+     */
+    public void process(Event<Integer, T> event, Channel channel, Long deliveryTag) {
+        if (channel != null && deliveryTag != null) {
+            processAsync(event, channel, deliveryTag);
+        } else if (isDuplicate(event)) {
+            return;
+        } else if (batcher != null) {
+            batcher.submitAndWait(event);
+        } else {
+            processEvent(event).block();
+        }
+    }
+
+    /**
+     * Waits for the events already received to be processed.
+     */
+    @Override
+    public void close() {
+        lanes.close();
+        if (batcher != null) batcher.close();
+    }
+
+    private void processAsync(Event<Integer, T> event, Channel channel, long deliveryTag) {
+        Integer key = event.getKey();
+
+        try {
+            lanes.submit(key, () -> processInLane(event, channel, deliveryTag));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessingException("Interrupted while waiting to process event for movieId: " + key, ex);
+        }
+    }
+
+    private void processInLane(Event<Integer, T> event, Channel channel, long deliveryTag) {
+        // Checked in the event's lane, a redelivery waits for its original to be processed
+        if (isDuplicate(event)) {
+            acknowledge(channel, deliveryTag);
+            return;
+        }
+
+        Mono<Void> processing = batcher != null
+                ? Mono.fromRunnable(() -> batcher.submitAndWait(event))
+                : processEvent(event);
+
+        try {
+            processing
+                    .retryBackoff(maxAttempts - 1, backOffInitialInterval, backOffMaxInterval)
+                    .block();
+        } catch (RuntimeException ex) {
+            reject(channel, deliveryTag, event.getKey(), ex);
+            return;
+        }
+
+        acknowledge(channel, deliveryTag);
+    }
+
+    private boolean isDuplicate(Event<Integer, ?> event) {
+        if (dedupWindow.isDuplicate(event.getEventId())) {
+            log.info("Skips event {} for movieId: {}, it was already processed", event.getEventId(), event.getKey());
+            return true;
+        }
+        return false;
+    }
+
+    private void acknowledge(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, false);
+        } catch (IOException ex) {
+            log.error("Failed to acknowledge message {}, it will be redelivered: {}", deliveryTag, ex.toString());
+        }
+    }
+
+    private void reject(Channel channel, long deliveryTag, Integer key, Throwable error) {
+        log.warn("Event for movieId: {} failed after {} attempts, rejects it to the dead letter queue", key, maxAttempts, error);
+
+        try {
+            channel.basicNack(deliveryTag, false, false);
+        } catch (IOException ex) {
+            log.error("Failed to reject message {}, it will be redelivered: {}", deliveryTag, ex.toString());
+        }
+    }
+
+    private Mono<Void> processEvent(Event<Integer, T> event) {
+        return Mono.defer(() -> {
+            log.info("Process message created at {}...", event.getEventCreatedAt());
+            return eventHandler.apply(event);
+        }).doOnSuccess(done -> {
+            dedupWindow.processed(event.getEventId());
+            log.info("Message processing done!");
+        });
+    }
+
+    /**
+     * Hands each run of consecutive events of the same type to the run handler, in order.
+     */
+    private void processBatch(List<Event<Integer, T>> events) {
+        log.info("Process batch of {} messages...", events.size());
+
+        int processedCount = 0;
+        for (List<Event<Integer, T>> run : MicroBatcher.consecutiveRuns(events, Event::getEventType)) {
+            try {
+                runHandler.apply(run).block();
+            } catch (PartialBatchException ex) {
+                throw new PartialBatchException(processedCount + ex.getProcessedCount(), ex.getCause());
+            } catch (RuntimeException ex) {
+                throw new PartialBatchException(processedCount, ex);
+            }
+            run.forEach(event -> dedupWindow.processed(event.getEventId()));
+            processedCount += run.size();
+        }
+
+        log.info("Batch processing done!");
+    }
+}
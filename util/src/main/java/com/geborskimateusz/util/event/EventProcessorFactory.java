@@ -0,0 +1,86 @@
+package com.geborskimateusz.util.event;
+
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.util.concurrent.KeyedLanes;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Creates the {@link EventProcessor} of a core service's input binding from the app.event-batch,
+ * app.event-processing and app.event-dedup settings and the binding's retry settings.
+ */
+@Slf4j
+@Component
+public class EventProcessorFactory {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final boolean batchEnabled;
+    private final int maxBatchSize;
+    private final long maxWaitMs;
+
+    private final int laneCount;
+    private final int laneCapacity;
+
+    private final int dedupMaxSize;
+    private final long dedupTtlSeconds;
+
+    private final int maxAttempts;
+    private final long backOffInitialInterval;
+    private final long backOffMaxInterval;
+
+    public EventProcessorFactory(
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${app.event-batch.enabled:false}") boolean batchEnabled,
+            @Value("${app.event-batch.max-size:100}") int maxBatchSize,
+            @Value("${app.event-batch.max-wait-ms:20}") long maxWaitMs,
+            @Value("${app.event-processing.lanes:16}") int laneCount,
+            @Value("${app.event-processing.lane-capacity:16}") int laneCapacity,
+            @Value("${app.event-dedup.max-size:10000}") int dedupMaxSize,
+            @Value("${app.event-dedup.ttl-seconds:600}") long dedupTtlSeconds,
+            @Value("${spring.cloud.stream.bindings.input.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.input.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+            @Value("${spring.cloud.stream.bindings.input.consumer.backOffMaxInterval:10000}") long backOffMaxInterval) {
+
+        this.meterRegistry = meterRegistry;
+        this.batchEnabled = batchEnabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMs = maxWaitMs;
+        this.laneCount = laneCount;
+        this.laneCapacity = laneCapacity;
+        this.dedupMaxSize = dedupMaxSize;
+        this.dedupTtlSeconds = dedupTtlSeconds;
+        this.maxAttempts = maxAttempts;
+        this.backOffInitialInterval = backOffInitialInterval;
+        this.backOffMaxInterval = backOffMaxInterval;
+    }
+
+    /**
+     * @param name         names the processor's batches and lanes, e.g. "movies"
+     * @param eventHandler processes one event
+     * @param runHandler   processes a run of consecutive events of the same type from one batch
+     */
+    public <T> EventProcessor<T> create(String name,
+                                        Function<Event<Integer, T>, Mono<Void>> eventHandler,
+                                        Function<List<Event<Integer, T>>, Mono<Void>> runHandler) {
+
+        log.info("Event batching enabled: {}, maxBatchSize: {}, maxWaitMs: {}", batchEnabled, maxBatchSize, maxWaitMs);
+        log.info("Event deduplication maxSize: {}, ttlSeconds: {}", dedupMaxSize, dedupTtlSeconds);
+        log.info("Asynchronous event processing lanes: {}, laneCapacity: {}, maxAttempts: {}", laneCount, laneCapacity, maxAttempts);
+
+        return new EventProcessor<>(name, eventHandler, runHandler,
+                batchEnabled, maxBatchSize, Duration.ofMillis(maxWaitMs),
+                new KeyedLanes<>(name, laneCount, laneCapacity, meterRegistry.getIfAvailable(SimpleMeterRegistry::new)),
+                new DedupWindow(dedupMaxSize, Duration.ofSeconds(dedupTtlSeconds)),
+                maxAttempts, Duration.ofMillis(backOffInitialInterval), Duration.ofMillis(backOffMaxInterval));
+    }
+}
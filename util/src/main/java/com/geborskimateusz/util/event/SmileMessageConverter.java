@@ -0,0 +1,49 @@
+package com.geborskimateusz.util.event;
+
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+
+/**
+ * Converts message payloads from and to Smile, the binary form of JSON, for messages of the given content type.
+ * <p>
+ * The version parameter of a message's content type is the schema version it was written with;
+ * messages of a version newer than schemaVersion are rejected, since their fields may have changed meaning.
+ * Messages of other content types are left to the other converters.
+ */
+public class SmileMessageConverter extends MappingJackson2MessageConverter {
+
+    private final String versionParameter;
+    private final int schemaVersion;
+
+    public SmileMessageConverter(String contentType, String versionParameter, int schemaVersion) {
+        super(MimeType.valueOf(contentType));
+        this.versionParameter = versionParameter;
+        this.schemaVersion = schemaVersion;
+
+        setObjectMapper(Jackson2ObjectMapperBuilder.smile().build());
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        MimeType contentType = getMimeType(message.getHeaders());
+        String version = contentType == null ? null : contentType.getParameter(versionParameter);
+
+        if (version != null && parseVersion(version) > schemaVersion) {
+            throw new MessageConversionException(message, "Unsupported schema version " + version + ", supports up to " + schemaVersion);
+        }
+
+        return super.convertFromInternal(message, targetClass, conversionHint);
+    }
+
+    private int parseVersion(String version) {
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException ex) {
+            return Integer.MAX_VALUE;
+        }
+    }
+}
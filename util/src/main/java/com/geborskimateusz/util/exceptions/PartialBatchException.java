@@ -0,0 +1,19 @@
+package com.geborskimateusz.util.exceptions;
+
+/**
+ * Thrown by a batch handler when only the first {@code processedCount} items of a batch were processed
+ * before it failed, e.g. an ordered MongoDB insertMany that stopped on a duplicate key.
+ */
+public class PartialBatchException extends RuntimeException {
+
+    private final int processedCount;
+
+    public PartialBatchException(int processedCount, Throwable cause) {
+        super("Batch failed after " + processedCount + " processed items", cause);
+        this.processedCount = processedCount;
+    }
+
+    public int getProcessedCount() {
+        return processedCount;
+    }
+}
@@ -0,0 +1,17 @@
+package com.geborskimateusz.util.http;
+
+/**
+ * Response headers the services and the gateway agree on.
+ */
+public final class ResponseHeaders {
+
+    /**
+     * The parts, e.g. "reviews", an aggregate was answered without because their backend failed.
+     * Such a response must not be cached, it would outlive the outage.
+     * A header of its own, because every response already carries Spring Security's Cache-Control: no-store.
+     */
+    public static final String MISSING_PARTS = "X-Missing-Parts";
+
+    private ResponseHeaders() {
+    }
+}
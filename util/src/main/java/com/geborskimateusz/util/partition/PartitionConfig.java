@@ -0,0 +1,58 @@
+package com.geborskimateusz.util.partition;
+
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.stream.binder.BinderFactory;
+import org.springframework.cloud.stream.binding.BindingService;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * With app.partition-claims.enabled the running instances of a core service share the partitions of its input binding
+ * between them through the Eureka registry, see {@link PartitionCoordinator}. The lag of a partition is the number
+ * of messages waiting in its RabbitMQ queue.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.partition-claims.enabled", havingValue = "true")
+public class PartitionConfig {
+
+    @Bean
+    public PartitionCoordinator partitionCoordinator(
+            Sink sink,
+            DiscoveryClient discoveryClient,
+            Registration registration,
+            BindingService bindingService,
+            BinderFactory binderFactory,
+            AmqpAdmin amqpAdmin,
+            @Value("${app.partition-claims.partition-count}") int partitionCount,
+            @Value("${app.partition-claims.interval-ms:5000}") long intervalMs) {
+
+        BindingServiceProperties properties = bindingService.getBindingServiceProperties();
+        String queuePrefix = properties.getBindingDestination(Sink.INPUT) + "." + properties.getGroup(Sink.INPUT) + "-";
+
+        return new PartitionCoordinator(Sink.INPUT, sink.input(), partitionCount, Duration.ofMillis(intervalMs),
+                discoveryClient, registration, bindingService, binderFactory,
+                partition -> messageCount(amqpAdmin, queuePrefix + partition));
+    }
+
+    @Bean
+    public PartitionsEndpoint partitionsEndpoint(PartitionCoordinator partitionCoordinator) {
+        return new PartitionsEndpoint(partitionCoordinator);
+    }
+
+    private static long messageCount(AmqpAdmin amqpAdmin, String queue) {
+        Properties properties = amqpAdmin.getQueueProperties(queue);
+        if (properties == null) throw new IllegalStateException("Queue " + queue + " does not exist");
+
+        return ((Number) properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT)).longValue();
+    }
+}
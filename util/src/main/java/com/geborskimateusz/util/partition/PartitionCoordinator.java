@@ -0,0 +1,223 @@
+package com.geborskimateusz.util.partition;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.stream.binder.Binder;
+import org.springframework.cloud.stream.binder.BinderFactory;
+import org.springframework.cloud.stream.binder.Binding;
+import org.springframework.cloud.stream.binder.ConsumerProperties;
+import org.springframework.cloud.stream.binder.ExtendedConsumerProperties;
+import org.springframework.cloud.stream.binder.ExtendedPropertiesBinder;
+import org.springframework.cloud.stream.binding.BindingService;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.MessageChannel;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.IntToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Shares the partitions of a partitioned input binding between the running instances of a service,
+ * instead of configuring every instance with its own instanceIndex and the instanceCount.
+ * <p>
+ * Every instance reads the instances of its service from the discovery registry, sorts them by instance id and
+ * claims the partitions p with p % instances == its position, so the instances agree on the owners without
+ * talking to each other. The claim is checked every interval: partitions given up are unbound and partitions
+ * claimed are bound, each by a consumer binding of its own feeding the binding's channel. When started,
+ * the coordinator takes over from the binding created from the configuration.
+ * <p>
+ * The registry is eventually consistent, so while instances come and go a partition may be consumed by two
+ * instances or by none until both have seen the change, about one registry fetch interval. Messages the
+ * previous owner did not acknowledge yet are redelivered to the new owner.
+ */
+@Slf4j
+public class PartitionCoordinator implements SmartLifecycle {
+
+    private final String bindingName;
+    private final MessageChannel channel;
+    private final int partitionCount;
+    private final Duration interval;
+    private final DiscoveryClient discoveryClient;
+    private final Registration registration;
+    private final BindingService bindingService;
+    private final BinderFactory binderFactory;
+    private final IntToLongFunction messagesWaiting;
+    private final Clock clock;
+
+    private final Map<Integer, Binding<MessageChannel>> bindings = new TreeMap<>();
+    private volatile List<String> members = Collections.emptyList();
+    private volatile Instant rebalancedAt;
+    private volatile Disposable polling;
+
+    public PartitionCoordinator(String bindingName, MessageChannel channel, int partitionCount, Duration interval,
+                                DiscoveryClient discoveryClient, Registration registration,
+                                BindingService bindingService, BinderFactory binderFactory, IntToLongFunction messagesWaiting) {
+        this(bindingName, channel, partitionCount, interval, discoveryClient, registration, bindingService, binderFactory, messagesWaiting, Clock.systemUTC());
+    }
+
+    PartitionCoordinator(String bindingName, MessageChannel channel, int partitionCount, Duration interval,
+                         DiscoveryClient discoveryClient, Registration registration,
+                         BindingService bindingService, BinderFactory binderFactory, IntToLongFunction messagesWaiting, Clock clock) {
+        if (partitionCount < 1) throw new IllegalArgumentException("Invalid partitionCount: " + partitionCount);
+
+        this.bindingName = bindingName;
+        this.channel = channel;
+        this.partitionCount = partitionCount;
+        this.interval = interval;
+        this.discoveryClient = discoveryClient;
+        this.registration = registration;
+        this.bindingService = bindingService;
+        this.binderFactory = binderFactory;
+        this.messagesWaiting = messagesWaiting;
+        this.clock = clock;
+    }
+
+    /**
+     * The partitions p with p % members == the position of self among the sorted members.
+     */
+    public static SortedSet<Integer> claim(List<String> members, String self, int partitionCount) {
+        List<String> sorted = Stream.concat(members.stream(), Stream.of(self)).distinct().sorted().collect(Collectors.toList());
+        int position = sorted.indexOf(self);
+
+        SortedSet<Integer> claimed = new TreeSet<>();
+        for (int partition = position; partition < partitionCount; partition += sorted.size()) {
+            claimed.add(partition);
+        }
+        return claimed;
+    }
+
+    /**
+     * Started after the input bindings, see {@link #getPhase()}, and stopped before them.
+     */
+    @Override
+    public synchronized void start() {
+        log.info("Takes over binding {} and shares its {} partitions with the other instances of {}", bindingName, partitionCount, registration.getServiceId());
+
+        bindingService.unbindConsumers(bindingName);
+        rebalance();
+
+        polling = Flux.interval(interval, interval)
+                .onBackpressureDrop()
+                .subscribe(tick -> {
+                    try {
+                        rebalance();
+                    } catch (RuntimeException ex) {
+                        log.warn("Rebalancing the partitions of {} failed, keeps partitions {}: {}", bindingName, ownedPartitions(), ex.toString());
+                    }
+                });
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (polling != null) polling.dispose();
+        polling = null;
+
+        new ArrayList<>(bindings.keySet()).forEach(this::release);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return polling != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    public synchronized SortedSet<Integer> ownedPartitions() {
+        return new TreeSet<>(bindings.keySet());
+    }
+
+    /**
+     * The owned partitions with the messages waiting in each, and the members the claim was computed from.
+     */
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("instanceId", instanceId(registration));
+        report.put("members", members);
+        report.put("partitionCount", partitionCount);
+        report.put("rebalancedAt", rebalancedAt);
+
+        Map<Integer, Object> partitions = new LinkedHashMap<>();
+        ownedPartitions().forEach(partition -> partitions.put(partition, lag(partition)));
+        report.put("partitions", partitions);
+        return report;
+    }
+
+    synchronized void rebalance() {
+        List<String> current = discoveryClient.getInstances(registration.getServiceId()).stream()
+                .map(PartitionCoordinator::instanceId)
+                .sorted()
+                .collect(Collectors.toList());
+        SortedSet<Integer> claimed = claim(current, instanceId(registration), partitionCount);
+        members = current;
+
+        if (claimed.equals(bindings.keySet())) return;
+
+        log.info("Instances of {}: {}, claims partitions {} of {}", registration.getServiceId(), current, claimed, partitionCount);
+        new ArrayList<>(bindings.keySet()).stream().filter(partition -> !claimed.contains(partition)).forEach(this::release);
+        claimed.stream().filter(partition -> !bindings.containsKey(partition)).forEach(this::bind);
+        rebalancedAt = clock.instant();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bind(int partition) {
+        BindingServiceProperties properties = bindingService.getBindingServiceProperties();
+        Object configuredBinder = binderFactory.getBinder(properties.getBinder(bindingName), MessageChannel.class);
+        Binder<MessageChannel, ConsumerProperties, ?> binder = (Binder<MessageChannel, ConsumerProperties, ?>) configuredBinder;
+
+        // Keeps the binder specific settings of the binding, like the acknowledge mode and dead letter queue of RabbitMQ
+        ConsumerProperties consumerProperties = configuredBinder instanceof ExtendedPropertiesBinder
+                ? new ExtendedConsumerProperties<>(((ExtendedPropertiesBinder<?, ?, ?>) configuredBinder).getExtendedConsumerProperties(bindingName))
+                : new ConsumerProperties();
+        BeanUtils.copyProperties(properties.getConsumerProperties(bindingName), consumerProperties);
+        consumerProperties.setPartitioned(true);
+        consumerProperties.setInstanceCount(partitionCount);
+        consumerProperties.setInstanceIndex(partition);
+
+        log.info("Binds partition {} of {}", partition, bindingName);
+        bindings.put(partition, bindingService.doBindConsumer(channel, bindingName, binder, consumerProperties, properties.getBindingDestination(bindingName)));
+    }
+
+    private void release(int partition) {
+        log.info("Releases partition {} of {}", partition, bindingName);
+
+        try {
+            bindings.remove(partition).unbind();
+        } catch (RuntimeException ex) {
+            log.warn("Failed to unbind partition {} of {}: {}", partition, bindingName, ex.toString());
+        }
+    }
+
+    private Map<String, Object> lag(int partition) {
+        Map<String, Object> lag = new LinkedHashMap<>();
+        try {
+            lag.put("messagesWaiting", messagesWaiting.applyAsLong(partition));
+        } catch (RuntimeException ex) {
+            lag.put("error", ex.toString());
+        }
+        return lag;
+    }
+
+    private static String instanceId(ServiceInstance instance) {
+        return instance.getInstanceId() != null ? instance.getInstanceId() : instance.getUri().toString();
+    }
+}
@@ -0,0 +1,24 @@
+package com.geborskimateusz.util.partition;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.Map;
+
+/**
+ * Reports the partitions this instance owns and their lag at /actuator/partitions, see {@link PartitionCoordinator#report()}.
+ */
+@Endpoint(id = "partitions")
+public class PartitionsEndpoint {
+
+    private final PartitionCoordinator coordinator;
+
+    public PartitionsEndpoint(PartitionCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    @ReadOperation
+    public Map<String, Object> partitions() {
+        return coordinator.report();
+    }
+}
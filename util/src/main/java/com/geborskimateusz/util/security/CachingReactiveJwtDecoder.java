@@ -0,0 +1,128 @@
+package com.geborskimateusz.util.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers tokens that passed signature and claim verification, so a client sending the same token again
+ * does not pay for another RSA verification.
+ * <p>
+ * Tokens are keyed by a hash of the token, and a verified token is kept until it expires but no longer than
+ * max-ttl. Tokens that fail verification are never cached. The time spent verifying is recorded in the
+ * security.jwt.verification timer, the hit rate in the cache metrics of the jwt-tokens cache.
+ */
+@Slf4j
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+    public static final String CACHE_NAME = "jwt-tokens";
+    public static final String VERIFICATION_METRIC = "security.jwt.verification";
+
+    private final ReactiveJwtDecoder delegate;
+    private final Clock clock;
+    private final Cache<String, Jwt> verified;
+    private final Timer verification;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, long maxSize, Duration maxTtl, MeterRegistry meterRegistry) {
+        this(delegate, maxSize, maxTtl, meterRegistry, Clock.systemUTC());
+    }
+
+    CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, long maxSize, Duration maxTtl, MeterRegistry meterRegistry, Clock clock) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new UntilTokenExpires(maxTtl, clock))
+                .recordStats()
+                .build();
+        this.verification = Timer.builder(VERIFICATION_METRIC)
+                .description("Time spent verifying tokens that were not cached")
+                .register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, CACHE_NAME);
+
+        log.info("Created caching JWT decoder, maxSize: {}, maxTtl: {}s", maxSize, maxTtl.getSeconds());
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) {
+        String key = sha256(token);
+
+        Jwt cached = verified.getIfPresent(key);
+        if (cached != null && !isExpired(cached)) {
+            return Mono.just(cached);
+        }
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+
+            return delegate.decode(token)
+                    .doOnNext(jwt -> {
+                        verification.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        verified.put(key, jwt);
+                    });
+        });
+    }
+
+    /**
+     * A collision would let a forged token pass as a verified one, so the key has to be a cryptographic hash.
+     */
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private boolean isExpired(Jwt jwt) {
+        return jwt.getExpiresAt() != null && !clock.instant().isBefore(jwt.getExpiresAt());
+    }
+
+    private static class UntilTokenExpires implements Expiry<String, Jwt> {
+
+        private final Duration maxTtl;
+        private final Clock clock;
+
+        UntilTokenExpires(Duration maxTtl, Clock clock) {
+            this.maxTtl = maxTtl;
+            this.clock = clock;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+            Instant expiresAt = jwt.getExpiresAt();
+            if (expiresAt == null) return maxTtl.toNanos();
+
+            Duration untilExpired = Duration.between(clock.instant(), expiresAt);
+            return Math.max(0, Math.min(untilExpired.toNanos(), maxTtl.toNanos()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, jwt, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.geborskimateusz.util.security;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Signs and verifies the internal identity header the gateway forwards instead of the JWT it already verified,
+ * so the services behind it only pay for an HMAC instead of an RSA verification.
+ * <p>
+ * The header is base64url(subject).base64url(space separated scopes).expiry in epoch seconds.base64url(HMAC-SHA256),
+ * with the HMAC over everything before the last dot. Gateway and services share the secret through the config server.
+ */
+@Slf4j
+public class IdentityHeaderCodec {
+
+    public static final String HEADER = "X-Internal-Identity";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Clock clock;
+
+    public IdentityHeaderCodec(String secret) {
+        this(secret, Clock.systemUTC());
+    }
+
+    IdentityHeaderCodec(String secret, Clock clock) {
+        if (secret == null || secret.length() < 32) {
+            throw new IllegalArgumentException("The identity header secret must be at least 32 characters");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.clock = clock;
+    }
+
+    public String encode(TrustedIdentity identity) {
+        String payload = base64(identity.getSubject())
+                + "." + base64(String.join(" ", identity.getScopes()))
+                + "." + identity.getExpiresAt().getEpochSecond();
+
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * @return the identity, or null if the header is malformed, not signed with the shared secret or expired
+     */
+    public TrustedIdentity decode(String header) {
+        int lastDot = header.lastIndexOf('.');
+        if (lastDot < 0) return null;
+
+        String payload = header.substring(0, lastDot);
+
+        try {
+            byte[] signature = DECODER.decode(header.substring(lastDot + 1));
+            if (!MessageDigest.isEqual(sign(payload), signature)) {
+                log.debug("Rejects identity header with an invalid signature");
+                return null;
+            }
+
+            String[] fields = payload.split("\\.", -1);
+            if (fields.length != 3) return null;
+
+            Instant expiresAt = Instant.ofEpochSecond(Long.parseLong(fields[2]));
+            if (!clock.instant().isBefore(expiresAt)) {
+                log.debug("Rejects identity header that expired at {}", expiresAt);
+                return null;
+            }
+
+            String scopes = unbase64(fields[1]);
+            return new TrustedIdentity(
+                    unbase64(fields[0]),
+                    scopes.isEmpty() ? Collections.emptyList() : Arrays.asList(scopes.split(" ")),
+                    expiresAt);
+
+        } catch (IllegalArgumentException ex) {
+            log.debug("Rejects malformed identity header: {}", ex.toString());
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to sign the identity header", ex);
+        }
+    }
+
+    private static String base64(String value) {
+        return ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String unbase64(String value) {
+        return new String(DECODER.decode(value), StandardCharsets.UTF_8);
+    }
+}
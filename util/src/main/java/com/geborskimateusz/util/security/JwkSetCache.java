@@ -0,0 +1,117 @@
+package com.geborskimateusz.util.security;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the JWK set of the authorization server in memory and refreshes it in the background,
+ * so verifying a token never waits for the key set to be fetched.
+ * <p>
+ * Only a token signed with a key that is not in the set, e.g. right after the authorization server rotated
+ * its keys, makes the request refresh the set, at most once per min-refresh-gap since the last refresh started.
+ * A failed background refresh does not count, so when the authorization server was not up yet at startup
+ * the first token refreshes the set right away instead of being rejected for a whole min-refresh-gap.
+ */
+@Slf4j
+public class JwkSetCache implements Disposable {
+
+    private final String jwkSetUri;
+    private final WebClient webClient;
+    private final long minRefreshGapNanos;
+
+    private final AtomicLong lastRefreshStarted;
+    private final Disposable refresher;
+
+    private volatile JWKSet jwkSet = new JWKSet();
+
+    public JwkSetCache(String jwkSetUri, Duration refreshInterval, Duration minRefreshGap, WebClient webClient) {
+        this.jwkSetUri = jwkSetUri;
+        this.webClient = webClient;
+        this.minRefreshGapNanos = minRefreshGap.toNanos();
+        this.lastRefreshStarted = new AtomicLong(System.nanoTime() - minRefreshGapNanos);
+
+        this.refresher = Flux.interval(Duration.ZERO, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.defer(() -> {
+                    long previousStarted = lastRefreshStarted.get();
+                    long started = System.nanoTime();
+                    lastRefreshStarted.set(started);
+
+                    return refresh().onErrorResume(ex -> {
+                        log.warn("Failed to refresh the JWK set from {}, keeps {} known keys: {}", jwkSetUri, jwkSet.getKeys().size(), ex.toString());
+                        lastRefreshStarted.compareAndSet(started, previousStarted);
+                        return Mono.empty();
+                    });
+                }))
+                .subscribe();
+
+        log.info("Created JWK set cache for {}, refreshInterval: {}s", jwkSetUri, refreshInterval.getSeconds());
+    }
+
+    /**
+     * The keys that may have signed the token, for NimbusReactiveJwtDecoder.withJwkSource.
+     */
+    public Flux<JWK> getKeys(SignedJWT jwt) {
+        JWKSelector selector = new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader()));
+
+        List<JWK> keys = selector.select(jwkSet);
+        if (!keys.isEmpty()) {
+            return Flux.fromIterable(keys);
+        }
+
+        long lastStarted = lastRefreshStarted.get();
+        if (System.nanoTime() - lastStarted < minRefreshGapNanos || !lastRefreshStarted.compareAndSet(lastStarted, System.nanoTime())) {
+            return Flux.empty();
+        }
+
+        log.info("No key with id {} in the JWK set, refreshes it", jwt.getHeader().getKeyID());
+        return refresh()
+                .onErrorResume(ex -> Mono.empty())
+                .thenMany(Flux.defer(() -> Flux.fromIterable(selector.select(jwkSet))));
+    }
+
+    public int size() {
+        return jwkSet.getKeys().size();
+    }
+
+    @Override
+    public void dispose() {
+        refresher.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return refresher.isDisposed();
+    }
+
+    private Mono<Void> refresh() {
+        return Mono.defer(() -> webClient.get().uri(jwkSetUri).retrieve().bodyToMono(String.class))
+                .map(this::parse)
+                .doOnNext(refreshed -> {
+                    log.debug("Refreshed the JWK set from {}, {} keys", jwkSetUri, refreshed.getKeys().size());
+                    jwkSet = refreshed;
+                })
+                .then();
+    }
+
+    private JWKSet parse(String body) {
+        try {
+            return JWKSet.parse(body);
+        } catch (ParseException ex) {
+            throw new IllegalStateException("Invalid JWK set from " + jwkSetUri, ex);
+        }
+    }
+}
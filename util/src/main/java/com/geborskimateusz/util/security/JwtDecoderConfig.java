@@ -0,0 +1,41 @@
+package com.geborskimateusz.util.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+
+/**
+ * Verifies tokens with keys held by a {@link JwkSetCache} and remembers verified tokens,
+ * replaces the decoder Spring Boot would create for the jwk-set-uri of a resource server.
+ */
+@Configuration
+@ConditionalOnClass(name = "org.springframework.security.oauth2.jwt.ReactiveJwtDecoder")
+@ConditionalOnProperty("spring.security.oauth2.resourceserver.jwt.jwk-set-uri")
+public class JwtDecoderConfig {
+
+    @Bean(destroyMethod = "dispose")
+    JwkSetCache jwkSetCache(
+            @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}") String jwkSetUri,
+            @Value("${app.jwt.jwk-set.refresh-interval-seconds:300}") long refreshIntervalSeconds,
+            @Value("${app.jwt.jwk-set.min-refresh-gap-seconds:10}") long minRefreshGapSeconds) {
+        return new JwkSetCache(jwkSetUri, Duration.ofSeconds(refreshIntervalSeconds), Duration.ofSeconds(minRefreshGapSeconds), WebClient.create());
+    }
+
+    @Bean
+    ReactiveJwtDecoder jwtDecoder(
+            JwkSetCache jwkSetCache,
+            MeterRegistry meterRegistry,
+            @Value("${app.jwt.cache.max-size:10000}") long maxSize,
+            @Value("${app.jwt.cache.max-ttl-seconds:300}") long maxTtlSeconds) {
+        ReactiveJwtDecoder verifier = NimbusReactiveJwtDecoder.withJwkSource(jwkSetCache::getKeys).build();
+        return new CachingReactiveJwtDecoder(verifier, maxSize, Duration.ofSeconds(maxTtlSeconds), meterRegistry);
+    }
+}
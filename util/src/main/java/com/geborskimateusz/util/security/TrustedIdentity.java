@@ -0,0 +1,27 @@
+package com.geborskimateusz.util.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The caller as verified by the gateway, see {@link IdentityHeaderCodec}.
+ */
+@Getter
+@AllArgsConstructor
+public class TrustedIdentity {
+    private final String subject;
+    private final List<String> scopes;
+    private final Instant expiresAt;
+
+    @Override
+    public String toString() {
+        return "TrustedIdentity{" +
+                "subject='" + subject + '\'' +
+                ", scopes=" + scopes +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
@@ -0,0 +1,157 @@
+package com.geborskimateusz.util.batch;
+
+import com.geborskimateusz.util.exceptions.PartialBatchException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTest {
+
+    List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+    List<String> items = Collections.synchronizedList(new ArrayList<>());
+
+    ExecutorService callers = Executors.newCachedThreadPool();
+    MicroBatcher<String> batcher;
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) batcher.close();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void flushesIncompleteBatchAfterMaxWait() throws Exception {
+        batcher = new MicroBatcher<>("test", 100, Duration.ofMillis(200), batches::add, items::add);
+
+        long start = System.nanoTime();
+        List<Future<?>> results = submitConcurrently("a", "b");
+        awaitAll(results);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(2, batches.stream().mapToInt(List::size).sum() + items.size());
+    }
+
+    @Test
+    void flushesFullBatchWithoutWaitingForMaxWait() throws Exception {
+        batcher = new MicroBatcher<>("test", 2, Duration.ofHours(1), batches::add, items::add);
+
+        awaitAll(submitConcurrently("a", "b"));
+
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertTrue(items.isEmpty());
+    }
+
+    @Test
+    void closeProcessesTheItemsAlreadySubmitted() throws Exception {
+        CountDownLatch firstItemStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstItem = new CountDownLatch(1);
+        batcher = new MicroBatcher<>("test", 100, Duration.ofMillis(10), batches::add, item -> {
+            if (item.equals("first")) {
+                firstItemStarted.countDown();
+                await(releaseFirstItem);
+            }
+            items.add(item);
+        });
+
+        Future<?> first = callers.submit(() -> batcher.submitAndWait("first"));
+        assertTrue(firstItemStarted.await(5, TimeUnit.SECONDS));
+        List<Future<?>> waiting = submitConcurrently("b", "c");
+        Thread.sleep(100);
+
+        Future<?> closed = callers.submit(batcher::close);
+        releaseFirstItem.countDown();
+        closed.get(5, TimeUnit.SECONDS);
+
+        first.get(5, TimeUnit.SECONDS);
+        awaitAll(waiting);
+        assertEquals(3, batches.stream().mapToInt(List::size).sum() + items.size());
+        assertThrows(IllegalStateException.class, () -> batcher.submitAndWait("late"));
+    }
+
+    @Test
+    void processesItemsOneByOneAfterFailedBatch() throws Exception {
+        batcher = new MicroBatcher<>("test", 3, Duration.ofHours(1),
+                batch -> {
+                    throw new IllegalStateException("batch failed");
+                },
+                failOn("bad"));
+
+        List<Future<?>> results = submitConcurrently("a", "bad", "c");
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> results.get(1).get(5, TimeUnit.SECONDS));
+        assertEquals("bad failed", failure.getCause().getMessage());
+        results.get(0).get(5, TimeUnit.SECONDS);
+        results.get(2).get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("a", "c"), sorted(items));
+    }
+
+    @Test
+    void processesOnlyTheRestOneByOneAfterPartiallyProcessedBatch() throws Exception {
+        batcher = new MicroBatcher<>("test", 3, Duration.ofHours(1),
+                batch -> {
+                    batches.add(batch);
+                    throw new PartialBatchException(1, new IllegalStateException("batch failed"));
+                },
+                items::add);
+
+        awaitAll(submitConcurrently("a", "b", "c"));
+
+        List<String> rest = new ArrayList<>(batches.get(0).subList(1, 3));
+        assertEquals(sorted(rest), sorted(items));
+    }
+
+    @Test
+    void splitsItemsIntoConsecutiveRuns() {
+        assertEquals(
+                Arrays.asList(Arrays.asList("a1", "a2"), Collections.singletonList("b1"), Collections.singletonList("a3")),
+                MicroBatcher.consecutiveRuns(Arrays.asList("a1", "a2", "b1", "a3"), item -> item.charAt(0)));
+    }
+
+    private List<Future<?>> submitConcurrently(String... values) {
+        List<Future<?>> results = new ArrayList<>();
+        for (String value : values) {
+            results.add(callers.submit(() -> batcher.submitAndWait(value)));
+        }
+        return results;
+    }
+
+    private void awaitAll(List<Future<?>> results) throws Exception {
+        for (Future<?> result : results) result.get(5, TimeUnit.SECONDS);
+    }
+
+    private Consumer<String> failOn(String value) {
+        return item -> {
+            if (item.equals(value)) throw new IllegalStateException(item + " failed");
+            items.add(item);
+        };
+    }
+
+    private List<String> sorted(List<String> values) {
+        List<String> copy = new ArrayList<>(values);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
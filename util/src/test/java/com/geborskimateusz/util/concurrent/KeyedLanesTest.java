@@ -0,0 +1,71 @@
+package com.geborskimateusz.util.concurrent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedLanesTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    KeyedLanes<Integer> lanes = new KeyedLanes<>("test", 4, 100, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        lanes.close();
+    }
+
+    @Test
+    void runsTasksOfAKeyInOrder() throws InterruptedException {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < 50; i++) {
+            int task = i;
+            lanes.submit(7, () -> order.add(task));
+        }
+        lanes.close();
+
+        assertEquals(50, order.size());
+        for (int i = 0; i < 50; i++) assertEquals(i, (int) order.get(i));
+    }
+
+    @Test
+    void busyKeyDoesNotHoldUpOtherLanes() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch otherRan = new CountDownLatch(1);
+        int otherKey = 1;
+        while (lanes.laneOf(otherKey) == lanes.laneOf(0)) otherKey++;
+
+        lanes.submit(0, () -> await(blocked));
+        lanes.submit(0, () -> { });
+        lanes.submit(otherKey, otherRan::countDown);
+
+        assertTrue(otherRan.await(5, TimeUnit.SECONDS));
+        assertEquals(1, lanes.queueDepth(lanes.laneOf(0)));
+        assertEquals(1, meterRegistry.get(KeyedLanes.QUEUE_DEPTH_METRIC).tag("lane", String.valueOf(lanes.laneOf(0))).gauge().value());
+
+        blocked.countDown();
+    }
+
+    @Test
+    void submitFailsOnceClosed() {
+        lanes.close();
+
+        assertThrows(IllegalStateException.class, () -> lanes.submit(1, () -> { }));
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.geborskimateusz.util.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DedupWindowTest {
+
+    MutableClock clock = new MutableClock(Instant.parse("2020-01-01T00:00:00Z"));
+
+    @Test
+    void detectsProcessedEventsOnly() {
+        DedupWindow window = new DedupWindow(10, Duration.ofMinutes(10), clock);
+
+        assertFalse(window.isDuplicate("1"));
+        window.processed("1");
+
+        assertTrue(window.isDuplicate("1"));
+        assertFalse(window.isDuplicate("2"));
+        assertFalse(window.isDuplicate(null));
+        assertEquals(1, window.getDuplicates());
+    }
+
+    @Test
+    void forgetsOldestBeyondMaxSize() {
+        DedupWindow window = new DedupWindow(2, Duration.ofMinutes(10), clock);
+
+        window.processed("1");
+        window.processed("2");
+        window.processed("3");
+
+        assertEquals(2, window.size());
+        assertFalse(window.isDuplicate("1"));
+        assertTrue(window.isDuplicate("3"));
+    }
+
+    @Test
+    void forgetsEventsAfterTtl() {
+        DedupWindow window = new DedupWindow(10, Duration.ofMinutes(10), clock);
+
+        window.processed("1");
+        clock.advance(Duration.ofMinutes(5));
+        window.processed("2");
+        clock.advance(Duration.ofMinutes(6));
+
+        assertFalse(window.isDuplicate("1"));
+        assertTrue(window.isDuplicate("2"));
+        assertEquals(1, window.size());
+    }
+
+    static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.geborskimateusz.util.event;
+
+import com.geborskimateusz.api.event.Event;
+import com.geborskimateusz.util.concurrent.KeyedLanes;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.geborskimateusz.api.event.Event.Type.CREATE;
+import static com.geborskimateusz.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EventProcessorTest {
+
+    List<Event<Integer, String>> processed = Collections.synchronizedList(new ArrayList<>());
+    List<List<Event<Integer, String>>> runs = Collections.synchronizedList(new ArrayList<>());
+    List<Event<Integer, String>> handled = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger attempts = new AtomicInteger();
+
+    Channel channel = mock(Channel.class);
+
+    EventProcessor<String> processor;
+
+    @AfterEach
+    void tearDown() {
+        if (processor != null) processor.close();
+    }
+
+    @Test
+    void acknowledgesProcessedEventsAndSkipsRedeliveries() throws Exception {
+        processor = processor(false);
+        Event<Integer, String> event = new Event<>(CREATE, 1, "movie");
+
+        processor.process(event, channel, 1L);
+        processor.process(event, channel, 2L);
+
+        verify(channel, timeout(5000)).basicAck(1L, false);
+        verify(channel, timeout(5000)).basicAck(2L, false);
+        assertEquals(1, processed.size());
+    }
+
+    @Test
+    void processesEventsOfAMovieInOrder() throws Exception {
+        processor = processor(false);
+        List<Event<Integer, String>> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) events.add(new Event<>(i % 2 == 0 ? CREATE : DELETE, i % 4, "movie"));
+
+        for (int i = 0; i < events.size(); i++) processor.process(events.get(i), channel, (long) i);
+        verify(channel, timeout(5000).times(events.size())).basicAck(anyLong(), eq(false));
+
+        for (int movieId = 0; movieId < 4; movieId++) {
+            int key = movieId;
+            assertEquals(
+                    events.stream().filter(event -> event.getKey() == key).collect(Collectors.toList()),
+                    processed.stream().filter(event -> event.getKey() == key).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void rejectsEventAfterItsLastAttempt() throws Exception {
+        processor = processor(false);
+
+        processor.process(new Event<>(CREATE, 1, "fail"), channel, 1L);
+
+        verify(channel, timeout(5000)).basicNack(1L, false, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void binderAcknowledgedEventsAreProcessedOnTheCallingThread() {
+        processor = processor(false);
+        Event<Integer, String> event = new Event<>(CREATE, 1, "movie");
+
+        processor.process(event, null, null);
+        processor.process(event, null, null);
+        assertThrows(RuntimeException.class, () -> processor.process(new Event<>(CREATE, 2, "fail"), null, null));
+
+        assertEquals(1, processed.size());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void batchesRunsOfConsecutiveEventsOfTheSameType() throws InterruptedException {
+        processor = processor(true);
+        ExecutorService senders = Executors.newFixedThreadPool(10);
+
+        for (int i = 0; i < 10; i++) {
+            Event<Integer, String> event = i % 2 == 0 ? new Event<>(CREATE, i, "movie") : new Event<>(DELETE, i, null);
+            senders.execute(() -> processor.process(event, null, null));
+        }
+        senders.shutdown();
+        assertTrue(senders.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertFalse(runs.isEmpty());
+        assertEquals(10, runs.stream().mapToInt(List::size).sum() + processed.size());
+        runs.forEach(run -> assertEquals(1, run.stream().map(Event::getEventType).distinct().count()));
+    }
+
+    @Test
+    void batchesEventsOfTheLanesInTheOrderTheyWereReceived() throws Exception {
+        processor = processor(true);
+        List<Event<Integer, String>> events = new ArrayList<>();
+        for (int i = 0; i < 30; i++) events.add(new Event<>(i % 3 == 1 ? DELETE : CREATE, i % 10, "movie"));
+
+        for (int i = 0; i < events.size(); i++) processor.process(events.get(i), channel, (long) i);
+        verify(channel, timeout(5000).times(events.size())).basicAck(anyLong(), eq(false));
+
+        assertFalse(runs.isEmpty());
+        for (int movieId = 0; movieId < 10; movieId++) {
+            int key = movieId;
+            assertEquals(
+                    events.stream().filter(event -> event.getKey() == key).collect(Collectors.toList()),
+                    handled.stream().filter(event -> event.getKey() == key).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void skipsRedeliveriesOfBatchedEvents() throws InterruptedException {
+        processor = processor(true);
+        List<Event<Integer, String>> events = new ArrayList<>();
+        for (int i = 0; i < 4; i++) events.add(new Event<>(CREATE, i, "movie"));
+
+        ExecutorService senders = Executors.newFixedThreadPool(events.size());
+        events.forEach(event -> senders.execute(() -> processor.process(event, null, null)));
+        senders.shutdown();
+        assertTrue(senders.awaitTermination(5, TimeUnit.SECONDS));
+
+        events.forEach(event -> processor.process(event, null, null));
+
+        assertEquals(4, runs.stream().mapToInt(List::size).sum() + processed.size());
+    }
+
+    private EventProcessor<String> processor(boolean batchEnabled) {
+        return new EventProcessor<>("test",
+                event -> Mono.defer(() -> {
+                    attempts.incrementAndGet();
+                    if ("fail".equals(event.getData())) return Mono.error(new IllegalStateException("failed"));
+                    processed.add(event);
+                    handled.add(event);
+                    return Mono.empty();
+                }),
+                run -> Mono.fromRunnable(() -> {
+                    runs.add(run);
+                    handled.addAll(run);
+                }),
+                batchEnabled, 10, Duration.ofMillis(500),
+                new KeyedLanes<>("test", 4, 16, new SimpleMeterRegistry()),
+                new DedupWindow(100, Duration.ofMinutes(1)),
+                3, Duration.ofMillis(1), Duration.ofMillis(10));
+    }
+}
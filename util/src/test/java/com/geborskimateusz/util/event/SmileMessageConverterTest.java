@@ -0,0 +1,65 @@
+package com.geborskimateusz.util.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmileMessageConverterTest {
+
+    SmileMessageConverter converter = new SmileMessageConverter("application/x-jackson-smile", "version", 1);
+
+    @Test
+    void convertsToSmileAndBack() {
+        Sample sample = new Sample("Title", LocalDateTime.of(2020, 1, 1, 12, 0));
+
+        Message<?> message = converter.toMessage(sample, headers("application/x-jackson-smile;version=1"));
+
+        assertNotNull(message);
+        byte[] payload = (byte[]) message.getPayload();
+        assertEquals(':', payload[0]);
+        assertEquals(sample, converter.fromMessage(message, Sample.class));
+    }
+
+    @Test
+    void rejectsNewerSchemaVersions() {
+        Message<?> written = converter.toMessage(new Sample("Title", LocalDateTime.now()), headers("application/x-jackson-smile;version=1"));
+        Message<?> newer = MessageBuilder.fromMessage(written)
+                .setHeader(MessageHeaders.CONTENT_TYPE, "application/x-jackson-smile;version=2")
+                .build();
+
+        assertThrows(MessageConversionException.class, () -> converter.fromMessage(newer, Sample.class));
+    }
+
+    @Test
+    void leavesOtherContentTypesAlone() {
+        Message<byte[]> json = MessageBuilder.withPayload("{\"title\":\"Title\"}".getBytes(StandardCharsets.UTF_8))
+                .setHeader(MessageHeaders.CONTENT_TYPE, "application/json")
+                .build();
+
+        assertNull(converter.fromMessage(json, Sample.class));
+        assertNull(converter.fromMessage(MessageBuilder.withPayload(new byte[0]).build(), Sample.class));
+    }
+
+    private MessageHeaders headers(String contentType) {
+        return new MessageHeaders(Collections.singletonMap(MessageHeaders.CONTENT_TYPE, contentType));
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Sample {
+        private String title;
+        private LocalDateTime at;
+    }
+}
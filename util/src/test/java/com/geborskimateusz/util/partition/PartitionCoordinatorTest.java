@@ -0,0 +1,133 @@
+package com.geborskimateusz.util.partition;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.stream.binder.Binder;
+import org.springframework.cloud.stream.binder.BinderFactory;
+import org.springframework.cloud.stream.binder.Binding;
+import org.springframework.cloud.stream.binder.ConsumerProperties;
+import org.springframework.cloud.stream.binding.BindingService;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.messaging.MessageChannel;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PartitionCoordinatorTest {
+
+    DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
+    BindingService bindingService = mock(BindingService.class);
+    BinderFactory binderFactory = mock(BinderFactory.class);
+    Map<Integer, Binding<MessageChannel>> bound = new HashMap<>();
+
+    PartitionCoordinator coordinator;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        BindingServiceProperties properties = new BindingServiceProperties();
+        when(bindingService.getBindingServiceProperties()).thenReturn(properties);
+        doReturn(mock(Binder.class)).when(binderFactory).getBinder(any(), eq(MessageChannel.class));
+        when(bindingService.doBindConsumer(any(), eq("input"), any(), any(), any())).thenAnswer(invocation -> {
+            ConsumerProperties consumerProperties = invocation.getArgument(3);
+            Binding<MessageChannel> binding = mock(Binding.class);
+            bound.put(consumerProperties.getInstanceIndex(), binding);
+            return binding;
+        });
+
+        Registration self = registration("movie-b");
+        coordinator = new PartitionCoordinator("input", mock(MessageChannel.class), 4, Duration.ofHours(1),
+                discoveryClient, self, bindingService, binderFactory, partition -> partition * 10L);
+    }
+
+    @Test
+    void claimSpreadsThePartitionsOverTheSortedMembers() {
+        List<String> members = Arrays.asList("movie-c", "movie-a", "movie-b");
+
+        assertEquals(new TreeSet<>(Arrays.asList(0, 3)), PartitionCoordinator.claim(members, "movie-a", 4));
+        assertEquals(new TreeSet<>(Collections.singletonList(1)), PartitionCoordinator.claim(members, "movie-b", 4));
+        assertEquals(new TreeSet<>(Collections.singletonList(2)), PartitionCoordinator.claim(members, "movie-c", 4));
+        assertEquals(new TreeSet<>(Arrays.asList(0, 1, 2, 3)), PartitionCoordinator.claim(Collections.emptyList(), "movie-a", 4));
+        assertTrue(PartitionCoordinator.claim(Arrays.asList("movie-a", "movie-b", "movie-c", "movie-d"), "movie-e", 4).isEmpty());
+    }
+
+    @Test
+    void startTakesOverTheConfiguredBinding() {
+        registered("movie-a", "movie-b");
+
+        coordinator.start();
+
+        verify(bindingService).unbindConsumers("input");
+        assertEquals(new TreeSet<>(Arrays.asList(1, 3)), coordinator.ownedPartitions());
+        assertTrue(coordinator.isRunning());
+
+        coordinator.stop();
+
+        assertTrue(coordinator.ownedPartitions().isEmpty());
+        verify(bound.get(1)).unbind();
+        verify(bound.get(3)).unbind();
+    }
+
+    @Test
+    void rebalanceReleasesAndClaimsPartitionsAsInstancesComeAndGo() {
+        registered("movie-b");
+        coordinator.rebalance();
+        assertEquals(new TreeSet<>(Arrays.asList(0, 1, 2, 3)), coordinator.ownedPartitions());
+        Binding<MessageChannel> partition0 = bound.get(0);
+
+        registered("movie-a", "movie-b");
+        coordinator.rebalance();
+        assertEquals(new TreeSet<>(Arrays.asList(1, 3)), coordinator.ownedPartitions());
+        verify(partition0).unbind();
+        verify(bound.get(1), never()).unbind();
+
+        registered("movie-b");
+        coordinator.rebalance();
+        assertEquals(new TreeSet<>(Arrays.asList(0, 1, 2, 3)), coordinator.ownedPartitions());
+        verify(bindingService, times(6)).doBindConsumer(any(), eq("input"), any(), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reportListsOwnedPartitionsWithTheirLag() {
+        registered("movie-a", "movie-b");
+        coordinator.rebalance();
+
+        Map<String, Object> report = coordinator.report();
+
+        assertEquals("movie-b", report.get("instanceId"));
+        assertEquals(Arrays.asList("movie-a", "movie-b"), report.get("members"));
+        Map<Integer, Map<String, Object>> partitions = (Map<Integer, Map<String, Object>>) report.get("partitions");
+        assertEquals(Arrays.asList(1, 3), partitions.keySet().stream().collect(Collectors.toList()));
+        assertEquals(30L, partitions.get(3).get("messagesWaiting"));
+    }
+
+    private void registered(String... instanceIds) {
+        when(discoveryClient.getInstances("movie")).thenReturn(Arrays.stream(instanceIds)
+                .map(id -> (ServiceInstance) new DefaultServiceInstance(id, "movie", id, 8080, false))
+                .collect(Collectors.toList()));
+    }
+
+    private Registration registration(String instanceId) {
+        Registration registration = mock(Registration.class);
+        when(registration.getServiceId()).thenReturn("movie");
+        when(registration.getInstanceId()).thenReturn(instanceId);
+        when(registration.getUri()).thenReturn(URI.create("http://" + instanceId + ":8080"));
+        return registration;
+    }
+}
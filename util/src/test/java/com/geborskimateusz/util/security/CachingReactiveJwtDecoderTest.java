@@ -0,0 +1,87 @@
+package com.geborskimateusz.util.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingReactiveJwtDecoderTest {
+
+    SimpleMeterRegistry meterRegistry;
+    AtomicInteger verifications;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        verifications = new AtomicInteger();
+    }
+
+    @Test
+    void verifiesSameTokenOnce() {
+        CachingReactiveJwtDecoder decoder = decoder(token -> Mono.just(jwt(token, Instant.now().plusSeconds(60))));
+
+        Jwt first = decoder.decode("token").block();
+        Jwt second = decoder.decode("token").block();
+
+        assertSame(first, second);
+        assertEquals(1, verifications.get());
+        assertEquals(1, meterRegistry.get(CachingReactiveJwtDecoder.VERIFICATION_METRIC).timer().count());
+    }
+
+    @Test
+    void doesNotCacheRejectedTokens() {
+        CachingReactiveJwtDecoder decoder = decoder(token -> Mono.error(new JwtException("Invalid signature")));
+
+        assertThrows(JwtException.class, () -> decoder.decode("forged").block());
+        assertThrows(JwtException.class, () -> decoder.decode("forged").block());
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void verifiesExpiredTokenAgain() {
+        CachingReactiveJwtDecoder decoder = decoder(token -> Mono.just(jwt(token, Instant.now().minusSeconds(1))));
+
+        decoder.decode("token").block();
+        decoder.decode("token").block();
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void distinguishesTokens() {
+        CachingReactiveJwtDecoder decoder = decoder(token -> Mono.just(jwt(token, Instant.now().plusSeconds(60))));
+
+        assertEquals("a", decoder.decode("a").block().getTokenValue());
+        assertEquals("b", decoder.decode("b").block().getTokenValue());
+
+        assertEquals(2, verifications.get());
+    }
+
+    private CachingReactiveJwtDecoder decoder(Function<String, Mono<Jwt>> verifier) {
+        return new CachingReactiveJwtDecoder(
+                token -> Mono.defer(() -> {
+                    verifications.incrementAndGet();
+                    return verifier.apply(token);
+                }),
+                100, Duration.ofMinutes(5), meterRegistry);
+    }
+
+    private Jwt jwt(String token, Instant expiresAt) {
+        return Jwt.withTokenValue(token)
+                .header("alg", "RS256")
+                .claim("sub", "writer")
+                .issuedAt(expiresAt.minusSeconds(300))
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
@@ -0,0 +1,65 @@
+package com.geborskimateusz.util.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdentityHeaderCodecTest {
+
+    static final String SECRET = "a-secret-shared-by-gateway-and-services";
+    static final Instant NOW = Instant.parse("2020-01-01T00:00:00Z");
+
+    IdentityHeaderCodec codec = new IdentityHeaderCodec(SECRET, Clock.fixed(NOW, ZoneOffset.UTC));
+
+    @Test
+    void decodesWhatItEncodes() {
+        String header = codec.encode(new TrustedIdentity("writer.client", Arrays.asList("movie:read", "movie:write"), NOW.plusSeconds(30)));
+
+        TrustedIdentity identity = codec.decode(header);
+
+        assertNotNull(identity);
+        assertEquals("writer.client", identity.getSubject());
+        assertEquals(Arrays.asList("movie:read", "movie:write"), identity.getScopes());
+        assertEquals(NOW.plusSeconds(30), identity.getExpiresAt());
+    }
+
+    @Test
+    void decodesIdentityWithoutScopes() {
+        String header = codec.encode(new TrustedIdentity("reader.client", Collections.emptyList(), NOW.plusSeconds(30)));
+
+        assertEquals(Collections.emptyList(), codec.decode(header).getScopes());
+    }
+
+    @Test
+    void rejectsTamperedOrForeignHeaders() {
+        String header = codec.encode(new TrustedIdentity("reader.client", Collections.singletonList("movie:read"), NOW.plusSeconds(30)));
+        String[] parts = header.split("\\.");
+        String escalated = parts[0] + "." + codec.encode(new TrustedIdentity("x", Collections.singletonList("movie:write"), NOW.plusSeconds(30))).split("\\.")[1]
+                + "." + parts[2] + "." + parts[3];
+
+        IdentityHeaderCodec foreign = new IdentityHeaderCodec("another-secret-of-at-least-32-characters", Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertNull(codec.decode(escalated));
+        assertNull(codec.decode(foreign.encode(new TrustedIdentity("reader.client", Collections.singletonList("movie:read"), NOW.plusSeconds(30)))));
+        assertNull(codec.decode("not-a-header"));
+        assertNull(codec.decode("a.b.c.!!"));
+    }
+
+    @Test
+    void rejectsExpiredHeaders() {
+        String header = codec.encode(new TrustedIdentity("reader.client", Collections.singletonList("movie:read"), NOW));
+
+        assertNull(codec.decode(header));
+    }
+
+    @Test
+    void requiresLongSecret() {
+        assertThrows(IllegalArgumentException.class, () -> new IdentityHeaderCodec("short"));
+    }
+}
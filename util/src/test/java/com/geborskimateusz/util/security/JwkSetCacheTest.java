@@ -0,0 +1,74 @@
+package com.geborskimateusz.util.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwkSetCacheTest {
+
+    static final String JWK_SET = "{\"keys\":[{\"kty\":\"oct\",\"kid\":\"key-1\",\"k\":\"c2VjcmV0LXNlY3JldC1zZWNyZXQtc2VjcmV0LXNlY3JldA\"}]}";
+
+    AtomicBoolean authServerUp = new AtomicBoolean();
+    AtomicInteger fetches = new AtomicInteger();
+
+    WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                fetches.incrementAndGet();
+                return Mono.just(authServerUp.get()
+                        ? ClientResponse.create(HttpStatus.OK).header("Content-Type", "application/json").body(JWK_SET).build()
+                        : ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+            })
+            .build();
+
+    JwkSetCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) cache.dispose();
+    }
+
+    @Test
+    void refreshesOnDemandRightAfterFailedStartupFetch() throws InterruptedException {
+        cache = new JwkSetCache("http://auth-server/.well-known/jwks.json", Duration.ofHours(1), Duration.ofHours(1), webClient);
+        awaitFetches(1);
+        authServerUp.set(true);
+
+        List<JWK> keys = null;
+        for (long deadline = System.currentTimeMillis() + 5000; (keys == null || keys.isEmpty()) && System.currentTimeMillis() < deadline; ) {
+            keys = cache.getKeys(jwt("key-1")).collectList().block();
+        }
+
+        assertEquals(1, keys.size());
+        assertEquals(1, cache.size());
+
+        int fetched = fetches.get();
+        assertTrue(cache.getKeys(jwt("key-2")).collectList().block().isEmpty());
+        assertEquals(fetched, fetches.get());
+    }
+
+    private void awaitFetches(int count) throws InterruptedException {
+        for (long deadline = System.currentTimeMillis() + 5000; fetches.get() < count && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, fetches.get());
+    }
+
+    private SignedJWT jwt(String keyId) {
+        return new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.HS256).keyID(keyId).build(), new JWTClaimsSet.Builder().subject("writer").build());
+    }
+}